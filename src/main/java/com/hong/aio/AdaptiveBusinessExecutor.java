@@ -0,0 +1,380 @@
+package com.hong.aio;
+
+import com.hong.common.Configs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AIO 引擎的业务线程池：业务处理不在完成通知线程（{@link CompletionPool}）中执行，完成通知线程只负责 IO。<br>
+ * 线程数由控制线程按照 Little 定律周期性地调整：需要的并发数 L = 到达率 λ × 平均服务时间 W。
+ * 每个周期测量任务的到达率和（不含排队的）执行时间，做指数平滑之后算出 L，
+ * 目标线程数 = ⌈L / 目标利用率⌉，限制在 [最小线程数, 最大线程数] 之间。
+ * 业务处理阻塞（查询数据库、调用其它服务）时 W 变大，线程数随之增加；只做计算时 W 很小，线程数回落到最小值。<br>
+ * 队列有界，满了直接拒绝（RejectedExecutionException），由调用方决定怎么处理（例如关闭连接）：完成通知线程不能等待业务线程。<br>
+ * 同一个连接的信息要按顺序处理时，使用 {@link #newSerialExecutor()} 得到的串行执行器：
+ * 它的任务依次在这个线程池中执行，同一时间最多占用一个线程。<br>
+ * 参数：-Daio.business.minThreads（默认 CPU 核数）、-Daio.business.maxThreads（默认 CPU 核数 × 16，0 表示不使用业务线程池）、
+ * -Daio.business.queueCapacity（默认 1024）、-Daio.business.targetUtilization（默认 0.75）、
+ * -Daio.business.controlPeriodMillis（默认 1000）。
+ */
+public class AdaptiveBusinessExecutor implements Executor, BusinessExecutorMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveBusinessExecutor.class);
+
+    /**
+     * 指数平滑的系数：新测量值的权重
+     */
+    private static final double SMOOTHING = 0.5;
+
+    private final String name;
+
+    private final int minThreads;
+
+    private final int maxThreads;
+
+    private final double targetUtilization;
+
+    private final long controlPeriodNanos;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService controller;
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    //================================================
+    //      当前控制周期的测量值，由控制线程读取并清零
+    //================================================
+
+    private final LongAdder windowArrivals = new LongAdder();
+
+    private final LongAdder windowCompleted = new LongAdder();
+
+    private final LongAdder windowServiceNanos = new LongAdder();
+
+    private final LongAdder windowWaitNanos = new LongAdder();
+
+    private volatile double arrivalRate;
+
+    private volatile double averageServiceNanos;
+
+    private volatile double averageQueueWaitMillis;
+
+    private volatile int targetPoolSize;
+
+    public AdaptiveBusinessExecutor(String name, int minThreads, int maxThreads, int queueCapacity,
+                                    double targetUtilization, long controlPeriodMillis) {
+        if (minThreads < 1 || maxThreads < minThreads || queueCapacity < 1
+                || targetUtilization <= 0 || targetUtilization > 1 || controlPeriodMillis < 1) {
+            throw new IllegalArgumentException("业务线程池参数不正确 : min=" + minThreads + ", max=" + maxThreads
+                    + ", queue=" + queueCapacity + ", targetUtilization=" + targetUtilization + ", period=" + controlPeriodMillis);
+        }
+        this.name = name;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.targetUtilization = targetUtilization;
+        this.controlPeriodNanos = TimeUnit.MILLISECONDS.toNanos(controlPeriodMillis);
+        this.targetPoolSize = minThreads;
+        // core == max，线程数完全由控制器决定
+        this.executor = new ThreadPoolExecutor(minThreads, minThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), newThreadFactory(name + "-worker"), new ThreadPoolExecutor.AbortPolicy());
+        this.controller = Executors.newSingleThreadScheduledExecutor(newThreadFactory(name + "-controller"));
+        this.controller.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                adjust();
+            }
+        }, controlPeriodMillis, controlPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return 按照 -Daio.business.* 创建的线程池；最大线程数为 0 时返回 null（在完成通知线程中直接处理）
+     */
+    public static AdaptiveBusinessExecutor fromConfig(String name) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int maxThreads = Configs.getInt("aio.business.maxThreads", processors * 16);
+        if (maxThreads == 0) {
+            return null;
+        }
+        return new AdaptiveBusinessExecutor(name,
+                Math.min(maxThreads, Configs.getInt("aio.business.minThreads", processors)),
+                maxThreads,
+                Configs.getInt("aio.business.queueCapacity", 1024),
+                Double.parseDouble(Configs.getString("aio.business.targetUtilization", "0.75")),
+                Configs.getLong("aio.business.controlPeriodMillis", 1000)).registerMBean();
+    }
+
+    /**
+     * @throws RejectedExecutionException 队列已满，或者线程池已经关闭
+     */
+    @Override
+    public void execute(Runnable task) {
+        try {
+            this.executor.execute(new MeasuredTask(task));
+        } catch (RejectedExecutionException e) {
+            this.rejectedCount.increment();
+            throw e;
+        }
+        this.windowArrivals.increment();
+    }
+
+    /**
+     * @return 一个串行执行器：交给它的任务按提交顺序依次在这个线程池中执行（例如一个连接的所有信息）
+     */
+    public Executor newSerialExecutor() {
+        return new SerialExecutor();
+    }
+
+    /**
+     * 把自己注册到平台 MBeanServer，注册失败只影响监控，不影响服务
+     */
+    public AdaptiveBusinessExecutor registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName());
+        } catch (Exception e) {
+            logger.warn("AdaptiveBusinessExecutor " + this.name + " 注册 JMX 失败 : " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    /**
+     * 停止控制器和线程池，并注销 JMX（同一个 JVM 中再次创建同名的线程池时才能重新注册）
+     */
+    public void shutdown() {
+        this.controller.shutdownNow();
+        this.executor.shutdown();
+        unregisterMBean();
+    }
+
+    private void unregisterMBean() {
+        try {
+            ObjectName objectName = objectName();
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            logger.warn("AdaptiveBusinessExecutor " + this.name + " 注销 JMX 失败 : " + e.getMessage());
+        }
+    }
+
+    private ObjectName objectName() throws MalformedObjectNameException {
+        return new ObjectName("com.hong.aio:type=AdaptiveBusinessExecutor,name=" + this.name);
+    }
+
+    /**
+     * 控制器：按 Little 定律算出需要的线程数。<br>
+     * 服务时间只统计这个周期内执行完的任务；一个任务也没有执行完（例如所有线程都卡在很慢的调用上）时，
+     * 用队首任务已经等待的时间作为服务时间的下限，避免控制器以为没有负载
+     */
+    private void adjust() {
+        double seconds = this.controlPeriodNanos / 1e9;
+        long arrivals = this.windowArrivals.sumThenReset();
+        long completed = this.windowCompleted.sumThenReset();
+        long serviceNanos = this.windowServiceNanos.sumThenReset();
+        long waitNanos = this.windowWaitNanos.sumThenReset();
+        this.averageQueueWaitMillis = completed == 0 ? 0 : waitNanos / 1e6 / completed;
+
+        double measuredServiceNanos = completed == 0 ? this.averageServiceNanos : (double) serviceNanos / completed;
+        Runnable head = this.executor.getQueue().peek();
+        if (completed == 0 && head instanceof MeasuredTask) {
+            measuredServiceNanos = Math.max(measuredServiceNanos, System.nanoTime() - ((MeasuredTask) head).enqueueNanos);
+        }
+        this.arrivalRate = SMOOTHING * (arrivals / seconds) + (1 - SMOOTHING) * this.arrivalRate;
+        this.averageServiceNanos = SMOOTHING * measuredServiceNanos + (1 - SMOOTHING) * this.averageServiceNanos;
+
+        // L = λ × W，再除以目标利用率留出余量（利用率接近 1 时排队时间会急剧增长）
+        double concurrency = this.arrivalRate * this.averageServiceNanos / 1e9;
+        int next = (int) Math.ceil(concurrency / this.targetUtilization);
+        // 有积压时至少不缩容：积压本身说明上一个周期线程不够
+        if (!this.executor.getQueue().isEmpty()) {
+            next = Math.max(next, this.targetPoolSize);
+        }
+        next = Math.max(this.minThreads, Math.min(this.maxThreads, next));
+        int current = this.targetPoolSize;
+        if (next != current) {
+            resize(next);
+            logger.info("AdaptiveBusinessExecutor " + this.name + " 调整线程数 " + current + " -> " + next
+                    + String.format("，到达率：%.1f/s，平均服务时间：%.2fms，平均排队时间：%.2fms，队列深度：%d",
+                    this.arrivalRate, this.averageServiceNanos / 1e6, this.averageQueueWaitMillis, getQueueDepth()));
+        }
+    }
+
+    private void resize(int size) {
+        // 先调整 max 再调整 core（扩容），或者反过来（缩容），保证任何时刻 core <= max
+        if (size > this.executor.getMaximumPoolSize()) {
+            this.executor.setMaximumPoolSize(size);
+            this.executor.setCorePoolSize(size);
+        } else {
+            this.executor.setCorePoolSize(size);
+            this.executor.setMaximumPoolSize(size);
+        }
+        this.targetPoolSize = size;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return this.executor.getPoolSize();
+    }
+
+    @Override
+    public int getTargetPoolSize() {
+        return this.targetPoolSize;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return this.executor.getCompletedTaskCount();
+    }
+
+    @Override
+    public double getArrivalRate() {
+        return this.arrivalRate;
+    }
+
+    @Override
+    public double getAverageServiceMillis() {
+        return this.averageServiceNanos / 1e6;
+    }
+
+    @Override
+    public double getAverageQueueWaitMillis() {
+        return this.averageQueueWaitMillis;
+    }
+
+    private static ThreadFactory newThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + "-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * 记录排队时间和执行时间的任务包装
+     */
+    private class MeasuredTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long enqueueNanos;
+
+        MeasuredTask(Runnable task) {
+            this.task = task;
+            this.enqueueNanos = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            try {
+                this.task.run();
+            } finally {
+                windowWaitNanos.add(startNanos - this.enqueueNanos);
+                windowServiceNanos.add(System.nanoTime() - startNanos);
+                windowCompleted.increment();
+            }
+        }
+    }
+
+    /**
+     * 串行执行器：任务先放在自己的队列中，同一时间最多有一个 "排空" 任务在线程池中执行
+     */
+    private class SerialExecutor implements Executor, Runnable {
+
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        private boolean scheduled;
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (this) {
+                this.tasks.addLast(task);
+                if (this.scheduled) {
+                    return;
+                }
+                this.scheduled = true;
+            }
+            try {
+                AdaptiveBusinessExecutor.this.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    this.tasks.clear();
+                    this.scheduled = false;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * 每次只执行一个任务，还有剩下的就重新提交，不让一个连接长时间占用线程
+         */
+        @Override
+        public void run() {
+            Runnable task;
+            synchronized (this) {
+                task = this.tasks.pollFirst();
+            }
+            try {
+                if (task != null) {
+                    task.run();
+                }
+            } finally {
+                boolean more;
+                synchronized (this) {
+                    more = !this.tasks.isEmpty();
+                    if (!more) {
+                        this.scheduled = false;
+                    }
+                }
+                if (more) {
+                    try {
+                        AdaptiveBusinessExecutor.this.execute(this);
+                    } catch (RejectedExecutionException e) {
+                        logger.warn("AdaptiveBusinessExecutor " + name + " 队列已满，丢弃串行执行器中剩下的任务");
+                        synchronized (this) {
+                            this.tasks.clear();
+                            this.scheduled = false;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.hong.aio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AIO 引擎（{@link AioServer}）回调的业务处理器。<br>
+ * 回调在 AsynchronousChannelGroup 的线程中执行。一个连接同一时间只有一个进行中的 read，
+ * 上一次读完成的回调返回之后才会发起下一次 read，所以同一个连接的 {@link #dataReceived} 不会并发执行，
+ * 保存在 {@link AioSession} 附件中的读取状态（例如解码器）不需要加锁；
+ * 但同一个处理器会被多个线程同时调用，处理器自己的字段必须是线程安全的。
+ */
+public interface AioChannelHandler {
+
+    /**
+     * 新连接建立之后、发起第一次 read 之前调用。处理器在这里准备这个连接的附件（{@link AioSession#setAttachment}）
+     */
+    void sessionOpened(AioSession session) throws Exception;
+
+    /**
+     * 读到了数据：data 已经切换成读模式，回调返回之后引擎会清空它，并重新发起 read。
+     * 不完整的信息要由处理器自己保存（例如交给解码器）。这里抛出的异常只会关闭这一个连接
+     */
+    void dataReceived(AioSession session, ByteBuffer data) throws Exception;
+
+    /**
+     * 连接关闭之后调用（无论是处理器自己调用了 {@link AioSession#close()}，还是因为读超时、出错、对方关闭），
+     * 用于释放附件中的资源。读缓存区由引擎归还，不需要在这里处理
+     */
+    default void sessionClosed(AioSession session) {
+    }
+}
@@ -0,0 +1,236 @@
+package com.hong.aio;
+
+import com.hong.common.Configs;
+import com.hong.common.admission.AdmissionController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步 IO（AIO）的服务器引擎，SocketServerAIO 和 AioTransport 共用。<br>
+ * 1、一个 AsynchronousChannelGroup 负责所有连接的 IO 完成通知：JDK 的内部线程等待 IO 事件，
+ * 完成通知交给 {@link CompletionPool}（-Daio.threads 个线程，默认 CPU 核数）执行，它记录通知的排队时间（JMX）。
+ * 完成通知线程只做 IO，阻塞的业务处理应该交给业务线程池（见 {@link AdaptiveBusinessExecutor}）；<br>
+ * 2、accept 完成之后马上重新发起 accept（一次发起只会有一次通知），每个新连接创建一个 {@link AioSession}，
+ * 之后这个连接的读取、超时、发送都由会话完成，业务处理交给 {@link AioChannelHandler}；<br>
+ * 3、每次发起 accept 之前先做准入检查（见 {@link AdmissionController}），不能接收时推迟一段时间再发起，连接留在 backlog 中。<br>
+ * 每个连接的参数见 {@link AioSessionConfig}。
+ */
+public class AioServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AioServer.class);
+
+    private final String name;
+
+    private final int threads;
+
+    private final AioSessionConfig sessionConfig;
+
+    private final AioChannelHandler handler;
+
+    private AdmissionController admission;
+
+    private AsynchronousChannelGroup group;
+
+    private CompletionPool completionPool;
+
+    private AsynchronousServerSocketChannel serverChannel;
+
+    /**
+     * 准入控制暂停 accept 之后，由它推迟发起下一次 accept
+     */
+    private ScheduledExecutorService acceptScheduler;
+
+    public AioServer(String name, int threads, AioSessionConfig sessionConfig, AioChannelHandler handler) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("IO 线程数不正确 : " + threads);
+        }
+        this.name = name;
+        this.threads = threads;
+        this.sessionConfig = sessionConfig;
+        this.handler = handler;
+    }
+
+    public static AioServer fromConfig(String name, AioChannelHandler handler) {
+        return new AioServer(name, Configs.getInt("aio.threads", Runtime.getRuntime().availableProcessors()),
+                AioSessionConfig.fromConfig(), handler)
+                .admission(AdmissionController.fromConfig(name));
+    }
+
+    /**
+     * 设置准入控制，在 {@link #start()} 之前调用；null 表示不限制
+     */
+    public AioServer admission(AdmissionController admission) {
+        this.admission = admission;
+        return this;
+    }
+
+    public AioServer bind(int port) throws IOException {
+        return bind(new InetSocketAddress(port));
+    }
+
+    public AioServer bind(InetSocketAddress address) throws IOException {
+        this.completionPool = new CompletionPool(this.name, this.threads).registerMBean();
+        this.group = AsynchronousChannelGroup.withThreadPool(this.completionPool);
+        this.serverChannel = AsynchronousServerSocketChannel.open(this.group);
+        this.serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        this.serverChannel.bind(address);
+        return this;
+    }
+
+    /**
+     * @return 实际监听的地址（绑定随机端口时使用）
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) this.serverChannel.getLocalAddress();
+    }
+
+    /**
+     * 发起第一次 accept，之后的 IO 都在 channel group 的线程中进行，这个方法马上返回
+     */
+    public AioServer start() throws IOException {
+        if (this.serverChannel == null) {
+            throw new IllegalStateException("请先调用 bind");
+        }
+        if (this.admission != null) {
+            this.acceptScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, name + "-accept-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        new AcceptHandler().acceptNext();
+        logger.info(this.name + " 启动，监听地址：" + getLocalAddress() + "，IO 线程数：" + this.threads);
+        return this;
+    }
+
+    /**
+     * 启动之后一直等到 {@link #shutdown()}
+     */
+    public void run() throws IOException {
+        start();
+        try {
+            this.group.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 停止接收新连接，关闭所有连接和 channel group
+     */
+    public void shutdown() {
+        if (this.acceptScheduler != null) {
+            this.acceptScheduler.shutdownNow();
+        }
+        try {
+            if (this.serverChannel != null) {
+                this.serverChannel.close();
+            }
+            if (this.group != null) {
+                this.group.shutdownNow();
+            }
+        } catch (IOException e) {
+            logger.error(this.name + " 停止失败 : " + e.getMessage(), e);
+        }
+        if (this.completionPool != null) {
+            this.completionPool.unregisterMBean();
+        }
+        if (this.admission != null) {
+            this.admission.unregisterMBean();
+        }
+    }
+
+    /**
+     * 一个会话关闭了，归还准入名额
+     */
+    void sessionClosed(AioSession session) {
+        if (this.admission != null) {
+            this.admission.connectionClosed();
+        }
+    }
+
+    /**
+     * 接收新连接，每次完成之后都要重新发起 accept（一次发起只会有一次通知）。
+     * 发起之前先通过准入检查，所以 accept 完成时这个连接已经占用了名额
+     */
+    private class AcceptHandler implements CompletionHandler<AsynchronousSocketChannel, Void>, Runnable {
+
+        /**
+         * 上次暂停的原因，只在原因变化时打印日志（同一时间只有一个 accept 在进行中，不会并发访问）
+         */
+        private AdmissionController.RejectReason pauseReason;
+
+        /**
+         * 准入检查通过后发起下一次 accept，否则推迟一段时间再检查
+         */
+        void acceptNext() {
+            if (!serverChannel.isOpen()) {
+                return;
+            }
+            if (admission != null) {
+                AdmissionController.RejectReason reason = admission.tryAdmit();
+                if (reason != null) {
+                    long pauseMillis = admission.getPauseMillis(reason);
+                    if (reason != this.pauseReason) {
+                        this.pauseReason = reason;
+                        logger.warn(name + " 暂停 accept（" + reason + "），" + pauseMillis + "ms 后重新检查");
+                    }
+                    acceptScheduler.schedule(this, pauseMillis, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                if (this.pauseReason != null && this.pauseReason != AdmissionController.RejectReason.RATE_LIMITED) {
+                    logger.info(name + " 恢复 accept");
+                    this.pauseReason = null;
+                }
+            }
+            serverChannel.accept(null, this);
+        }
+
+        @Override
+        public void run() {
+            acceptNext();
+        }
+
+        @Override
+        public void completed(AsynchronousSocketChannel socketChannel, Void attachment) {
+            acceptNext();
+            AioSession session = new AioSession(socketChannel, AioServer.this, handler, sessionConfig);
+            try {
+                handler.sessionOpened(session);
+            } catch (Exception e) {
+                logger.error(name + " 初始化连接失败 : " + e.getMessage(), e);
+                session.close();
+                return;
+            }
+            session.read();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            if (admission != null) {
+                admission.cancelAdmission();
+            }
+            if (!serverChannel.isOpen()) {
+                return;
+            }
+            // 例如文件描述符暂时用完了：记录下来，继续接收后面的连接
+            logger.error(name + " accept 失败 : " + exc.getMessage(), exc);
+            acceptNext();
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.hong.aio;
+
+import com.hong.common.buffer.BufferPool;
+import com.hong.common.buffer.PooledBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIO 引擎中的一个连接：通道、读缓存区、附件、发送队列。<br>
+ * 1、会话自己就是读完成的回调（CompletionHandler），写完成的回调也是会话创建时建好的一个对象，
+ * 读缓存区在连接建立时从池中借用一次：每次读写都复用它们，不再为每次 IO 创建回调对象和缓存区；<br>
+ * 2、读完成之后总是重新发起 read（除非连接已经关闭）：原来的例子在信息还不完整时直接 return，没有再发起 read，
+ * 跨两次读取的信息就永远收不完了（AIO 中发起一次 read 只会有一次通知）；<br>
+ * 3、read 带超时（见 {@link AioSessionConfig}）：有收到一半的信息（{@link #messageInProgress(boolean)}）时使用信息超时，
+ * 否则使用空闲超时，超时之后关闭连接；<br>
+ * 4、写：同一时间只有一个进行中的 write（AIO 不允许在上一次 write 完成之前再发起 write，否则抛出 WritePendingException），
+ * 其它的响应在发送队列中排队，由写完成的回调接着写：队列头部的多个缓存区合并成一次 gathering write，
+ * 一次没写完的部分在回调中继续写。所以任何线程都可以调用 {@link #write(ByteBuffer)}；<br>
+ * 5、发送队列有界（见 {@link AioSessionConfig}）：超过高水位时暂停读取，降到低水位以下再恢复；
+ * 超过上限或者 write 超时（对方一直不读）时关闭连接。<br>
+ * 关闭时如果还有进行中的 read，读缓存区要等这个 read 失败返回（AsynchronousCloseException）之后才归还，
+ * 否则缓存区可能已经借给了别的连接，还在被这次 read 写入。
+ */
+public class AioSession implements CompletionHandler<Integer, Void> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AioSession.class);
+
+    private static final BufferPool BUFFER_POOL = BufferPool.getDefault();
+
+    /**
+     * 一次 gathering write 最多写出的缓存区个数（操作系统对 writev 的 iovec 个数有限制）
+     */
+    static final int MAX_GATHERING_BUFFERS = 64;
+
+    private final AsynchronousSocketChannel channel;
+
+    private final AioServer server;
+
+    private final AioChannelHandler handler;
+
+    private final AioSessionConfig config;
+
+    private final Integer remotePort;
+
+    private final PooledBuffer readBuffer;
+
+    private final WriteCompletion writeCompletion = new WriteCompletion();
+
+    /**
+     * 处理器为这个连接保存的状态（例如解码器）
+     */
+    private volatile Object attachment;
+
+    /**
+     * 只在读完成的回调中修改，下一次发起 read 时读取（同一个连接的读完成回调不会并发执行）
+     */
+    private boolean messageInProgress;
+
+    //================================================
+    //      以下字段由 this 保护：读完成、写完成、close 可能在不同的线程中
+    //================================================
+
+    private boolean closed;
+
+    /**
+     * 从发起 read 到读完成的回调处理完为止
+     */
+    private boolean readInFlight;
+
+    /**
+     * 因为发送队列超过高水位而暂停了读取
+     */
+    private boolean readSuspended;
+
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+
+    private long pendingWriteBytes;
+
+    private boolean writeInFlight;
+
+    /**
+     * 进行中的 gathering write 使用的数组，第一次 write 时创建，之后一直复用
+     */
+    private ByteBuffer[] gatheringBuffers;
+
+    private boolean closeWhenFlushed;
+
+    AioSession(AsynchronousSocketChannel channel, AioServer server, AioChannelHandler handler, AioSessionConfig config) {
+        this.channel = channel;
+        this.server = server;
+        this.handler = handler;
+        this.config = config;
+        InetSocketAddress remoteAddress = null;
+        try {
+            remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+        } catch (IOException ignore) {
+            // 连接已经断开了，第一次 read 就会失败
+        }
+        this.remotePort = remoteAddress == null ? null : remoteAddress.getPort();
+        this.readBuffer = BUFFER_POOL.acquire(config.getReadBufferSize());
+    }
+
+    public AsynchronousSocketChannel channel() {
+        return this.channel;
+    }
+
+    public Integer getRemotePort() {
+        return this.remotePort;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getAttachment() {
+        return (T) this.attachment;
+    }
+
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * 处理器在每次 {@link AioChannelHandler#dataReceived} 中告诉引擎是否还有收到一半的信息，决定下一次 read 使用哪个超时
+     */
+    public void messageInProgress(boolean inProgress) {
+        this.messageInProgress = inProgress;
+    }
+
+    /**
+     * 发起下一次 read（连接建立时由引擎调用，之后每次读完成都会再调用）。
+     * 发送队列超过高水位时先不读：对方不读响应，就不再读它的请求，等队列降到低水位以下再由写完成的回调恢复
+     */
+    void read() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            long highWaterMark = this.config.getWriteQueueHighWaterMark();
+            if (highWaterMark > 0 && this.pendingWriteBytes > highWaterMark) {
+                this.readSuspended = true;
+                return;
+            }
+            this.readInFlight = true;
+        }
+        startRead();
+    }
+
+    /**
+     * 真正发起 read，调用之前 readInFlight 已经设置为 true
+     */
+    private void startRead() {
+        long timeoutMillis = this.messageInProgress ? this.config.getMessageTimeoutMillis() : this.config.getIdleTimeoutMillis();
+        try {
+            if (timeoutMillis > 0) {
+                this.channel.read(this.readBuffer.buffer(), timeoutMillis, TimeUnit.MILLISECONDS, null, this);
+            } else {
+                this.channel.read(this.readBuffer.buffer(), null, this);
+            }
+        } catch (RuntimeException e) {
+            // 例如 channel group 已经关闭（ShutdownChannelGroupException）
+            logger.warn("端口：" + this.remotePort + " 发起 read 失败 : " + e);
+            readFinished();
+            close();
+        }
+    }
+
+    /**
+     * 读完成。处理完之前 readInFlight 一直为 true：其它线程这时关闭连接也不会归还正在使用的读缓存区
+     */
+    @Override
+    public void completed(Integer result, Void attachment) {
+        if (isClosed() || result == -1) {
+            // 连接已经被关闭了，或者客户端已经关闭了连接
+            readFinished();
+            close();
+            return;
+        }
+        ByteBuffer buffer = this.readBuffer.buffer();
+        buffer.flip();
+        Exception error = null;
+        try {
+            this.handler.dataReceived(this, buffer);
+        } catch (Exception e) {
+            error = e;
+        }
+        buffer.clear();
+        if (readFinished()) {
+            return;
+        }
+        if (error != null) {
+            logger.error("端口：" + this.remotePort + " 的数据处理失败，关闭连接 : " + error.getMessage(), error);
+            close();
+            return;
+        }
+        // 一次发起只会有一次通知：不管信息是否完整，都要重新发起 read
+        read();
+    }
+
+    /**
+     * 读失败：超时、对方重置了连接，或者是连接已经被关闭
+     */
+    @Override
+    public void failed(Throwable exc, Void attachment) {
+        if (readFinished()) {
+            return;
+        }
+        if (exc instanceof InterruptedByTimeoutException) {
+            logger.warn("端口：" + this.remotePort + " 的连接" + (this.messageInProgress ? "信息超时" : "空闲超时") + "，关闭连接");
+        } else if (!(exc instanceof AsynchronousCloseException) && !(exc instanceof ClosedChannelException)) {
+            logger.info("端口：" + this.remotePort + " 的连接读取失败，关闭连接 : " + exc.getMessage());
+        }
+        close();
+    }
+
+    /**
+     * 记录这一次 read 已经处理完；如果连接在这期间被关闭了，现在归还读缓存区
+     * @return true 表示连接已经关闭
+     */
+    private boolean readFinished() {
+        synchronized (this) {
+            this.readInFlight = false;
+            if (!this.closed) {
+                return false;
+            }
+        }
+        this.readBuffer.releaseIfNeeded();
+        return true;
+    }
+
+    /**
+     * 把数据放入发送队列，可以在任何线程中调用；没有进行中的 write 时马上发起。<br>
+     * 发送队列有上限（{@link AioSessionConfig#getWriteQueueMaxBytes()}）：对方一直不读、队列超过上限时关闭连接并抛出异常，
+     * 一个慢的客户端不会把服务器的内存耗尽
+     * @throws IOException 连接已经关闭（或者正在关闭），或者发送队列超过了上限
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        int size = buffer.remaining();
+        boolean overflow = false;
+        synchronized (this) {
+            if (this.closed || this.closeWhenFlushed) {
+                throw new IOException("端口：" + this.remotePort + " 的连接已经关闭（或者正在关闭），不能再写入");
+            }
+            if (size == 0) {
+                return;
+            }
+            long maxBytes = this.config.getWriteQueueMaxBytes();
+            if (maxBytes > 0 && this.pendingWriteBytes + size > maxBytes) {
+                overflow = true;
+            } else {
+                this.outbound.addLast(buffer);
+                this.pendingWriteBytes += size;
+                if (this.writeInFlight) {
+                    return;
+                }
+                this.writeInFlight = true;
+            }
+        }
+        if (overflow) {
+            logger.warn("端口：" + this.remotePort + " 的发送队列超过上限（" + this.config.getWriteQueueMaxBytes()
+                    + " 字节），对方读取太慢，关闭连接");
+            close();
+            throw new IOException("端口：" + this.remotePort + " 的发送队列已满");
+        }
+        writeNext();
+    }
+
+    /**
+     * 发送队列写完之后关闭连接（队列已经是空的就马上关闭），之后不能再 write
+     */
+    public void closeWhenFlushed() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closeWhenFlushed = true;
+            if (this.writeInFlight) {
+                return;
+            }
+        }
+        close();
+    }
+
+    /**
+     * @return 发送队列中还没有写出的字节数
+     */
+    public synchronized long getPendingWriteBytes() {
+        return this.pendingWriteBytes;
+    }
+
+    /**
+     * 把队列头部的缓存区（最多 {@link #MAX_GATHERING_BUFFERS} 个）合并成一次 gathering write 发出；
+     * 只由持有 "写权" 的线程调用（writeInFlight 为 true）。队列空了就交出写权，需要时关闭连接
+     */
+    private void writeNext() {
+        int count = 0;
+        boolean closeNow = false;
+        synchronized (this) {
+            if (this.closed) {
+                this.writeInFlight = false;
+                return;
+            }
+            if (this.outbound.isEmpty()) {
+                this.writeInFlight = false;
+                closeNow = this.closeWhenFlushed;
+            } else {
+                if (this.gatheringBuffers == null) {
+                    this.gatheringBuffers = new ByteBuffer[MAX_GATHERING_BUFFERS];
+                }
+                for (ByteBuffer buffer : this.outbound) {
+                    if (count == MAX_GATHERING_BUFFERS) {
+                        break;
+                    }
+                    this.gatheringBuffers[count++] = buffer;
+                }
+            }
+        }
+        if (count == 0) {
+            if (closeNow) {
+                close();
+            }
+            return;
+        }
+        try {
+            // 一次 write 可能只写出了一部分，写完成的回调会移除写完的缓存区，剩下的接着写
+            this.channel.write(this.gatheringBuffers, 0, count, this.config.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS,
+                    null, this.writeCompletion);
+        } catch (RuntimeException e) {
+            logger.warn("端口：" + this.remotePort + " 发起 write 失败 : " + e);
+            synchronized (this) {
+                this.writeInFlight = false;
+            }
+            close();
+        }
+    }
+
+    /**
+     * 一次 write 完成：移除已经写完的缓存区，发送队列降到低水位以下时恢复读取
+     * @return 是否要恢复读取
+     */
+    private boolean written(long bytes) {
+        synchronized (this) {
+            this.pendingWriteBytes -= bytes;
+            Arrays.fill(this.gatheringBuffers, null);
+            ByteBuffer head;
+            while ((head = this.outbound.peekFirst()) != null && !head.hasRemaining()) {
+                this.outbound.pollFirst();
+            }
+            if (this.readSuspended && !this.closed && this.pendingWriteBytes <= this.config.getWriteQueueLowWaterMark()) {
+                this.readSuspended = false;
+                this.readInFlight = true;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 关闭连接：丢弃还没写出的数据，通知处理器。重复调用没有影响
+     */
+    public void close() {
+        boolean releaseNow;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.outbound.clear();
+            this.pendingWriteBytes = 0;
+            releaseNow = !this.readInFlight;
+        }
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            logger.warn("关闭端口：" + this.remotePort + " 的连接失败 : " + e.getMessage());
+        }
+        if (releaseNow) {
+            this.readBuffer.releaseIfNeeded();
+        }
+        this.server.sessionClosed(this);
+        try {
+            this.handler.sessionClosed(this);
+        } catch (RuntimeException e) {
+            logger.error("释放端口：" + this.remotePort + " 的连接资源时出错 : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写完成的回调，每个会话一个，每次 write 都复用
+     */
+    private class WriteCompletion implements CompletionHandler<Long, Void> {
+
+        @Override
+        public void completed(Long result, Void attachment) {
+            if (written(result)) {
+                startRead();
+            }
+            writeNext();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            if (exc instanceof InterruptedByTimeoutException) {
+                logger.warn("端口：" + remotePort + " 的回发数据超时（对方读取太慢），关闭连接");
+            } else if (!(exc instanceof AsynchronousCloseException) && !(exc instanceof ClosedChannelException)) {
+                logger.error("端口：" + remotePort + " 回发数据失败 : " + exc.getMessage());
+            }
+            synchronized (AioSession.this) {
+                writeInFlight = false;
+            }
+            close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.hong.aio;
+
+import com.hong.common.Configs;
+
+/**
+ * AIO 引擎中每个连接的参数：<br>
+ * -Daio.idleTimeoutMillis：没有收到一半的信息时，两次读取之间最多等待多久，默认 60000；<br>
+ * -Daio.messageTimeoutMillis：收到一半的信息之后，两次读取之间最多等待多久，默认 10000；<br>
+ * 两个超时都通过带超时的 read（AsynchronousSocketChannel.read(dst, timeout, unit, ...)）实现，0 表示不限制，
+ * 超时之后连接被关闭（超时之后通道的状态是不确定的，不能再发起 read）；<br>
+ * -Daio.readBufferSize：每个连接的读缓存区大小，默认 2048，连接建立时从池中借用一次，之后每次读取都复用；<br>
+ * -Daio.writeQueue.highWaterMark：发送队列超过多少字节时暂停读取，默认 262144，降到一半以下时恢复，0 表示不暂停；<br>
+ * -Daio.writeQueue.maxBytes：发送队列的上限，超过时关闭连接，默认 4194304，0 表示不限制；<br>
+ * -Daio.writeTimeoutMillis：一次 write 最多等待多久（对方一直不读，内核的发送缓存区一直是满的），超时关闭连接，默认 30000，0 表示不限制。
+ */
+public class AioSessionConfig {
+
+    private final long idleTimeoutMillis;
+
+    private final long messageTimeoutMillis;
+
+    private final int readBufferSize;
+
+    private final long writeQueueHighWaterMark;
+
+    private final long writeQueueMaxBytes;
+
+    private final long writeTimeoutMillis;
+
+    public AioSessionConfig(long idleTimeoutMillis, long messageTimeoutMillis, int readBufferSize) {
+        this(idleTimeoutMillis, messageTimeoutMillis, readBufferSize, 256 * 1024, 4 * 1024 * 1024, 30000);
+    }
+
+    public AioSessionConfig(long idleTimeoutMillis, long messageTimeoutMillis, int readBufferSize,
+                            long writeQueueHighWaterMark, long writeQueueMaxBytes, long writeTimeoutMillis) {
+        if (idleTimeoutMillis < 0 || messageTimeoutMillis < 0 || readBufferSize < 1
+                || writeQueueHighWaterMark < 0 || writeQueueMaxBytes < 0 || writeTimeoutMillis < 0) {
+            throw new IllegalArgumentException("会话参数不正确 : idle=" + idleTimeoutMillis + ", message=" + messageTimeoutMillis
+                    + ", readBufferSize=" + readBufferSize + ", writeQueue=" + writeQueueHighWaterMark + "/" + writeQueueMaxBytes
+                    + ", writeTimeout=" + writeTimeoutMillis);
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.messageTimeoutMillis = messageTimeoutMillis;
+        this.readBufferSize = readBufferSize;
+        this.writeQueueHighWaterMark = writeQueueHighWaterMark;
+        this.writeQueueMaxBytes = writeQueueMaxBytes;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    public static AioSessionConfig fromConfig() {
+        return new AioSessionConfig(
+                Configs.getLong("aio.idleTimeoutMillis", 60000),
+                Configs.getLong("aio.messageTimeoutMillis", 10000),
+                Configs.getInt("aio.readBufferSize", 2048),
+                Configs.getLong("aio.writeQueue.highWaterMark", 256 * 1024),
+                Configs.getLong("aio.writeQueue.maxBytes", 4 * 1024 * 1024),
+                Configs.getLong("aio.writeTimeoutMillis", 30000));
+    }
+
+    public long getIdleTimeoutMillis() {
+        return this.idleTimeoutMillis;
+    }
+
+    public long getMessageTimeoutMillis() {
+        return this.messageTimeoutMillis;
+    }
+
+    public int getReadBufferSize() {
+        return this.readBufferSize;
+    }
+
+    public long getWriteQueueHighWaterMark() {
+        return this.writeQueueHighWaterMark;
+    }
+
+    /**
+     * @return 暂停读取之后，发送队列降到多少字节以下时恢复读取（高水位的一半）
+     */
+    public long getWriteQueueLowWaterMark() {
+        return this.writeQueueHighWaterMark / 2;
+    }
+
+    public long getWriteQueueMaxBytes() {
+        return this.writeQueueMaxBytes;
+    }
+
+    public long getWriteTimeoutMillis() {
+        return this.writeTimeoutMillis;
+    }
+}
@@ -0,0 +1,192 @@
+package com.hong.aio;
+
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameDecoder;
+import com.hong.common.transport.MessageContext;
+import com.hong.common.transport.MessageHandler;
+import com.hong.common.transport.Transport;
+import com.hong.common.transport.TransportConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 异步 IO 的传输层（-Dtransport=aio）：使用 {@link AioServer} 引擎，
+ * 完成通知线程（{@link CompletionPool}）收到 "IO 完成" 的通知后只负责解码，解码出的信息交给业务线程池
+ * （{@link AdaptiveBusinessExecutor}，线程数按 Little 定律自动调整）调用处理器、把响应放入会话的发送队列；
+ * 同一个连接的信息通过串行执行器按顺序处理。业务线程池的队列满了时关闭这个连接（过载保护），
+ * -Daio.business.maxThreads=0 时不使用业务线程池，在完成通知线程中直接处理。<br>
+ * 读完成之后总是重新发起 read，发送由会话的发送队列负责（同一时间只有一个进行中的 write），
+ * 所以读和写可以同时进行，不会出现 WritePendingException / ReadPendingException。<br>
+ * 参数：-Daio.threads、-Daio.idleTimeoutMillis 等，见 {@link AioServer}、{@link AioSessionConfig}；
+ * -Daio.business.*：业务线程池，见 {@link AdaptiveBusinessExecutor}；-Dadmission.*：准入控制。
+ */
+public class AioTransport implements Transport {
+
+    private static final Logger logger = LoggerFactory.getLogger(AioTransport.class);
+
+    private AioServer server;
+
+    private AdaptiveBusinessExecutor businessExecutor;
+
+    @Override
+    public String name() {
+        return "aio";
+    }
+
+    @Override
+    public InetSocketAddress start(TransportConfig config, MessageHandler handler) throws IOException {
+        if (this.server != null) {
+            throw new IllegalStateException("AioTransport 已经启动");
+        }
+        this.businessExecutor = AdaptiveBusinessExecutor.fromConfig("AioTransport-business");
+        this.server = AioServer.fromConfig("AioTransport", new TransportChannelHandler(config, handler, this.businessExecutor));
+        this.server.bind(config.getAddress()).start();
+        return this.server.getLocalAddress();
+    }
+
+    @Override
+    public void stop() {
+        if (this.server != null) {
+            this.server.shutdown();
+        }
+        if (this.businessExecutor != null) {
+            this.businessExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 把会话的读完成通知转换成对 {@link MessageHandler} 的调用
+     */
+    private static class TransportChannelHandler implements AioChannelHandler {
+
+        private final TransportConfig config;
+
+        private final FrameCodec codec;
+
+        private final MessageHandler handler;
+
+        /**
+         * 业务线程池，null 表示在完成通知线程中直接处理
+         */
+        private final AdaptiveBusinessExecutor businessExecutor;
+
+        TransportChannelHandler(TransportConfig config, MessageHandler handler, AdaptiveBusinessExecutor businessExecutor) {
+            this.config = config;
+            this.codec = config.getCodec();
+            this.handler = handler;
+            this.businessExecutor = businessExecutor;
+        }
+
+        @Override
+        public void sessionOpened(AioSession session) throws IOException {
+            session.setAttachment(new Connection(this.codec.newDecoder(),
+                    new MessageContext("aio", (InetSocketAddress) session.channel().getRemoteAddress()),
+                    this.businessExecutor == null ? null : this.businessExecutor.newSerialExecutor()));
+        }
+
+        @Override
+        public void dataReceived(final AioSession session, ByteBuffer data) throws IOException {
+            Connection connection = session.getAttachment();
+            if (connection.finished) {
+                // 已经处理完一条信息、等待关闭的连接，后面到达的数据直接丢弃
+                return;
+            }
+            List<Frame> frames = connection.frames;
+            try {
+                connection.decoder.decode(data, frames);
+                // 还有收到一半的信息时，下一次 read 使用信息超时
+                session.messageInProgress(connection.decoder.hasPartialFrame());
+                for (final Frame frame : frames) {
+                    if (this.config.isCloseAfterReply()) {
+                        // 一个连接只处理一条信息，后面的信息（如果有的话）不再处理
+                        connection.finished = true;
+                    }
+                    if (connection.serialExecutor == null) {
+                        handle(session, connection, frame);
+                    } else {
+                        final Connection target = connection;
+                        try {
+                            connection.serialExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    handle(session, target, frame);
+                                }
+                            });
+                        } catch (RejectedExecutionException e) {
+                            logger.warn("业务线程池已满，关闭端口：" + session.getRemotePort() + "的连接");
+                            session.close();
+                            return;
+                        }
+                    }
+                    if (connection.finished) {
+                        return;
+                    }
+                }
+            } finally {
+                frames.clear();
+            }
+        }
+
+        /**
+         * 调用处理器，把响应放入发送队列；closeAfterReply 时响应全部写完之后关闭连接
+         */
+        private void handle(AioSession session, Connection connection, Frame frame) {
+            if (session.isClosed()) {
+                return;
+            }
+            try {
+                Frame response = this.handler.handle(connection.context, frame);
+                if (response != null) {
+                    session.write(this.codec.encode(response));
+                }
+            } catch (Exception e) {
+                logger.error("端口：" + session.getRemotePort() + "的信息处理失败 : " + e.getMessage(), e);
+                session.close();
+                return;
+            }
+            if (this.config.isCloseAfterReply()) {
+                session.closeWhenFlushed();
+            }
+        }
+    }
+
+    /**
+     * 每个连接的解码器（保存还不完整的信息）和信息来源
+     */
+    private static class Connection {
+
+        private final FrameDecoder decoder;
+
+        private final MessageContext context;
+
+        /**
+         * 解码出的帧，每次读取都复用（同一个连接的读完成回调不会并发执行）
+         */
+        private final List<Frame> frames = new ArrayList<>();
+
+        /**
+         * 按顺序处理这个连接的信息的串行执行器，null 表示不使用业务线程池
+         */
+        private final Executor serialExecutor;
+
+        /**
+         * closeAfterReply 时已经交出了一条信息（只在完成通知线程中访问）
+         */
+        private boolean finished;
+
+        Connection(FrameDecoder decoder, MessageContext context, Executor serialExecutor) {
+            this.decoder = decoder;
+            this.context = context;
+            this.serialExecutor = serialExecutor;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.hong.aio;
+
+/**
+ * AdaptiveBusinessExecutor 通过 JMX 暴露的运行指标和控制器的输入（到达率、服务时间）。
+ */
+public interface BusinessExecutorMXBean {
+
+    /**
+     * 当前线程池中的线程数
+     */
+    int getPoolSize();
+
+    /**
+     * 控制器按 Little 定律算出的目标线程数
+     */
+    int getTargetPoolSize();
+
+    /**
+     * 正在执行业务处理的线程数
+     */
+    int getActiveCount();
+
+    /**
+     * 排队等待执行的任务数
+     */
+    int getQueueDepth();
+
+    /**
+     * 因为队列已满而被拒绝的任务数
+     */
+    long getRejectedCount();
+
+    long getCompletedTaskCount();
+
+    /**
+     * 平滑之后的任务到达率（个/秒）
+     */
+    double getArrivalRate();
+
+    /**
+     * 平滑之后的平均服务时间（毫秒，不含排队）
+     */
+    double getAverageServiceMillis();
+
+    /**
+     * 上一个控制周期内任务的平均排队时间（毫秒）
+     */
+    double getAverageQueueWaitMillis();
+}
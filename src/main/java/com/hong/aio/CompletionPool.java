@@ -0,0 +1,180 @@
+package com.hong.aio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AIO channel group 的完成通知线程池：线程数固定（默认 CPU 核数），记录每个完成通知的排队时间和回调的执行时间。<br>
+ * 用 AsynchronousChannelGroup.withThreadPool(executor) 创建 channel group 时，JDK 由内部线程等待 IO 事件（epoll），
+ * 再把完成通知（调用 CompletionHandler）作为任务交给这个线程池执行，所以可以测量它们的排队时间；
+ * withFixedThreadPool 创建的 channel group 由池中的线程自己等待事件、直接调用回调，没有排队，也就无从测量。<br>
+ * 完成通知只应该做 IO 相关的轻量处理（解码、发起下一次 read/write），业务处理交给单独的业务线程池
+ * （见 {@link AdaptiveBusinessExecutor}）。JDK 要求 channel group 的线程池不能拒绝任务，所以队列是无界的，
+ * 连接数由准入控制、每个连接的发送队列限制，不会无限增长。
+ */
+class CompletionPool extends ThreadPoolExecutor implements CompletionPoolMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompletionPool.class);
+
+    private static final long RECENT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+
+    private final LongAdder completedCount = new LongAdder();
+
+    private final LongAdder totalQueueDelayNanos = new LongAdder();
+
+    private final LongAdder totalHandlerNanos = new LongAdder();
+
+    private final AtomicLong maxQueueDelayNanos = new AtomicLong();
+
+    //================================================
+    //      最近一个统计周期的排队时间（由执行任务的线程顺便滚动）
+    //================================================
+
+    private final AtomicLong windowStartNanos = new AtomicLong(System.nanoTime());
+
+    private final LongAdder windowQueueDelayNanos = new LongAdder();
+
+    private final LongAdder windowCount = new LongAdder();
+
+    private volatile double recentQueueDelayMicros;
+
+    CompletionPool(final String name, int threads) {
+        super(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadIndex = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-io-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.name = name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedCompletion(command));
+    }
+
+    /**
+     * 把自己注册到平台 MBeanServer，注册失败只影响监控，不影响服务
+     */
+    CompletionPool registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName());
+        } catch (Exception e) {
+            logger.warn("CompletionPool " + this.name + " 注册 JMX 失败 : " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    /**
+     * channel group 关闭时调用，同一个 JVM 中再次启动同名的服务器时才能重新注册
+     */
+    void unregisterMBean() {
+        try {
+            ObjectName objectName = objectName();
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            logger.warn("CompletionPool " + this.name + " 注销 JMX 失败 : " + e.getMessage());
+        }
+    }
+
+    private ObjectName objectName() throws MalformedObjectNameException {
+        return new ObjectName("com.hong.aio:type=CompletionPool,name=" + this.name);
+    }
+
+    private void recordQueueDelay(long delayNanos) {
+        this.totalQueueDelayNanos.add(delayNanos);
+        long max;
+        while (delayNanos > (max = this.maxQueueDelayNanos.get()) && !this.maxQueueDelayNanos.compareAndSet(max, delayNanos)) {
+            // 重试
+        }
+        this.windowQueueDelayNanos.add(delayNanos);
+        this.windowCount.increment();
+        long now = System.nanoTime();
+        long windowStart = this.windowStartNanos.get();
+        if (now - windowStart >= RECENT_WINDOW_NANOS && this.windowStartNanos.compareAndSet(windowStart, now)) {
+            long count = this.windowCount.sumThenReset();
+            long delay = this.windowQueueDelayNanos.sumThenReset();
+            this.recentQueueDelayMicros = count == 0 ? 0 : delay / 1000.0 / count;
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return this.completedCount.sum();
+    }
+
+    @Override
+    public double getAverageQueueDelayMicros() {
+        long count = this.completedCount.sum();
+        return count == 0 ? 0 : this.totalQueueDelayNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public double getMaxQueueDelayMicros() {
+        return this.maxQueueDelayNanos.get() / 1000.0;
+    }
+
+    @Override
+    public double getRecentQueueDelayMicros() {
+        return this.recentQueueDelayMicros;
+    }
+
+    @Override
+    public double getAverageHandlerMicros() {
+        long count = this.completedCount.sum();
+        return count == 0 ? 0 : this.totalHandlerNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * 记录入队时间的任务包装
+     */
+    private class TimedCompletion implements Runnable {
+
+        private final Runnable task;
+
+        private final long enqueueNanos;
+
+        TimedCompletion(Runnable task) {
+            this.task = task;
+            this.enqueueNanos = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            recordQueueDelay(startNanos - this.enqueueNanos);
+            try {
+                this.task.run();
+            } finally {
+                totalHandlerNanos.add(System.nanoTime() - startNanos);
+                completedCount.increment();
+            }
+        }
+    }
+}
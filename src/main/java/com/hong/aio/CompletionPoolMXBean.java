@@ -0,0 +1,43 @@
+package com.hong.aio;
+
+/**
+ * AIO channel group 的完成通知线程池通过 JMX 暴露的运行指标。
+ * 排队时间持续增长说明完成通知处理不过来了：回调中做了太多的事情（应该交给业务线程池），或者线程数太少。
+ */
+public interface CompletionPoolMXBean {
+
+    /**
+     * 当前线程数（固定为 -Daio.threads，默认 CPU 核数）
+     */
+    int getPoolSize();
+
+    /**
+     * 排队等待执行的完成通知数
+     */
+    int getQueueDepth();
+
+    /**
+     * 已经执行完的完成通知数
+     */
+    long getCompletedCount();
+
+    /**
+     * 完成通知从进入队列到开始执行的平均等待时间（微秒）
+     */
+    double getAverageQueueDelayMicros();
+
+    /**
+     * 完成通知的最大排队等待时间（微秒）
+     */
+    double getMaxQueueDelayMicros();
+
+    /**
+     * 最近一个统计周期（约 1 秒）中完成通知的平均排队等待时间（微秒）
+     */
+    double getRecentQueueDelayMicros();
+
+    /**
+     * 完成回调（CompletionHandler）的平均执行时间（微秒）
+     */
+    double getAverageHandlerMicros();
+}
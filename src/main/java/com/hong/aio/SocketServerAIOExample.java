@@ -1,29 +1,48 @@
 package com.hong.aio;
 
+import com.hong.common.Configs;
+import com.hong.common.buffer.BufferPool;
+import com.hong.common.buffer.PooledBuffer;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
+import com.hong.common.codec.FrameDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousChannelGroup;
 import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * JAVA AIO框架测试。请一定将
  * 《架构设计：系统间通信（4）——IO通信模型和JAVA实践 中篇》看了后再看本篇测试代码。
- * 这样对您理解代码的关键点非常有益。
+ * 这样对您理解代码的关键点非常有益。<br>
+ * 这里保留的是教学用的写法；可以长期运行的版本（回调和缓存区复用、读超时、发送队列）见 {@link AioServer} 和 {@link SocketServerAIO}。
  * @author yinwenjie
  */
 public class SocketServerAIOExample {
 
     private static final Object waitObject = new Object();
 
+    /**
+     * 分帧协议，通过 -Dcodec 选择：delimiter（"over" 结束标记）或 length（长度前缀的二进制帧）
+     */
+    static final FrameCodec CODEC = FrameCodecs.fromConfig();
+
+    /**
+     * 读缓存区池，通过 -Dbuffer.pool.* 配置
+     */
+    static final BufferPool BUFFER_POOL = BufferPool.getDefault();
+
     /**
      * @param args
      * @throws Exception
@@ -35,13 +54,16 @@ public class SocketServerAIOExample {
          * 2、当然您也可以通过ThreadPoolExecutor直接生成池。
          * 3、这个线程池是用来得到操作系统的“IO事件通知”的，不是用来进行“得到IO数据后的业务处理的”。要进行后者的操作，您可以再使用一个池（最好不要混用）
          * 4、您也可以不使用线程池（不推荐），如果决定不使用线程池，直接AsynchronousServerSocketChannel.open()就行了。
+         * 5、既然只用来处理IO事件通知，线程数和CPU核数一样就够了（-Daio.threads），随便写一个20反而增加切换。
+         *    CompletionPool 还会记录每个完成通知的排队时间（JMX），业务线程池的写法见 AioTransport / AdaptiveBusinessExecutor
          * */
-        ExecutorService threadPool = Executors.newFixedThreadPool(20);
+        ExecutorService threadPool = new CompletionPool("SocketServerAIOExample",
+                Configs.getInt("aio.threads", Runtime.getRuntime().availableProcessors())).registerMBean();
         AsynchronousChannelGroup group = AsynchronousChannelGroup.withThreadPool(threadPool);
         final AsynchronousServerSocketChannel serverSocket = AsynchronousServerSocketChannel.open(group);
 
         //设置要监听的端口“0.0.0.0”代表本机所有IP设备
-        serverSocket.bind(new InetSocketAddress("0.0.0.0", 83));
+        serverSocket.bind(new InetSocketAddress("0.0.0.0", Configs.getServerPort()));
         //为AsynchronousServerSocketChannel注册监听，注意只是为AsynchronousServerSocketChannel通道注册监听
         //并不包括为 随后客户端和服务器 socketchannel通道注册的监听
         serverSocket.accept(null, new ServerSocketChannelHandle(serverSocket));
@@ -84,10 +106,11 @@ class ServerSocketChannelHandle implements CompletionHandler<AsynchronousSocketC
         this.serverSocketChannel.accept(attachment, this);
 
         //为这个新的socketChannel注册“read”事件，以便操作系统在收到数据并准备好后，主动通知应用程序
-        //在这里，由于我们要将这个客户端多次传输的数据累加起来一起处理，所以我们将一个stringbuffer对象作为一个“附件”依附在这个channel上
-        //
-        ByteBuffer readBuffer = ByteBuffer.allocate(50);
-        socketChannel.read(readBuffer, new StringBuffer(), new SocketChannelReadHandle(socketChannel , readBuffer));
+        //在这里，由于我们要将这个客户端多次传输的数据累加起来一起处理，所以我们将一个解码器对象作为一个“附件”依附在这个channel上
+        //（解码器负责保存还不完整的信息）
+        //读缓存区从池中借用（direct 缓存区），连接关闭时由 SocketChannelReadHandle 归还
+        PooledBuffer readBuffer = SocketServerAIOExample.BUFFER_POOL.acquire(50);
+        socketChannel.read(readBuffer.buffer(), SocketServerAIOExample.CODEC.newDecoder(), new SocketChannelReadHandle(socketChannel , readBuffer));
     }
 
     /* (non-Javadoc)
@@ -111,7 +134,7 @@ class ServerSocketChannelHandle implements CompletionHandler<AsynchronousSocketC
  * 对是一个对象引用（但这没关系，因为您不会直接操作这个AsynchronousChannelProvider对象）。
  * @author yinwenjie
  */
-class SocketChannelReadHandle implements CompletionHandler<Integer, StringBuffer> {
+class SocketChannelReadHandle implements CompletionHandler<Integer, FrameDecoder> {
     /**
      * 日志
      */
@@ -120,29 +143,34 @@ class SocketChannelReadHandle implements CompletionHandler<Integer, StringBuffer
     private AsynchronousSocketChannel socketChannel;
 
     /**
-     * 专门用于进行这个通道数据缓存操作的ByteBuffer<br>
+     * 专门用于进行这个通道数据缓存操作的ByteBuffer（从池中借用，通道关闭时归还）<br>
      * 当然，您也可以作为CompletionHandler的attachment形式传入。<br>
-     * 这是，在这段示例代码中，attachment被我们用来记录所有传送过来的Stringbuffer了。
+     * 这是，在这段示例代码中，attachment被我们用来传递这个通道的解码器了。
      */
+    private PooledBuffer pooledBuffer;
+
     private ByteBuffer byteBuffer;
 
-    public SocketChannelReadHandle(AsynchronousSocketChannel socketChannel , ByteBuffer byteBuffer) {
+    /**
+     * 是否已经回发过处理结果。AIO不允许在上一次write完成之前再发起write（否则抛出WritePendingException），
+     * 这个例子每个连接只回发一次；需要连续回发多条时请使用AioSession的发送队列
+     */
+    private boolean replied;
+
+    public SocketChannelReadHandle(AsynchronousSocketChannel socketChannel , PooledBuffer pooledBuffer) {
         this.socketChannel = socketChannel;
-        this.byteBuffer = byteBuffer;
+        this.pooledBuffer = pooledBuffer;
+        this.byteBuffer = pooledBuffer.buffer();
     }
 
     /* (non-Javadoc)
      * @see java.nio.channels.CompletionHandler#completed(java.lang.Object, java.lang.Object)
      */
     @Override
-    public void completed(Integer result, StringBuffer historyContext) {
+    public void completed(Integer result, FrameDecoder decoder) {
         //如果条件成立，说明客户端主动终止了TCP套接字，这时服务端终止就可以了
         if(result == -1) {
-            try {
-                this.socketChannel.close();
-            } catch (IOException e) {
-                SocketChannelReadHandle.LOGGER.error(e.getMessage(), e);
-            }
+            this.close();
             return;
         }
 
@@ -155,42 +183,100 @@ class SocketChannelReadHandle implements CompletionHandler<Integer, StringBuffer
          * 但区别是，JAVA AIO框架中，我们不需要专门考虑处理这样的情况，因为JAVA AIO框架已经帮我们做了处理（做成了多次通知）
          * */
         this.byteBuffer.flip();
-        byte[] contexts = new byte[1024];
-        this.byteBuffer.get(contexts, 0, result);
-        this.byteBuffer.clear();
+        List<Frame> frames = new ArrayList<>();
         try {
-            String nowContent = new String(contexts , 0 , result , "UTF-8");
-            historyContext.append(nowContent);
-            SocketChannelReadHandle.LOGGER.info("================目前的传输结果：" + historyContext);
-        } catch (UnsupportedEncodingException e) {
-            SocketChannelReadHandle.LOGGER.error(e.getMessage(), e);
+            decoder.decode(this.byteBuffer, frames);
+        } catch (IOException e) {
+            SocketChannelReadHandle.LOGGER.error("客户端发来的数据格式错误，关闭TCP通道 : " + e.getMessage());
+            this.failed(e, decoder);
+            return;
         }
+        this.byteBuffer.clear();
 
-        //如果条件成立，说明还没有接收到“结束标记”
-        if(historyContext.indexOf("over") == -1) {
+        //如果条件成立，说明还没有接收到完整的信息：一定要重新发起read，否则这个通道不会再收到通知，跨两次读取的信息就永远收不完了
+        if(frames.isEmpty()) {
+            this.socketChannel.read(this.byteBuffer, decoder, this);
             return;
         }
 
         //=========================================================================
-        //          和上篇文章的代码相同，我们以“over”符号作为客户端完整信息的标记
+        //          由解码器判断信息是否完整（默认还是以“over”符号作为客户端完整信息的标记）
         //=========================================================================
-        SocketChannelReadHandle.LOGGER.info("=======收到完整信息，开始处理业务=========");
-        historyContext = new StringBuffer();
+        for (Frame frame : frames) {
+            SocketChannelReadHandle.LOGGER.info("=======收到完整信息，开始处理业务=========" + frame.getPayloadAsString(Charset.forName("UTF-8")));
+        }
+
+        //回发处理结果（每个连接只回发一次）。写完成之后由SocketChannelWriteHandle关闭通道，
+        //这时还在进行中的read会以失败通知（AsynchronousCloseException），由failed方法归还读缓存区
+        if(!this.replied) {
+            this.replied = true;
+            ByteBuffer response = SocketServerAIOExample.CODEC.encode("SocketServerAIOExample 回发处理结果".getBytes());
+            this.socketChannel.write(response, response, new SocketChannelWriteHandle(this.socketChannel));
+        }
 
         //还要继续监听（一次监听一次通知）
-        this.socketChannel.read(this.byteBuffer, historyContext, this);
+        this.socketChannel.read(this.byteBuffer, decoder, this);
     }
 
     /* (non-Javadoc)
      * @see java.nio.channels.CompletionHandler#failed(java.lang.Throwable, java.lang.Object)
      */
     @Override
-    public void failed(Throwable exc, StringBuffer historyContext) {
+    public void failed(Throwable exc, FrameDecoder decoder) {
         SocketChannelReadHandle.LOGGER.info("=====发现客户端异常关闭，服务器将关闭TCP通道");
+        this.close();
+    }
+
+    /**
+     * 关闭通道，并把读缓存区归还到池中（此时这个通道上已经没有进行中的 read 了）
+     */
+    private void close() {
         try {
             this.socketChannel.close();
         } catch (IOException e) {
             SocketChannelReadHandle.LOGGER.error(e.getMessage(), e);
+        } finally {
+            this.pooledBuffer.releaseIfNeeded();
+        }
+    }
+}
+
+/**
+ * 负责回发处理结果：一次write可能只写出了一部分（内核的发送缓存区满了），
+ * 这时在完成通知中对剩下的部分再发起write（写完成之前不能发起下一次write），全部写完之后关闭通道。
+ */
+class SocketChannelWriteHandle implements CompletionHandler<Integer, ByteBuffer> {
+    /**
+     * 日志
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocketChannelWriteHandle.class);
+
+    private AsynchronousSocketChannel socketChannel;
+
+    public SocketChannelWriteHandle(AsynchronousSocketChannel socketChannel) {
+        this.socketChannel = socketChannel;
+    }
+
+    @Override
+    public void completed(Integer result, ByteBuffer buffer) {
+        if(buffer.hasRemaining()) {
+            this.socketChannel.write(buffer, buffer, this);
+            return;
+        }
+        this.close();
+    }
+
+    @Override
+    public void failed(Throwable exc, ByteBuffer buffer) {
+        SocketChannelWriteHandle.LOGGER.info("=====回发处理结果失败，服务器将关闭TCP通道 : " + exc.getMessage());
+        this.close();
+    }
+
+    private void close() {
+        try {
+            this.socketChannel.close();
+        } catch (IOException e) {
+            SocketChannelWriteHandle.LOGGER.error(e.getMessage(), e);
         }
     }
 }
@@ -0,0 +1,203 @@
+package com.hong.bio;
+
+import com.hong.common.Configs;
+import com.hong.common.admission.AdmissionController;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.transport.MessageContext;
+import com.hong.common.transport.MessageHandler;
+import com.hong.common.transport.Transport;
+import com.hong.common.transport.TransportConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 阻塞 IO 的传输层（-Dtransport=bio）：一个 accept 线程，接收到的连接交给 {@link ConnectionExecutors} 创建的执行器，
+ * 每个连接在自己的线程中阻塞读取、处理、回发，和 SocketServer2 的方式一样。<br>
+ * 参数：-Dbio.executor 等（见 {@link ConnectionExecutors}）；
+ * -Dbio.keepAlive.idleTimeoutMillis：长连接（-Dtransport.closeAfterReply=false）上两条信息之间最多空闲多久，默认 30 秒；
+ * -Dadmission.*：accept 之前的准入控制（见 {@link AdmissionController}），不能接收时 accept 线程先睡一会儿再检查。
+ */
+public class BioTransport implements Transport {
+
+    private static final Logger logger = LoggerFactory.getLogger(BioTransport.class);
+
+    private volatile ServerSocket serverSocket;
+
+    private Executor executor;
+
+    private AdmissionController admission;
+
+    @Override
+    public String name() {
+        return "bio";
+    }
+
+    @Override
+    public InetSocketAddress start(final TransportConfig config, final MessageHandler handler) throws IOException {
+        if (this.serverSocket != null) {
+            throw new IllegalStateException("BioTransport 已经启动");
+        }
+        final int idleTimeoutMillis = Configs.getInt("bio.keepAlive.idleTimeoutMillis", config.isCloseAfterReply() ? 0 : 30000);
+        final ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(config.getAddress());
+        this.serverSocket = serverSocket;
+        this.executor = ConnectionExecutors.newExecutor("BioTransport");
+        final AdmissionController admission = AdmissionController.fromConfig("BioTransport");
+        this.admission = admission;
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    if (admission != null && !admit(admission)) {
+                        continue;
+                    }
+                    Socket socket;
+                    try {
+                        socket = serverSocket.accept();
+                    } catch (IOException e) {
+                        if (admission != null) {
+                            admission.cancelAdmission();
+                        }
+                        if (!serverSocket.isClosed()) {
+                            logger.error("BioTransport accept 失败 : " + e.getMessage(), e);
+                        }
+                        continue;
+                    }
+                    try {
+                        executor.execute(new Connection(socket, config, handler, idleTimeoutMillis, admission));
+                    } catch (RejectedExecutionException e) {
+                        // 线程池已经饱和，直接关闭这个连接，让客户端稍后重试
+                        logger.warn("BioTransport 拒绝来自端口：" + socket.getPort() + "的连接 : " + e.getMessage());
+                        closeQuietly(socket);
+                        if (admission != null) {
+                            admission.connectionClosed();
+                        }
+                    }
+                }
+            }
+        }, "BioTransport-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * 准入检查，不能接收时 accept 线程睡眠一段时间（连接留在 backlog 中）
+     * @return 是否可以 accept
+     */
+    private static boolean admit(AdmissionController admission) {
+        AdmissionController.RejectReason reason = admission.tryAdmit();
+        if (reason == null) {
+            return true;
+        }
+        try {
+            Thread.sleep(admission.getPauseMillis(reason));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        ServerSocket serverSocket = this.serverSocket;
+        if (serverSocket != null) {
+            closeQuietly(serverSocket);
+        }
+        if (this.executor instanceof BoundedWorkerPool) {
+            ((BoundedWorkerPool) this.executor).shutdown();
+        }
+        if (this.admission != null) {
+            this.admission.unregisterMBean();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 一个连接：阻塞读取一帧、交给处理器、回发响应，直到对方关闭连接（或者处理完一条信息后由服务器关闭）
+     */
+    private static class Connection implements Runnable {
+
+        private final Socket socket;
+
+        private final TransportConfig config;
+
+        private final MessageHandler handler;
+
+        private final int idleTimeoutMillis;
+
+        private final AdmissionController admission;
+
+        Connection(Socket socket, TransportConfig config, MessageHandler handler, int idleTimeoutMillis, AdmissionController admission) {
+            this.socket = socket;
+            this.config = config;
+            this.handler = handler;
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            this.admission = admission;
+        }
+
+        @Override
+        public void run() {
+            FrameCodec codec = this.config.getCodec();
+            MessageContext context = new MessageContext("bio", (InetSocketAddress) this.socket.getRemoteSocketAddress());
+            try {
+                this.socket.setSoTimeout(this.idleTimeoutMillis);
+                OutputStream out = new BufferedOutputStream(this.socket.getOutputStream());
+                FrameReader reader = new FrameReader(this.socket.getInputStream(), codec.newDecoder(), 1024);
+                Frame frame;
+                while ((frame = reader.readFrame()) != null) {
+                    Frame response = this.handler.handle(context, frame);
+                    if (response != null) {
+                        write(out, codec.encode(response));
+                    }
+                    if (this.config.isCloseAfterReply()) {
+                        break;
+                    }
+                    // 客户端连续发来的多条请求（pipelining）已经在缓存中时，先不 flush，处理完后一起发送
+                    if (!reader.hasBufferedFrames()) {
+                        out.flush();
+                    }
+                }
+                out.flush();
+            } catch (Exception e) {
+                logger.error("BioTransport 处理端口：" + context.getRemotePort() + "的连接异常 : " + e.getMessage(), e);
+            } finally {
+                closeQuietly(this.socket);
+                if (this.admission != null) {
+                    this.admission.connectionClosed();
+                }
+            }
+        }
+
+        private static void write(OutputStream out, ByteBuffer encoded) throws IOException {
+            if (encoded.hasArray()) {
+                out.write(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+                return;
+            }
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            out.write(bytes);
+        }
+    }
+}
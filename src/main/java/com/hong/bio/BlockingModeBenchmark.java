@@ -0,0 +1,187 @@
+package com.hong.bio;
+
+import com.hong.common.Configs;
+import com.hong.common.bench.BenchmarkSupport;
+import com.hong.common.bench.LatencyRecorder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 比较阻塞式服务器在不同执行模式（thread / virtual / pool）下：
+ * 1、能同时 "挂住" 多少个阻塞中的连接（每个连接的 SocketServerThread 都阻塞在 read 上）；<br>
+ * 2、所有连接同时发出请求时，响应延迟的 p50 / p99。<br>
+ * 服务器和客户端运行在同一个 JVM 中，服务器监听随机端口，客户端使用一个 selector 驱动全部连接。
+ * 参数：-Dbench.connections（默认 2000）、-Dbench.modes（默认 thread,virtual,pool）。
+ * 注意连接数较大时要先调大 ulimit -n。
+ */
+public class BlockingModeBenchmark {
+
+    private static final byte[] REQUEST = "BlockingModeBenchmark request over".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkSupport.quietLogging();
+        int connections = Configs.getInt("bench.connections", 2000);
+        String[] modes = Configs.getString("bench.modes", "thread,virtual,pool").split(",");
+
+        System.out.println("JVM " + System.getProperty("java.version") + "，虚拟线程支持：" + ConnectionExecutors.isVirtualThreadSupported());
+        for (String mode : modes) {
+            run(mode.trim(), connections);
+        }
+    }
+
+    private static void run(String mode, int connections) throws Exception {
+        final Executor executor = ConnectionExecutors.newExecutor("BlockingModeBenchmark-" + mode, mode);
+        final ServerSocket serverSocket = new ServerSocket(0, connections, InetAddress.getLoopbackAddress());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger dispatchFailures = new AtomicInteger();
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    final Socket socket;
+                    try {
+                        socket = serverSocket.accept();
+                    } catch (IOException e) {
+                        return;
+                    }
+                    final SocketServerThread handler = new SocketServerThread(socket);
+                    try {
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                running.incrementAndGet();
+                                try {
+                                    handler.run();
+                                } finally {
+                                    running.decrementAndGet();
+                                }
+                            }
+                        });
+                    } catch (Throwable e) {
+                        // 包括线程池拒绝，以及平台线程过多时的 OutOfMemoryError: unable to create native thread
+                        dispatchFailures.incrementAndGet();
+                        try {
+                            socket.close();
+                        } catch (IOException ignore) {
+                        }
+                    }
+                }
+            }
+        }, "benchmark-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        // ============ 第一阶段：建立连接，并等待服务器端的处理线程全部阻塞在 read 上
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        List<SocketChannel> channels = new ArrayList<>(connections);
+        long start = System.nanoTime();
+        try {
+            for (int index = 0; index < connections; index++) {
+                channels.add(SocketChannel.open(address));
+            }
+        } catch (IOException e) {
+            System.out.println("[" + mode + "] 第 " + channels.size() + " 个连接建立失败 : " + e.getMessage());
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        int held = running.get();
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            int now = running.get();
+            if (now == held && now + dispatchFailures.get() >= channels.size()) {
+                break;
+            }
+            held = now;
+        }
+        held = running.get();
+        long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // ============ 第二阶段：所有连接同时发出请求，测量响应延迟
+        LatencyRecorder latency = new LatencyRecorder(channels.size());
+        int failed = sendAndAwait(channels, latency);
+
+        System.out.println(String.format("[%s] connections=%d held=%d dispatchFailures=%d connect=%dms failedRequests=%d %s",
+                mode, channels.size(), held, dispatchFailures.get(), connectMillis, failed, latency.summary()));
+
+        serverSocket.close();
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        } else if (executor instanceof BoundedWorkerPool) {
+            ((BoundedWorkerPool) executor).shutdown();
+        }
+    }
+
+    /**
+     * 非阻塞地向所有连接写出请求，然后读取响应直到服务器关闭连接
+     * @return 没有收到任何响应内容的连接数
+     */
+    private static int sendAndAwait(List<SocketChannel> channels, LatencyRecorder latency) throws IOException {
+        Selector selector = Selector.open();
+        for (SocketChannel channel : channels) {
+            channel.configureBlocking(false);
+            // attachment : [0] 发送时间 [1] 收到的字节数
+            long[] state = new long[]{System.nanoTime(), 0};
+            channel.register(selector, SelectionKey.OP_READ, state);
+            ByteBuffer request = ByteBuffer.wrap(REQUEST);
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+        }
+
+        ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+        int pending = channels.size();
+        int failed = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (pending > 0 && System.nanoTime() < deadline) {
+            if (selector.select(100) == 0) {
+                continue;
+            }
+            Iterator<SelectionKey> selectionKeys = selector.selectedKeys().iterator();
+            while (selectionKeys.hasNext()) {
+                SelectionKey readyKey = selectionKeys.next();
+                selectionKeys.remove();
+                SocketChannel channel = (SocketChannel) readyKey.channel();
+                long[] state = (long[]) readyKey.attachment();
+                readBuffer.clear();
+                int realLen;
+                try {
+                    realLen = channel.read(readBuffer);
+                } catch (IOException e) {
+                    realLen = -1;
+                }
+                if (realLen > 0) {
+                    state[1] += realLen;
+                } else if (realLen == -1) {
+                    if (state[1] > 0) {
+                        latency.record(System.nanoTime() - state[0]);
+                    } else {
+                        failed++;
+                    }
+                    pending--;
+                    channel.close();
+                }
+            }
+        }
+        failed += pending;
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        selector.close();
+        return failed;
+    }
+}
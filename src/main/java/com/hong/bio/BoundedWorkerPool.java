@@ -0,0 +1,278 @@
+package com.hong.bio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界、可自我调节的 socket 处理线程池。<br>
+ * 1、线程数和排队队列都是有界的，连接突发（例如 SocketClientDaemon 一次放出 20 个客户端）时不会无限制地创建线程；<br>
+ * 2、饱和时按照 SaturationPolicy 处理：REJECT 直接拒绝（由 accept 线程关闭 socket），
+ * SLOW_ACCEPT 让 accept 线程阻塞等待队列空位，相当于放慢 accept，让积压留在操作系统的 backlog 中；<br>
+ * 3、控制线程周期性地测量连接在队列中的等待时间：等待时间超过目标值就扩容，长期空闲就缩容。<br>
+ * 队列深度、拒绝次数、线程数等指标通过 {@link WorkerPoolMXBean} 暴露。
+ */
+public class BoundedWorkerPool implements Executor, WorkerPoolMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedWorkerPool.class);
+
+    /**
+     * 线程池饱和（线程全忙并且队列已满）时的处理策略
+     */
+    public enum SaturationPolicy {
+        REJECT,
+        SLOW_ACCEPT
+    }
+
+    private final String name;
+
+    private final int minPoolSize;
+
+    private final int maxPoolSize;
+
+    private final int queueCapacity;
+
+    private final SaturationPolicy saturationPolicy;
+
+    /**
+     * SLOW_ACCEPT 模式下 accept 线程最多等待多久，超时后仍然拒绝
+     */
+    private final long slowAcceptTimeoutMillis;
+
+    /**
+     * 期望的排队等待时间上限，控制器以它为依据扩容/缩容
+     */
+    private final long targetQueueWaitNanos;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService controller;
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * 当前控制周期内，所有出队任务的排队时间之和与任务数
+     */
+    private final AtomicLong windowWaitNanos = new AtomicLong();
+
+    private final AtomicLong windowTaskCount = new AtomicLong();
+
+    private volatile double averageQueueWaitMillis;
+
+    private volatile int targetPoolSize;
+
+    public BoundedWorkerPool(String name, int minPoolSize, int maxPoolSize, int queueCapacity,
+                             SaturationPolicy saturationPolicy, long slowAcceptTimeoutMillis,
+                             long targetQueueWaitMillis, long controlPeriodMillis) {
+        if (minPoolSize < 1 || maxPoolSize < minPoolSize || queueCapacity < 1) {
+            throw new IllegalArgumentException("线程池参数不正确 : min=" + minPoolSize + ", max=" + maxPoolSize + ", queue=" + queueCapacity);
+        }
+        this.name = name;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.queueCapacity = queueCapacity;
+        this.saturationPolicy = saturationPolicy;
+        this.slowAcceptTimeoutMillis = slowAcceptTimeoutMillis;
+        this.targetQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetQueueWaitMillis);
+        this.targetPoolSize = minPoolSize;
+
+        // core == max，线程数完全由控制器决定，而不是由 "队列满了才创建新线程" 的默认规则决定
+        this.executor = new ThreadPoolExecutor(minPoolSize, minPoolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(name + "-worker"), new SaturationHandler());
+        this.executor.prestartAllCoreThreads();
+
+        this.controller = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(name + "-pool-controller"));
+        this.controller.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                adjust();
+            }
+        }, controlPeriodMillis, controlPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.executor.execute(new TimedTask(command));
+    }
+
+    /**
+     * 把自己注册到平台 MBeanServer，注册失败只影响监控，不影响服务
+     */
+    public BoundedWorkerPool registerMBean() {
+        try {
+            ObjectName objectName = new ObjectName("com.hong.bio:type=BoundedWorkerPool,name=" + this.name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            logger.warn("BoundedWorkerPool " + this.name + " 注册 JMX 失败 : " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    public void shutdown() {
+        this.controller.shutdownNow();
+        this.executor.shutdown();
+    }
+
+    /**
+     * 控制器：根据上一个周期测得的排队时间调整线程数。
+     * 任务执行时间很长时，排在队首的任务可能迟迟不出队，所以同时参考队首任务已经等待的时间。
+     */
+    private void adjust() {
+        long count = this.windowTaskCount.getAndSet(0);
+        long waitNanos = this.windowWaitNanos.getAndSet(0);
+        long averageWaitNanos = count == 0 ? 0 : waitNanos / count;
+        Runnable head = this.executor.getQueue().peek();
+        if (head instanceof TimedTask) {
+            averageWaitNanos = Math.max(averageWaitNanos, System.nanoTime() - ((TimedTask) head).enqueueNanos);
+        }
+        this.averageQueueWaitMillis = averageWaitNanos / 1000000.0;
+
+        int current = this.targetPoolSize;
+        int next = current;
+        if (averageWaitNanos > this.targetQueueWaitNanos && current < this.maxPoolSize) {
+            // 每次扩容 25%（至少一个线程），尽快追上突发流量
+            next = Math.min(this.maxPoolSize, current + Math.max(1, current / 4));
+        } else if (averageWaitNanos < this.targetQueueWaitNanos / 4
+                && this.executor.getQueue().isEmpty()
+                && this.executor.getActiveCount() < current / 2
+                && current > this.minPoolSize) {
+            // 缩容要慢一些，每个周期只减少一个线程，避免来回抖动
+            next = current - 1;
+        }
+        if (next != current) {
+            resize(next);
+            logger.info("BoundedWorkerPool " + this.name + " 调整线程数 " + current + " -> " + next
+                    + "，平均排队时间：" + this.averageQueueWaitMillis + "ms，队列深度：" + getQueueDepth()
+                    + "，累计拒绝：" + getRejectedCount());
+        }
+    }
+
+    private void resize(int size) {
+        // 先调整 max 再调整 core（扩容），或者反过来（缩容），保证任何时刻 core <= max
+        if (size > this.executor.getMaximumPoolSize()) {
+            this.executor.setMaximumPoolSize(size);
+            this.executor.setCorePoolSize(size);
+            this.executor.prestartAllCoreThreads();
+        } else {
+            this.executor.setCorePoolSize(size);
+            this.executor.setMaximumPoolSize(size);
+        }
+        this.targetPoolSize = size;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return this.executor.getPoolSize();
+    }
+
+    @Override
+    public int getTargetPoolSize() {
+        return this.targetPoolSize;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return this.executor.getCompletedTaskCount();
+    }
+
+    @Override
+    public double getAverageQueueWaitMillis() {
+        return this.averageQueueWaitMillis;
+    }
+
+    /**
+     * 记录入队时间的任务包装，出队执行时把排队时间计入当前控制周期
+     */
+    private class TimedTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long enqueueNanos;
+
+        TimedTask(Runnable task) {
+            this.task = task;
+            this.enqueueNanos = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            windowWaitNanos.addAndGet(System.nanoTime() - this.enqueueNanos);
+            windowTaskCount.incrementAndGet();
+            this.task.run();
+        }
+    }
+
+    /**
+     * 饱和处理：SLOW_ACCEPT 时让调用线程（也就是 accept 线程）在队列上等待空位
+     */
+    private class SaturationHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (saturationPolicy == SaturationPolicy.SLOW_ACCEPT && !executor.isShutdown()) {
+                try {
+                    if (executor.getQueue().offer(task, slowAcceptTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            rejectedCount.increment();
+            throw new RejectedExecutionException("BoundedWorkerPool " + name + " 已饱和，线程数：" + executor.getPoolSize()
+                    + "，队列深度：" + executor.getQueue().size());
+        }
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger index = new AtomicInteger();
+
+        private final String prefix;
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, this.prefix + "-" + this.index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.hong.bio;
+
+import com.hong.common.Configs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 阻塞式服务器（SocketServer2、SocketServer4）处理已经 accept 的 socket 时使用的执行器。<br>
+ * 通过 -Dbio.executor 选择：<br>
+ * thread（默认）：和原来一样，每个连接 new 一个线程；<br>
+ * virtual：每个连接一个虚拟线程（需要 JDK 21+），JVM 不支持时退回到 thread 模式；<br>
+ * pool：有界、可自我调节的 {@link BoundedWorkerPool}，相关参数：<br>
+ * -Dbio.pool.min / -Dbio.pool.max：线程数上下限；<br>
+ * -Dbio.pool.queue：排队队列长度；<br>
+ * -Dbio.pool.saturation：reject 或 slow-accept；<br>
+ * -Dbio.pool.slowAcceptTimeoutMillis：slow-accept 时 accept 线程最多等待的时间；<br>
+ * -Dbio.pool.targetWaitMillis：期望的排队等待时间上限；<br>
+ * -Dbio.pool.controlPeriodMillis：控制器的调节周期。
+ */
+public final class ConnectionExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionExecutors.class);
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor()，JVM 不支持虚拟线程时为 null。只查找一次
+     */
+    private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory();
+
+    private ConnectionExecutors() {
+    }
+
+    public static Executor newExecutor(String serverName) {
+        return newExecutor(serverName, Configs.getString("bio.executor", "thread"));
+    }
+
+    public static Executor newExecutor(String serverName, String mode) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            Executor executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                logger.info(serverName + " 使用 virtual-thread-per-connection 模式");
+                return executor;
+            }
+            logger.warn(serverName + " 当前 JVM（" + System.getProperty("java.version") + "）不支持虚拟线程，退回到 thread-per-connection 模式");
+            return newThreadPerConnectionExecutor();
+        }
+        if ("thread".equalsIgnoreCase(mode)) {
+            logger.info(serverName + " 使用 thread-per-connection 模式");
+            return newThreadPerConnectionExecutor();
+        }
+        if ("pool".equalsIgnoreCase(mode)) {
+            int processorsNumber = Runtime.getRuntime().availableProcessors();
+            BoundedWorkerPool pool = new BoundedWorkerPool(serverName,
+                    Configs.getInt("bio.pool.min", processorsNumber),
+                    Configs.getInt("bio.pool.max", processorsNumber * 16),
+                    Configs.getInt("bio.pool.queue", 256),
+                    "slow-accept".equalsIgnoreCase(Configs.getString("bio.pool.saturation", "reject"))
+                            ? BoundedWorkerPool.SaturationPolicy.SLOW_ACCEPT : BoundedWorkerPool.SaturationPolicy.REJECT,
+                    Configs.getLong("bio.pool.slowAcceptTimeoutMillis", 1000),
+                    Configs.getLong("bio.pool.targetWaitMillis", 20),
+                    Configs.getLong("bio.pool.controlPeriodMillis", 500));
+            logger.info(serverName + " 使用有界线程池模式 : min=" + pool.getTargetPoolSize() + ", queue=" + pool.getQueueCapacity());
+            return pool.registerMBean();
+        }
+        throw new IllegalArgumentException("不支持的 bio.executor : " + mode);
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+    }
+
+    /**
+     * @return 不支持虚拟线程时返回 null
+     */
+    static Executor newVirtualThreadExecutor() {
+        if (VIRTUAL_THREAD_EXECUTOR_FACTORY == null) {
+            return null;
+        }
+        try {
+            return (Executor) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("创建虚拟线程执行器失败 : " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 工程按照 sourceCompatibility = 1.8 编译，不能直接引用 JDK 21 的 API，
+     * 所以通过反射查找 Executors.newVirtualThreadPerTaskExecutor()，只在用到时才调用它创建执行器。
+     * JDK 19/20 中虚拟线程还是预览特性（没有 --enable-preview 时调用会抛出 UnsupportedOperationException），不使用。
+     * @return 不支持虚拟线程时返回 null
+     */
+    private static Method findVirtualThreadExecutorFactory() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        try {
+            if (version.startsWith("1.") || Integer.parseInt(version) < 21) {
+                return null;
+            }
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 原来的做法：每个连接一个新线程
+     */
+    static Executor newThreadPerConnectionExecutor() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                new Thread(command).start();
+            }
+        };
+    }
+}
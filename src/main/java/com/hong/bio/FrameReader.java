@@ -0,0 +1,66 @@
+package com.hong.bio;
+
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 从一个连接中一帧一帧地读取信息，分帧方式由 {@link FrameDecoder} 决定。<br>
+ * 每次 read 都尽量多读，读到的字节里如果已经包含了下一条（甚至下几条）信息，
+ * 就留在缓存中，下次直接返回，不需要再等待网络。这样客户端可以不等响应、连续发送多条请求（pipelining）。
+ */
+class FrameReader {
+
+    private final InputStream in;
+
+    private final FrameDecoder decoder;
+
+    private final byte[] buffer;
+
+    /**
+     * 已经解码、还没有返回的帧
+     */
+    private final List<Frame> frames = new ArrayList<>();
+
+    private int next;
+
+    private boolean eof;
+
+    FrameReader(InputStream in, FrameDecoder decoder, int bufferSize) {
+        this.in = in;
+        this.decoder = decoder;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return 下一帧；对方关闭连接并且没有剩余数据时返回 null
+     */
+    Frame readFrame() throws IOException {
+        while (this.next == this.frames.size()) {
+            this.frames.clear();
+            this.next = 0;
+            if (this.eof) {
+                return null;
+            }
+            int realLen = this.in.read(this.buffer, 0, this.buffer.length);
+            if (realLen == -1) {
+                this.eof = true;
+                this.decoder.decodeLast(this.frames);
+            } else {
+                this.decoder.decode(this.buffer, 0, realLen, this.frames);
+            }
+        }
+        return this.frames.get(this.next++);
+    }
+
+    /**
+     * @return 缓存中是否已经有客户端提前发来的完整请求（也就是 pipelining 的后续请求）
+     */
+    boolean hasBufferedFrames() {
+        return this.next < this.frames.size();
+    }
+}
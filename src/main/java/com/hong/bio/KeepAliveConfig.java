@@ -0,0 +1,38 @@
+package com.hong.bio;
+
+import com.hong.common.Configs;
+
+/**
+ * 阻塞式服务器的长连接参数：<br>
+ * -Dbio.keepAlive.maxRequests：一个连接上最多处理多少条信息，默认 1，也就是原来 "一条信息一个连接" 的方式；<br>
+ * -Dbio.keepAlive.idleTimeoutMillis：连接上两条信息之间最多空闲多久，超时后服务器关闭连接。
+ * 开启长连接（maxRequests > 1）时默认 30 秒，否则默认不限制。
+ */
+class KeepAliveConfig {
+
+    private final int maxRequests;
+
+    private final int idleTimeoutMillis;
+
+    KeepAliveConfig(int maxRequests, int idleTimeoutMillis) {
+        if (maxRequests < 1 || idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("长连接参数不正确 : maxRequests=" + maxRequests + ", idleTimeoutMillis=" + idleTimeoutMillis);
+        }
+        this.maxRequests = maxRequests;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    static KeepAliveConfig fromConfig() {
+        int maxRequests = Configs.getInt("bio.keepAlive.maxRequests", 1);
+        int idleTimeoutMillis = Configs.getInt("bio.keepAlive.idleTimeoutMillis", maxRequests > 1 ? 30000 : 0);
+        return new KeepAliveConfig(maxRequests, idleTimeoutMillis);
+    }
+
+    int getMaxRequests() {
+        return this.maxRequests;
+    }
+
+    int getIdleTimeoutMillis() {
+        return this.idleTimeoutMillis;
+    }
+}
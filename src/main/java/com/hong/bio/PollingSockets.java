@@ -0,0 +1,195 @@
+package com.hong.bio;
+
+import com.hong.common.wait.WaitStrategy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 "在应用层面非阻塞地 accept / read" 的写法收拢到一起。<br>
+ * 原来的 SocketServer3、SocketServer4 是通过 setSoTimeout 让 accept / read 超时返回，
+ * 然后把每一次 SocketTimeoutException 当作一次循环。每次超时都要构造异常栈，代价很高，而且延迟只能是 10ms 的整数倍。<br>
+ * 现在改为使用非阻塞通道：accept 返回 null 或者 read 返回 0 就表示本轮没有数据，
+ * 由 {@link WaitStrategy} 决定怎样等待；如果是阻塞策略，就直接使用阻塞 IO。
+ */
+final class PollingSockets {
+
+    private PollingSockets() {
+    }
+
+    /**
+     * 打开服务器通道，阻塞策略下通道是阻塞的，否则是非阻塞的
+     */
+    static ServerSocketChannel openServerChannel(int port, WaitStrategy waitStrategy) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(waitStrategy.isBlocking());
+        return serverChannel;
+    }
+
+    /**
+     * 接收一个新的连接。非阻塞模式下，没有连接时按照等待策略等待，然后再次尝试
+     */
+    static Socket accept(ServerSocketChannel serverChannel, WaitStrategy waitStrategy) throws IOException, InterruptedException {
+        if (waitStrategy.isBlocking()) {
+            return serverChannel.accept().socket();
+        }
+        int idleRounds = 0;
+        long lastIdleNanos = 0;
+        while (true) {
+            SocketChannel socketChannel = serverChannel.accept();
+            if (socketChannel != null) {
+                if (idleRounds > 0) {
+                    waitStrategy.wakeup(lastIdleNanos);
+                }
+                return socketChannel.socket();
+            }
+            //===========================================================
+            //      执行到这里，说明本次 accept 没有接收到任何连接
+            //      原来在这里模拟 "事件X" 的处理，现在交给等待策略
+            //===========================================================
+            long start = System.nanoTime();
+            waitStrategy.idle(++idleRounds);
+            lastIdleNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @param timeoutMillis 读取时最多空闲多久（0 表示不限制），超时后抛出 SocketTimeoutException
+     */
+    static InputStream getInputStream(Socket socket, WaitStrategy waitStrategy, int timeoutMillis) throws IOException {
+        SocketChannel socketChannel = socket.getChannel();
+        if (waitStrategy.isBlocking() || socketChannel == null) {
+            socket.setSoTimeout(timeoutMillis);
+            return socket.getInputStream();
+        }
+        socketChannel.configureBlocking(false);
+        return new PolledInputStream(socketChannel, waitStrategy, timeoutMillis);
+    }
+
+    static OutputStream getOutputStream(Socket socket, WaitStrategy waitStrategy) throws IOException {
+        SocketChannel socketChannel = socket.getChannel();
+        if (waitStrategy.isBlocking() || socketChannel == null) {
+            return socket.getOutputStream();
+        }
+        socketChannel.configureBlocking(false);
+        return new PolledOutputStream(socketChannel, waitStrategy);
+    }
+
+    /**
+     * 非阻塞通道上的 InputStream：read 返回 0 时按照等待策略等待，直到读到数据、对方关闭或者超时
+     */
+    private static class PolledInputStream extends InputStream {
+
+        private final SocketChannel socketChannel;
+
+        private final WaitStrategy waitStrategy;
+
+        private final long timeoutNanos;
+
+        PolledInputStream(SocketChannel socketChannel, WaitStrategy waitStrategy, int timeoutMillis) {
+            this.socketChannel = socketChannel;
+            this.waitStrategy = waitStrategy;
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int realLen = read(single, 0, 1);
+            return realLen == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            ByteBuffer target = ByteBuffer.wrap(bytes, offset, length);
+            int idleRounds = 0;
+            long lastIdleNanos = 0;
+            long start = System.nanoTime();
+            while (true) {
+                int realLen = this.socketChannel.read(target);
+                if (realLen != 0) {
+                    if (idleRounds > 0) {
+                        this.waitStrategy.wakeup(lastIdleNanos);
+                    }
+                    return realLen;
+                }
+                //===========================================================
+                //      执行到这里，说明本次 read 没有接收到任何数据
+                //      原来在这里模拟 "事件Y" 的处理，现在交给等待策略
+                //===========================================================
+                long idleStart = System.nanoTime();
+                if (this.timeoutNanos > 0 && idleStart - start > this.timeoutNanos) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                try {
+                    this.waitStrategy.idle(++idleRounds);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("read 等待时被中断");
+                }
+                lastIdleNanos = System.nanoTime() - idleStart;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.socketChannel.close();
+        }
+    }
+
+    /**
+     * 非阻塞通道上的 OutputStream：发送缓存区满了（write 返回 0）时按照等待策略等待
+     */
+    private static class PolledOutputStream extends OutputStream {
+
+        private final SocketChannel socketChannel;
+
+        private final WaitStrategy waitStrategy;
+
+        PolledOutputStream(SocketChannel socketChannel, WaitStrategy waitStrategy) {
+            this.socketChannel = socketChannel;
+            this.waitStrategy = waitStrategy;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            write(new byte[]{(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer source = ByteBuffer.wrap(bytes, offset, length);
+            int idleRounds = 0;
+            while (source.hasRemaining()) {
+                if (this.socketChannel.write(source) > 0) {
+                    idleRounds = 0;
+                    continue;
+                }
+                try {
+                    this.waitStrategy.idle(++idleRounds);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("write 等待时被中断");
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.socketChannel.close();
+        }
+    }
+}
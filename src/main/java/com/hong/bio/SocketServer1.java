@@ -1,13 +1,19 @@
 package com.hong.bio;
 
+import com.hong.common.Configs;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.Charset;
 
 /**
  * 服务器端（com.hong.bio.SocketServer1）单个线程
@@ -18,7 +24,11 @@ public class SocketServer1 {
     private static final Logger logger = LoggerFactory.getLogger(SocketServer1.class);
 
     public static void main(String[] args) throws IOException {
-        ServerSocket serverSocket = new ServerSocket(83);
+        ServerSocket serverSocket = new ServerSocket(Configs.getServerPort());
+        // 通过 -Dbio.keepAlive.* 设置一个连接上最多处理多少条信息，以及最多空闲多久
+        KeepAliveConfig keepAliveConfig = KeepAliveConfig.fromConfig();
+        // 通过 -Dcodec 选择分帧协议：delimiter（"over" 结束标记）或 length（长度前缀的二进制帧）
+        FrameCodec codec = FrameCodecs.fromConfig();
 
         try {
             while (true) {
@@ -26,25 +36,38 @@ public class SocketServer1 {
                 Socket socket = serverSocket.accept();
 
                 // 下面我们收取信息（这里还是阻塞式的,一直等待，直到有数据可以接受）
+                socket.setSoTimeout(keepAliveConfig.getIdleTimeoutMillis());
                 InputStream in = socket.getInputStream();
-                OutputStream out = socket.getOutputStream();
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
                 Integer sourcePort = socket.getPort();
                 int maxLen = 2048;
-                byte[] contextBytes = new byte[maxLen];
                 // read的时候，程序也会被阻塞，直到操作系统把网络传来的数据准备好。
-                int realLen = in.read(contextBytes, 0, maxLen);
-                // 读取信息
-                String message = new String(contextBytes, 0, realLen);
+                FrameReader reader = new FrameReader(in, codec.newDecoder(), maxLen);
+                try {
+                    int handled = 0;
+                    Frame frame;
+                    while (handled < keepAliveConfig.getMaxRequests() && (frame = reader.readFrame()) != null) {
+                        handled++;
+                        // 读取信息
+                        String message = frame.getPayloadAsString(Charset.defaultCharset());
 
-                // 下面打印信息
-                logger.info("服务器收到来自于端口：" + sourcePort + "的信息：" + message);
+                        // 下面打印信息
+                        logger.info("服务器收到来自于端口：" + sourcePort + "的信息：" + message);
 
-                // 下面开始发送信息
-                out.write("com.hong.bio.SocketServer1 回发响应信息！".getBytes());
+                        // 下面开始发送信息
+                        out.write(codec.encodeToBytes("com.hong.bio.SocketServer1 回发响应信息！".getBytes()));
+                        // 客户端连续发来的多条请求（pipelining）已经在缓存中时，先不 flush，处理完后一起发送
+                        if (!reader.hasBufferedFrames()) {
+                            out.flush();
+                        }
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    // 单个连接出错（包括空闲超时）只关闭这个连接，服务器继续工作
+                    logger.warn("com.hong.bio.SocketServer1 端口：" + sourcePort + "的连接异常结束 : " + e.getMessage());
+                }
 
                 // 关闭
-                out.close();
-                in.close();
                 socket.close();
             }
         } catch (IOException e) {
@@ -1,13 +1,16 @@
 package com.hong.bio;
 
+import com.hong.common.Configs;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 使用多线程来优化服务器端的处理过程
@@ -18,7 +21,13 @@ public class SocketServer2 {
     private static final Logger logger = LoggerFactory.getLogger(SocketServer2.class);
 
     public static void main(String[] args) throws IOException {
-        ServerSocket serverSocket = new ServerSocket(83);
+        ServerSocket serverSocket = new ServerSocket(Configs.getServerPort());
+        // 通过 -Dbio.executor 选择每个连接一个线程、每个连接一个虚拟线程，还是有界线程池
+        Executor executor = ConnectionExecutors.newExecutor("SocketServer2");
+        // 通过 -Dbio.keepAlive.* 设置一个连接上最多处理多少条信息，以及最多空闲多久
+        KeepAliveConfig keepAliveConfig = KeepAliveConfig.fromConfig();
+        // 通过 -Dcodec 选择分帧协议：delimiter（"over" 结束标记）或 length（长度前缀的二进制帧）
+        FrameCodec codec = FrameCodecs.fromConfig();
 
         try {
             logger.info("com.hong.bio.SocketServer2 等待处理客户端请求...");
@@ -26,8 +35,14 @@ public class SocketServer2 {
                 Socket socket = serverSocket.accept();
                 // 当然业务处理过程可以交给一个线程（这里可以使用线程池），并且线程的创建是很耗资源的。
                 // 最终改变不了 .accept() 只能一个一个接受 socket 的情况，并且被阻塞的情况
-                SocketServerThread socketServerThread = new SocketServerThread(socket);
-                new Thread(socketServerThread).start();
+                SocketServerThread socketServerThread = new SocketServerThread(socket, keepAliveConfig, codec);
+                try {
+                    executor.execute(socketServerThread);
+                } catch (RejectedExecutionException e) {
+                    // 线程池已经饱和，直接关闭这个连接，让客户端稍后重试
+                    logger.warn("com.hong.bio.SocketServer2 拒绝来自端口：" + socket.getPort() + "的连接 : " + e.getMessage());
+                    socket.close();
+                }
             }
         } catch (IOException e) {
             logger.error(e.getMessage(), e);
@@ -38,63 +53,3 @@ public class SocketServer2 {
         }
     }
 }
-
-/**
- * 当然，接收到客户端的 socket 后，业务的处理过程可以交给一个线程来做。
- * 但还是改变不了 socket 被一个一个的做 accept() 的情况。
- * @author derek
- * @Date 2017/2/7 11:44
- */
-class SocketServerThread implements Runnable {
-
-    private static final Logger logger = LoggerFactory.getLogger(SocketServerThread.class);
-
-    private Socket socket;
-
-    public SocketServerThread(Socket socket) {
-        this.socket = socket;
-    }
-
-    @Override
-    public void run() {
-        InputStream in = null;
-        OutputStream out = null;
-        try {
-            in = socket.getInputStream();
-            out = socket.getOutputStream();
-            Integer sourcePort = socket.getPort();
-            int maxLen = 1024;
-            byte[] contextBytes = new byte[maxLen];
-            // 使用线程，同样无法解决 read 方法的阻塞问题，
-            // 也就是说 read 方法处同样被阻塞，直到操作系统有数据准备好
-            int realLen = in.read(contextBytes, 0, maxLen);
-            // 读取信息
-            String message = new String(contextBytes, 0, realLen);
-
-            // 下面打印信息
-            logger.info("服务器收到来自于端口：" + sourcePort + "的信息：" + message);
-
-            // 下面开始发送信息
-            out.write("com.hong.bio.SocketServer2 回发响应信息！".getBytes());
-
-        } catch (Exception e) {
-            logger.error("com.hong.bio.SocketServer2 回发响应信息异常...", e.getMessage(), e);
-        } finally {
-            // 试图关闭
-            try {
-                if (in != null) {
-                    in.close();
-                }
-                if (out != null) {
-                    out.close();
-                }
-                if (this.socket != null) {
-                    this.socket.close();
-                }
-            } catch (IOException e) {
-                logger.error(e.getMessage(), e);
-            }
-        }
-
-    }
-}
\ No newline at end of file
@@ -1,84 +1,94 @@
 package com.hong.bio;
 
+import com.hong.common.Configs;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
+import com.hong.common.wait.WaitStrategies;
+import com.hong.common.wait.WaitStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.Charset;
 
 /**
  * socket套接字同样支持等待超时时间设置
+ * （现在改为由等待策略决定 accept 没有连接时怎样等待，不再依靠 SocketTimeoutException）
  * Created by derek on 2017/2/7.
  */
 public class SocketServer2TimeOut {
 
     private static final Logger logger = LoggerFactory.getLogger(SocketServer2.class);
 
-    private static Object xWait = new Object();
-
     public static void main(String[] args) throws IOException, InterruptedException {
-        ServerSocket serverSocket = null;
+        ServerSocketChannel serverChannel = null;
+        // 通过 -Dbio.wait 选择等待策略（spin / yield / backoff / blocking）
+        WaitStrategy waitStrategy = WaitStrategies.fromConfig("bio");
+        // 通过 -Dbio.keepAlive.* 设置一个连接上最多处理多少条信息，以及最多空闲多久
+        KeepAliveConfig keepAliveConfig = KeepAliveConfig.fromConfig();
+        // 通过 -Dcodec 选择分帧协议：delimiter（"over" 结束标记）或 length（长度前缀的二进制帧）
+        FrameCodec codec = FrameCodecs.fromConfig();
 
         try {
             logger.info("com.hong.bio.SocketServer2TimeOut 等待处理客户端请求...");
 
-            serverSocket = new ServerSocket(83);
-            serverSocket.setSoTimeout(100);
+            serverChannel = PollingSockets.openServerChannel(Configs.getServerPort(), waitStrategy);
 
             while (true) {
-                Socket socket = null;
-
-                try {
-                    socket = serverSocket.accept();
-                } catch (IOException e) {
-                    //===========================================================
-                    //      执行到这里，说明本次accept没有接收到任何数据报文
-                    //      主线程在这里就可以做一些事情，记为X
-                    //===========================================================
-                    synchronized (SocketServer2TimeOut.xWait) {
-                        logger.info("这次没有从底层接收到任务数据报文，等待10毫秒，模拟事件X的处理时间");
-                        SocketServer2TimeOut.xWait.wait(10);
-                    }
-                    continue;
-                }
+                //===========================================================
+                //      本次 accept 没有接收到任何连接时，
+                //      由等待策略决定主线程怎样等待（原来这里模拟的是事件X的处理）
+                //===========================================================
+                Socket socket = PollingSockets.accept(serverChannel, waitStrategy);
 
+                // 数据的读取依然是阻塞的，socket 的读取同样支持等待超时时间设置（用于长连接的空闲超时）
+                socket.setSoTimeout(keepAliveConfig.getIdleTimeoutMillis());
                 InputStream in = socket.getInputStream();
-                OutputStream out = socket.getOutputStream();
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
                 Integer sourcePort = socket.getPort();
                 int maxLen = 2048;
-                byte[] contextBytes = new byte[maxLen];
-                int realLen;
-                StringBuffer message = new StringBuffer();
-                while ((realLen = in.read(contextBytes, 0, maxLen)) != -1) {
-                    message.append(new String(contextBytes, 0, realLen));
-                    /**
-                     * 我们假设读取到“over”关键字，
-                     * 表示客户端的所有信息在经过若干次传送后，完成
-                     **/
-                    if (message.indexOf("over") != -1) {
-                        break;
+                /**
+                 * 我们假设读取到“over”关键字，
+                 * 表示客户端的一条信息在经过若干次传送后，完成。
+                 * 长连接时，一个连接上会依次处理多条信息
+                 **/
+                FrameReader reader = new FrameReader(in, codec.newDecoder(), maxLen);
+                try {
+                    int handled = 0;
+                    Frame frame;
+                    while (handled < keepAliveConfig.getMaxRequests() && (frame = reader.readFrame()) != null) {
+                        handled++;
+                        String message = frame.getPayloadAsString(Charset.defaultCharset());
+                        // 下面打印信息
+                        logger.info("服务器收到来自于端口：" + sourcePort + "的信息：" + message);
+
+                        // 下面开始发送信息
+                        out.write(codec.encodeToBytes("com.hong.bio.SocketServer2TimeOut 回发响应信息！".getBytes()));
+                        // 客户端连续发来的多条请求（pipelining）已经在缓存中时，先不 flush，处理完后一起发送
+                        if (!reader.hasBufferedFrames()) {
+                            out.flush();
+                        }
                     }
+                    out.flush();
+                } catch (IOException e) {
+                    // 单个连接出错（包括空闲超时）只关闭这个连接，服务器继续工作
+                    logger.warn("com.hong.bio.SocketServer2TimeOut 端口：" + sourcePort + "的连接异常结束 : " + e.getMessage());
                 }
 
-                // 下面打印信息
-                logger.info("服务器收到来自于端口：" + sourcePort + "的信息：" + message);
-
-                // 下面开始发送信息
-                out.write("com.hong.bio.SocketServer2TimeOut 回发响应信息！".getBytes());
-
                 // 关闭
-                out.close();
-                in.close();
                 socket.close();
             }
         } catch (IOException e) {
             logger.error(e.getMessage(), e);
         } finally {
-            if (serverSocket != null) {
-                serverSocket.close();
+            if (serverChannel != null) {
+                serverChannel.close();
             }
         }
     }
@@ -1,13 +1,21 @@
 package com.hong.bio;
 
+import com.hong.common.Configs;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
+import com.hong.common.wait.WaitStrategies;
+import com.hong.common.wait.WaitStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.Charset;
 
 /**
  * 改进read()方式，让它也变成非阻塞模式
@@ -17,66 +25,56 @@ public class SocketServer3 {
 
     private static final Logger logger = LoggerFactory.getLogger(SocketServer3.class);
 
-    private static Object xWait = new Object();
-
     public static void main(String[] args) throws IOException, InterruptedException {
-        ServerSocket serverSocket = null;
+        ServerSocketChannel serverChannel = null;
+        // accept / read 没有数据时怎样等待，通过 -Dbio.wait 选择（spin / yield / backoff / blocking）
+        WaitStrategy waitStrategy = WaitStrategies.fromConfig("bio");
+        // 通过 -Dbio.keepAlive.* 设置一个连接上最多处理多少条信息，以及最多空闲多久
+        KeepAliveConfig keepAliveConfig = KeepAliveConfig.fromConfig();
+        // 通过 -Dcodec 选择分帧协议：delimiter（"over" 结束标记）或 length（长度前缀的二进制帧）
+        FrameCodec codec = FrameCodecs.fromConfig();
 
         try {
-            serverSocket = new ServerSocket(83);
-            serverSocket.setSoTimeout(100);
+            serverChannel = PollingSockets.openServerChannel(Configs.getServerPort(), waitStrategy);
 
             while (true) {
-                Socket socket = null;
-                try {
-                    socket = serverSocket.accept();
-                } catch (IOException e) {
-                    synchronized (SocketServer3.xWait) {
-                        logger.info("这次没有从底层接收到任何TCP连接，等待10毫秒，模拟事件X的处理时间");
-                        SocketServer3.xWait.wait(10);
-                    }
-                    continue;
-                }
+                // 没有连接时不再依靠 SocketTimeoutException 循环，而是由等待策略决定怎样等待
+                Socket socket = PollingSockets.accept(serverChannel, waitStrategy);
 
-                InputStream in = socket.getInputStream();
-                OutputStream out = socket.getOutputStream();
+                // 下面我们收取信息（设置成非阻塞方式，这样 read 信息的时候，又可以做一些其它事情）
+                InputStream in = PollingSockets.getInputStream(socket, waitStrategy, keepAliveConfig.getIdleTimeoutMillis());
+                OutputStream out = new BufferedOutputStream(PollingSockets.getOutputStream(socket, waitStrategy));
                 Integer sourcePort = socket.getPort();
                 int maxLen = 2048;
-                byte[] contextBytes = new byte[maxLen];
-                int realLine;
-                StringBuffer message = new StringBuffer();
-                // 下面我们收取信息（设置成非阻塞方式，这样 read 信息的时候，又可以做一些其它事情）
-                socket.setSoTimeout(10);
-                BIORead:while (true) {
-                    try {
-                        while ((realLine = in.read(contextBytes, 0, maxLen)) != -1) {
-                            message = message.append(new String(contextBytes, 0, realLine));
-                            /**
-                             * 我们假设读取到“over”关键字，
-                             * 表示客户端的所有信息在经过若干次传送后，完成
-                             **/
-                            if (message.indexOf("over") != -1) {
-                                break BIORead;
-                            }
+                /**
+                 * 我们假设读取到“over”关键字，
+                 * 表示客户端的一条信息在经过若干次传送后，完成。
+                 * 长连接时，一个连接上会依次处理多条信息
+                 **/
+                FrameReader reader = new FrameReader(in, codec.newDecoder(), maxLen);
+                try {
+                    int handled = 0;
+                    Frame frame;
+                    while (handled < keepAliveConfig.getMaxRequests() && (frame = reader.readFrame()) != null) {
+                        handled++;
+                        String message = frame.getPayloadAsString(Charset.defaultCharset());
+                        // 下面打印信息
+                        logger.info("服务器收到来自于端口：" + sourcePort + "的信息：" + message);
+
+                        // 下面开始发送信息
+                        out.write(codec.encodeToBytes("com.hong.bio.SocketServer3 回发响应信息！".getBytes()));
+                        // 客户端连续发来的多条请求（pipelining）已经在缓存中时，先不 flush，处理完后一起发送
+                        if (!reader.hasBufferedFrames()) {
+                            out.flush();
                         }
-                    } catch (IOException e) {
-                        //===========================================================
-                        //      执行到这里，说明本次read没有接收到任何数据流
-                        //      主线程在这里又可以做一些事情，记为Y
-                        //===========================================================
-                        logger.info("这次没有从底层接收到任务数据报文，等待10毫秒，模拟事件Y的处理时间");
-                        continue;
                     }
+                    out.flush();
+                } catch (IOException e) {
+                    // 单个连接出错（包括空闲超时）只关闭这个连接，服务器继续工作
+                    logger.warn("com.hong.bio.SocketServer3 端口：" + sourcePort + "的连接异常结束 : " + e.getMessage());
                 }
-                // 下面打印信息
-                logger.info("服务器收到来自于端口：" + sourcePort + "的信息：" + message);
-
-                // 下面开始发送信息
-                out.write("com.hong.bio.SocketServer3 回发响应信息！".getBytes());
 
                 // 关闭
-                out.close();
-                in.close();
                 socket.close();
             }
 
@@ -85,8 +83,8 @@ public class SocketServer3 {
         } catch (IOException e) {
             logger.error("com.hong.bio.SocketServer3 : " + e.getMessage(), e);
         } finally {
-            if (serverSocket != null) {
-                serverSocket.close();
+            if (serverChannel != null) {
+                serverChannel.close();
             }
         }
     }
@@ -1,13 +1,23 @@
 package com.hong.bio;
 
+import com.hong.common.Configs;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
+import com.hong.common.wait.WaitStrategies;
+import com.hong.common.wait.WaitStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 通过加入线程的概念，让socket server能够在应用层面，
@@ -18,34 +28,37 @@ public class SocketServer4 {
 
     private static final Logger logger = LoggerFactory.getLogger(SocketServer4.class);
 
-    private static Object xWait = new Object();
-
     public static void main(String[] args) throws IOException {
-        ServerSocket serverSocket = new ServerSocket(83);
-        serverSocket.setSoTimeout(100);
+        // accept / read 没有数据时怎样等待，通过 -Dbio.wait 选择（spin / yield / backoff / blocking）
+        WaitStrategy waitStrategy = WaitStrategies.fromConfig("bio");
+        ServerSocketChannel serverChannel = PollingSockets.openServerChannel(Configs.getServerPort(), waitStrategy);
+        // 通过 -Dbio.executor 选择每个连接一个线程、每个连接一个虚拟线程，还是有界线程池
+        Executor executor = ConnectionExecutors.newExecutor("SocketServer4");
+        // 通过 -Dbio.keepAlive.* 设置一个连接上最多处理多少条信息，以及最多空闲多久
+        KeepAliveConfig keepAliveConfig = KeepAliveConfig.fromConfig();
+        // 通过 -Dcodec 选择分帧协议：delimiter（"over" 结束标记）或 length（长度前缀的二进制帧）
+        FrameCodec codec = FrameCodecs.fromConfig();
 
         try {
             while (true) {
-                Socket socket = null;
-                try {
-                    socket = serverSocket.accept();
-                } catch (IOException e) {
-                    synchronized (SocketServer4.xWait) {
-                        logger.info("这次没有从底层接收到任何TCP连接，等待10毫秒，模拟事件X的处理时间");
-                        SocketServer4.xWait.wait(10);
-                    }
-                    continue;
-                }
+                // 没有连接时不再依靠 SocketTimeoutException 循环，而是由等待策略决定怎样等待
+                Socket socket = PollingSockets.accept(serverChannel, waitStrategy);
                 // 当然业务处理过程可以交给一个线程（这里可以使用线程池）, 并且线程的创建是很耗资源的。
                 // 最终改变不了 .accept() 只能一个一个接受 socket 连接的情况
-                SocketServer4Thread socketServer4Thread = new SocketServer4Thread(socket);
-                new Thread(socketServer4Thread).start();
+                SocketServer4Thread socketServer4Thread = new SocketServer4Thread(socket, waitStrategy, keepAliveConfig, codec);
+                try {
+                    executor.execute(socketServer4Thread);
+                } catch (RejectedExecutionException e) {
+                    // 线程池已经饱和，直接关闭这个连接，让客户端稍后重试
+                    logger.warn("com.hong.bio.SocketServer4 拒绝来自端口：" + socket.getPort() + "的连接 : " + e.getMessage());
+                    socket.close();
+                }
             }
         } catch (Exception e) {
             logger.error("com.hong.bio.SocketServer4 : " + e.getMessage(), e);
         } finally {
-            if (serverSocket != null) {
-                serverSocket.close();
+            if (serverChannel != null) {
+                serverChannel.close();
             }
         }
     }
@@ -63,8 +76,17 @@ class SocketServer4Thread implements Runnable {
 
     private Socket socket;
 
-    public SocketServer4Thread(Socket socket) {
+    private WaitStrategy waitStrategy;
+
+    private KeepAliveConfig keepAliveConfig;
+
+    private FrameCodec codec;
+
+    public SocketServer4Thread(Socket socket, WaitStrategy waitStrategy, KeepAliveConfig keepAliveConfig, FrameCodec codec) {
         this.socket = socket;
+        this.waitStrategy = waitStrategy;
+        this.keepAliveConfig = keepAliveConfig;
+        this.codec = codec;
     }
 
     @Override
@@ -73,42 +95,35 @@ class SocketServer4Thread implements Runnable {
         OutputStream out = null;
 
         try {
-            in = socket.getInputStream();
-            out = socket.getOutputStream();
+            // 下面我们收取信息（设置成非阻塞方式，这样 read 信息的时候，又可以做一些其它事情）
+            // read 返回 0 时由等待策略决定怎样等待，不再依靠 SocketTimeoutException
+            in = PollingSockets.getInputStream(this.socket, this.waitStrategy, this.keepAliveConfig.getIdleTimeoutMillis());
+            out = new BufferedOutputStream(PollingSockets.getOutputStream(this.socket, this.waitStrategy));
             Integer sourcePort = socket.getPort();
             int maxLen = 2048;
-            byte[] contextBytes = new byte[maxLen];
-            int realLen;
-            StringBuffer message = new StringBuffer();
-            // 下面我们收取信息（设置成非阻塞方式，这样 read 信息的时候，又可以做一些其它事情）
-            this.socket.setSoTimeout(10);
-            BIORead:while (true) {
-                try {
-                    while ((realLen = in.read(contextBytes, 0, maxLen)) != -1) {
-                        message.append(new String(contextBytes, 0, realLen));
-                        /**
-                         * 我们假设读取到“over”关键字，
-                         * 表示客户端的所有信息在经过若干次传送后，完成
-                         **/
-                        if (message.indexOf("over") != -1) {
-                            break BIORead;
-                        }
-                    }
-                } catch (IOException e) {
-                    //===========================================================
-                    //      执行到这里，说明本次read没有接收到任何数据流
-                    //      主线程在这里又可以做一些事情，记为Y
-                    //===========================================================
-                    logger.info("这次没有从底层接收到任务数据报文，等待10毫秒，模拟事件Y的处理时间");
-                    continue;
+            /**
+             * 我们假设读取到“over”关键字，
+             * 表示客户端的一条信息在经过若干次传送后，完成。
+             * 长连接时，一个连接上会依次处理多条信息
+             **/
+            FrameReader reader = new FrameReader(in, this.codec.newDecoder(), maxLen);
+            int handled = 0;
+            Frame frame;
+            while (handled < this.keepAliveConfig.getMaxRequests() && (frame = reader.readFrame()) != null) {
+                handled++;
+                String message = frame.getPayloadAsString(Charset.defaultCharset());
+                // 下面打印信息
+                Long threadId = Thread.currentThread().getId();
+                logger.info("服务器(线程：" + threadId + ")收到来自于端口：" + sourcePort + "的信息：" + message);
+
+                // 下面开始发送信息
+                out.write(this.codec.encodeToBytes("com.hong.bio.SocketServer4Thread : 回发响应信息！".getBytes()));
+                // 客户端连续发来的多条请求（pipelining）已经在缓存中时，先不 flush，处理完后一起发送
+                if (!reader.hasBufferedFrames()) {
+                    out.flush();
                 }
             }
-            // 下面打印信息
-            Long threadId = Thread.currentThread().getId();
-            logger.info("服务器(线程：" + threadId + ")收到来自于端口：" + sourcePort + "的信息：" + message);
-
-            // 下面开始发送信息
-            out.write("com.hong.bio.SocketServer4Thread : 回发响应信息！".getBytes());
+            out.flush();
 
             // 关闭
             out.close();
@@ -116,6 +131,11 @@ class SocketServer4Thread implements Runnable {
             this.socket.close();
         } catch (IOException e) {
             logger.error("com.hong.bio.SocketServer4Thread : " + e.getMessage(), e);
+            try {
+                this.socket.close();
+            } catch (IOException closeException) {
+                logger.error(closeException.getMessage(), closeException);
+            }
         }
     }
-}
\ No newline at end of file
+}
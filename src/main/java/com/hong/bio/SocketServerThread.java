@@ -0,0 +1,94 @@
+package com.hong.bio;
+
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+/**
+ * 当然，接收到客户端的 socket 后，业务的处理过程可以交给一个线程来做。
+ * 但还是改变不了 socket 被一个一个的做 accept() 的情况。
+ * @author derek
+ * @Date 2017/2/7 11:44
+ */
+class SocketServerThread implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketServerThread.class);
+
+    private Socket socket;
+
+    private KeepAliveConfig keepAliveConfig;
+
+    private FrameCodec codec;
+
+    public SocketServerThread(Socket socket) {
+        this(socket, new KeepAliveConfig(1, 0), FrameCodecs.fromConfig());
+    }
+
+    public SocketServerThread(Socket socket, KeepAliveConfig keepAliveConfig, FrameCodec codec) {
+        this.socket = socket;
+        this.keepAliveConfig = keepAliveConfig;
+        this.codec = codec;
+    }
+
+    @Override
+    public void run() {
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            this.socket.setSoTimeout(this.keepAliveConfig.getIdleTimeoutMillis());
+            in = socket.getInputStream();
+            out = new BufferedOutputStream(socket.getOutputStream());
+            Integer sourcePort = socket.getPort();
+            int maxLen = 1024;
+            // 使用线程，同样无法解决 read 方法的阻塞问题，
+            // 也就是说 read 方法处同样被阻塞，直到操作系统有数据准备好
+            FrameReader reader = new FrameReader(in, this.codec.newDecoder(), maxLen);
+            int handled = 0;
+            Frame frame;
+            while (handled < this.keepAliveConfig.getMaxRequests() && (frame = reader.readFrame()) != null) {
+                handled++;
+                // 读取信息
+                String message = frame.getPayloadAsString(Charset.defaultCharset());
+
+                // 下面打印信息
+                logger.info("服务器收到来自于端口：" + sourcePort + "的信息：" + message);
+
+                // 下面开始发送信息
+                out.write(this.codec.encodeToBytes("com.hong.bio.SocketServer2 回发响应信息！".getBytes()));
+                // 客户端连续发来的多条请求（pipelining）已经在缓存中时，先不 flush，处理完后一起发送
+                if (!reader.hasBufferedFrames()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+
+        } catch (Exception e) {
+            logger.error("com.hong.bio.SocketServer2 回发响应信息异常...", e.getMessage(), e);
+        } finally {
+            // 试图关闭
+            try {
+                if (in != null) {
+                    in.close();
+                }
+                if (out != null) {
+                    out.close();
+                }
+                if (this.socket != null) {
+                    this.socket.close();
+                }
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+
+    }
+}
\ No newline at end of file
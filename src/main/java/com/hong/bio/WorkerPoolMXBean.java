@@ -0,0 +1,42 @@
+package com.hong.bio;
+
+/**
+ * BoundedWorkerPool 通过 JMX 暴露的运行指标，
+ * 可以用 jconsole / jmc 观察，或者由监控系统采集后做饱和告警。
+ */
+public interface WorkerPoolMXBean {
+
+    /**
+     * 当前线程池中的线程数
+     */
+    int getPoolSize();
+
+    /**
+     * 自适应控制器当前设定的目标线程数
+     */
+    int getTargetPoolSize();
+
+    /**
+     * 正在处理 socket 的线程数
+     */
+    int getActiveCount();
+
+    /**
+     * 排队等待处理的连接数
+     */
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    /**
+     * 因为线程池饱和而被拒绝（并关闭）的连接数
+     */
+    long getRejectedCount();
+
+    long getCompletedTaskCount();
+
+    /**
+     * 上一个控制周期内，连接在队列中的平均等待时间（毫秒）
+     */
+    double getAverageQueueWaitMillis();
+}
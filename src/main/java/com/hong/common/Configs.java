@@ -0,0 +1,70 @@
+package com.hong.common;
+
+/**
+ * 读取启动参数（-Dkey=value）的小工具。
+ * 各个服务器的可调参数都通过 System property 传入，没有配置时使用默认值。
+ */
+public final class Configs {
+
+    /**
+     * 服务器监听、客户端连接的默认端口
+     */
+    public static final int DEFAULT_SERVER_PORT = 83;
+
+    private Configs() {
+    }
+
+    /**
+     * 所有服务器和客户端使用同一个参数 -Dserver.port 指定端口，默认 83
+     */
+    public static int getServerPort() {
+        return getInt("server.port", DEFAULT_SERVER_PORT);
+    }
+
+    /**
+     * 客户端连接的服务器地址，-Dserver.host，默认 localhost
+     */
+    public static String getServerHost() {
+        return getString("server.host", "localhost");
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("参数 " + key + " 不是合法的整数：" + value, e);
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("参数 " + key + " 不是合法的整数：" + value, e);
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+}
@@ -16,12 +16,23 @@ public class SocketClientDaemon {
 
     public static void main(String[] args) throws InterruptedException {
         Integer clientNumber = 20;
+        // -Dclient.pipeline=N 时，每个客户端在一个长连接上连续发送 N 条请求
+        int pipelineRequests = Configs.getInt("client.pipeline", 0);
+        // -Dcodec=length 时，使用支持长度前缀二进制帧的 SocketClientRequestThread
+        boolean useFrameCodec = "length".equalsIgnoreCase(Configs.getString("codec", "delimiter"));
         CountDownLatch countDownLatch = new CountDownLatch(clientNumber);
 
         // 分别开始启动这20个客户端
         for (int index = 0; index < clientNumber; index++, countDownLatch.countDown()) {
             logger.info("开始启动第【" + index + "】个客户端...");
-            SocketClientRequestThread2 client = new SocketClientRequestThread2(countDownLatch, index);
+            Runnable client;
+            if (useFrameCodec) {
+                client = new SocketClientRequestThread(countDownLatch, index);
+            } else if (pipelineRequests > 0) {
+                client = new SocketClientPipelineThread(countDownLatch, index, pipelineRequests);
+            } else {
+                client = new SocketClientRequestThread2(countDownLatch, index);
+            }
             new Thread(client).start();
         }
 
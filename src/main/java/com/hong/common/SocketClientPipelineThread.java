@@ -0,0 +1,84 @@
+package com.hong.common;
+
+import com.hong.common.codec.FrameCodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 一个 SocketClientPipelineThread 线程模拟一个使用长连接的客户端：
+ * 在同一个连接上不等待响应，连续发出多条以 "over"（或者 -Dcodec.delimiter 指定的标记）结尾的请求（pipelining），
+ * 然后关闭输出方向，读取服务器的全部响应。
+ * 服务器需要开启长连接，例如 -Dbio.keepAlive.maxRequests=100
+ */
+public class SocketClientPipelineThread implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketClientPipelineThread.class);
+
+    private CountDownLatch countDownLatch;
+
+    /**
+     * 这个线程的编号
+     */
+    private Integer clientIndex;
+
+    /**
+     * 一个连接上连续发送的请求数
+     */
+    private int requestNumber;
+
+    public SocketClientPipelineThread(CountDownLatch countDownLatch, Integer clientIndex, int requestNumber) {
+        this.countDownLatch = countDownLatch;
+        this.clientIndex = clientIndex;
+        this.requestNumber = requestNumber;
+    }
+
+    @Override
+    public void run() {
+        Socket socket = null;
+        try {
+            socket = new Socket(Configs.getServerHost(), Configs.getServerPort());
+            OutputStream clientRequest = socket.getOutputStream();
+            InputStream clientResponse = socket.getInputStream();
+
+            // 等待，直到 SocketClientDaemon 完成所有线程的启动，然后所有线程一起发送请求
+            this.countDownLatch.await();
+
+            // 不等待响应，连续发送多条请求
+            String delimiter = new String(FrameCodecs.delimiterFromConfig());
+            StringBuffer sendMessage = new StringBuffer();
+            for (int index = 0; index < this.requestNumber; index++) {
+                sendMessage.append("这是第" + this.clientIndex + "个客户端的第" + index + "个请求。" + delimiter);
+            }
+            clientRequest.write(sendMessage.toString().getBytes());
+            clientRequest.flush();
+            // 告诉服务器不会再有新的请求了，服务器处理完后会关闭连接
+            socket.shutdownOutput();
+            logger.info("第" + this.clientIndex + "个客户端的" + this.requestNumber + "个请求发送完成，等待服务器返回信息");
+
+            int maxLen = 1024;
+            byte[] contextBytes = new byte[maxLen];
+            int realLen;
+            StringBuffer message = new StringBuffer();
+            while ((realLen = clientResponse.read(contextBytes, 0, maxLen)) != -1) {
+                message.append(new String(contextBytes, 0, realLen));
+            }
+            logger.info("第" + this.clientIndex + "个客户端接收到服务器的信息：" + message);
+        } catch (Exception e) {
+            logger.error("第" + this.clientIndex + "个客户端请求异常 : " + e.getMessage(), e);
+        } finally {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.hong.common;
 
+import com.hong.common.codec.DelimiterFrameCodec;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
+import com.hong.common.codec.FrameDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,6 +12,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 /**
@@ -17,6 +26,11 @@ public class SocketClientRequestThread implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(SocketClientRequestThread.class);
 
+    /**
+     * 分帧协议，和服务器一样通过 -Dcodec 选择
+     */
+    private static final FrameCodec CODEC = FrameCodecs.fromConfig();
+
     private CountDownLatch countDownLatch;
 
     /**
@@ -42,13 +56,18 @@ public class SocketClientRequestThread implements Runnable {
         InputStream clientResponse = null;
 
         try {
-            socket = new Socket("localhost", 83);
+            socket = new Socket(Configs.getServerHost(), Configs.getServerPort());
             clientRequest = socket.getOutputStream();
             clientResponse = socket.getInputStream();
 
             // 等待，直到 com.hong.common.SocketClientDaemon 完成所有线程的启动，然后所有线程一起发送请求
             this.countDownLatch.await();
 
+            if (!(CODEC instanceof DelimiterFrameCodec)) {
+                requestWithFrame(clientRequest, clientResponse);
+                return;
+            }
+
             StringBuffer sendMessage = new StringBuffer();
             sendMessage.append("这是第" + this.clientIndex + "个客户端的请求。");
             /*if (this.clientIndex % 4 == 1) {
@@ -60,7 +79,8 @@ public class SocketClientRequestThread implements Runnable {
                 clientRequest.write(sendMessage.toString().getBytes());
                 clientRequest.flush();
             }
-            sendMessage.append("****over****");
+            // 结束标记和服务器一致，默认是 "over"，可以通过 -Dcodec.delimiter 修改
+            sendMessage.append("****" + new String(((DelimiterFrameCodec) CODEC).getDelimiter()) + "****");
             clientRequest.write(sendMessage.toString().getBytes());
             logger.info("send message : " + sendMessage.toString());
 
@@ -93,4 +113,37 @@ public class SocketClientRequestThread implements Runnable {
             }
         }
     }
+
+    /**
+     * 使用长度前缀的二进制帧发送请求：整条信息编码成一帧，但故意分成几次发送，
+     * 服务器端的解码器需要把它们拼接起来。响应同样是一帧，收到一帧就结束，不需要等服务器关闭连接
+     */
+    private void requestWithFrame(OutputStream clientRequest, InputStream clientResponse) throws IOException {
+        StringBuffer sendMessage = new StringBuffer();
+        for (int i = 0; i < 10; i++) {
+            sendMessage.append("这是第" + this.clientIndex + "个客户端的请求。");
+        }
+        ByteBuffer encoded = CODEC.encode(sendMessage.toString().getBytes("UTF-8"));
+        byte[] frameBytes = new byte[encoded.remaining()];
+        encoded.get(frameBytes);
+        int half = frameBytes.length / 2;
+        clientRequest.write(frameBytes, 0, half);
+        clientRequest.flush();
+        clientRequest.write(frameBytes, half, frameBytes.length - half);
+        clientRequest.flush();
+        logger.info("第" + this.clientIndex + "个客户端的请求帧（" + frameBytes.length + " 字节）发送完成，等待服务器返回信息");
+
+        FrameDecoder decoder = CODEC.newDecoder();
+        List<Frame> frames = new ArrayList<>();
+        byte[] contextBytes = new byte[1024];
+        int realLen;
+        while (frames.isEmpty() && (realLen = clientResponse.read(contextBytes, 0, contextBytes.length)) != -1) {
+            decoder.decode(contextBytes, 0, realLen, frames);
+        }
+        if (frames.isEmpty()) {
+            logger.warn("第" + this.clientIndex + "个客户端没有收到完整的响应帧");
+            return;
+        }
+        logger.info("接收到来自服务器的信息 : " + frames.get(0).getPayloadAsString(Charset.forName("UTF-8")));
+    }
 }
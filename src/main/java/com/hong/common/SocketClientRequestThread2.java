@@ -1,5 +1,6 @@
 package com.hong.common;
 
+import com.hong.common.codec.FrameCodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,7 +44,7 @@ public class SocketClientRequestThread2 implements Runnable{
         InputStream clientResponse = null;
 
         try {
-            socket = new Socket("localhost", 83);
+            socket = new Socket(Configs.getServerHost(), Configs.getServerPort());
             clientRequest = socket.getOutputStream();
             clientResponse = socket.getInputStream();
 
@@ -53,7 +54,9 @@ public class SocketClientRequestThread2 implements Runnable{
             // 发送请求信息
             clientRequest.write(URLEncoder.encode("这是第" + this.clientIndex + "个客户端的请求11。", "UTF-8").getBytes());
             clientRequest.flush();
-            clientRequest.write(URLEncoder.encode("这是第" + this.clientIndex + "个客户端的请求22。over", "UTF-8").getBytes());
+            clientRequest.write(URLEncoder.encode("这是第" + this.clientIndex + "个客户端的请求22。", "UTF-8").getBytes());
+            // 结束标记不做 URL 编码，和服务器一致，默认是 "over"，可以通过 -Dcodec.delimiter 修改
+            clientRequest.write(FrameCodecs.delimiterFromConfig());
 
             // 在这里等待，直到服务器返回信息
             logger.info("第" + this.clientIndex + "个客户端的请求发送完成，等待服务器返回信息");
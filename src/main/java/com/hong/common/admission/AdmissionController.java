@@ -0,0 +1,477 @@
+package com.hong.common.admission;
+
+import com.hong.common.Configs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 接收连接时的准入控制：在 accept 之前决定现在能不能再接收一个连接，不能的时候由服务器暂停 accept，
+ * 连接留在内核的 backlog 队列中等待（backlog 满了之后客户端的 SYN 会被丢弃并自动重传），而不是先接收下来再关闭。
+ * 重连风暴时服务器不会再一边接收大量连接、一边为它们分配缓存区，直到内存耗尽。<br>
+ * 三个条件，任何一个不满足都暂停 accept，过一段时间由服务器自动重新检查、恢复：<br>
+ * 1、连接速率：令牌桶，每秒补充 -Dadmission.rate 个令牌（默认 0，不限制），最多积攒 -Dadmission.burst 个（默认等于 rate）；<br>
+ * 2、并发连接数：-Dadmission.maxConnections（默认 0，不限制）；<br>
+ * 3、内存压力：堆内存使用率超过 -Dadmission.heapThreshold（例如 0.9），
+ * 或者直接内存使用率超过 -Dadmission.directThreshold（例如 0.9），默认 0，表示不检查。
+ * 堆内存按内存池分别估算：新生代（Eden、Survivor）取上次 GC 之后的使用量（Eden 在 GC 之后是 0），避免把还没有回收的垃圾当成压力，
+ * 负责它的 GC 一次都还没有执行过时才取当前使用量；
+ * 老年代取当前使用量：Parallel / Serial GC 的老年代只在 Full GC 时才更新 "GC 之后的使用量"（之前一直是 0），
+ * 重连风暴时对象不断晋升到老年代，用它的话直到 OOM 之前的那次 Full GC 都看不到压力；
+ * 直接内存是 JDK 的 direct 缓存区（ByteBuffer.allocateDirect）的使用量，上限取 -XX:MaxDirectMemorySize，没有设置时等于最大堆内存。
+ * 内存每隔 -Dadmission.memoryCheckMillis（默认 100）毫秒采样一次。<br>
+ * 因为连接数或者内存暂停时，每隔 -Dadmission.pauseMillis（默认 50）毫秒重新检查；因为速率暂停时，等到下一个令牌产生。<br>
+ * 使用方式：accept 之前调用 {@link #tryAdmit()}，返回 null 才 accept；没有 accept 到连接时调用 {@link #cancelAdmission()}；
+ * 接收的连接关闭时调用 {@link #connectionClosed()}。<br>
+ * 准入控制是可选的：没有设置任何一个条件时 {@link #fromConfig} 返回 null，服务器的 accept 路径和原来完全一样。
+ */
+public class AdmissionController implements AdmissionControllerMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    /**
+     * 暂停 accept 的原因
+     */
+    public enum RejectReason {
+        RATE_LIMITED,
+        TOO_MANY_CONNECTIONS,
+        HEAP_PRESSURE,
+        DIRECT_MEMORY_PRESSURE
+    }
+
+    private final String name;
+
+    private final double connectionsPerSecond;
+
+    private final double burst;
+
+    private final int maxConnections;
+
+    private final double heapThreshold;
+
+    private final double directThreshold;
+
+    private final long pauseMillis;
+
+    private final long memoryCheckNanos;
+
+    /**
+     * 令牌桶，由 synchronized 保护
+     */
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    private final AtomicLong admittedCount = new AtomicLong();
+
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+
+    private final AtomicLong connectionLimitedCount = new AtomicLong();
+
+    private final AtomicLong heapPressureCount = new AtomicLong();
+
+    private final AtomicLong directMemoryPressureCount = new AtomicLong();
+
+    /**
+     * 新生代的内存池，取 GC 之后的使用量
+     */
+    private final List<MemoryPoolMXBean> youngPools = new ArrayList<>();
+
+    /**
+     * 老年代（以及其它不能识别的堆内存池），取当前使用量
+     */
+    private final List<MemoryPoolMXBean> tenuredPools = new ArrayList<>();
+
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final BufferPoolMXBean directPool;
+
+    private final long maxDirectMemory;
+
+    private volatile long lastMemoryCheckNanos;
+
+    private volatile double heapUsageRatio;
+
+    private volatile double directMemoryUsageRatio;
+
+    /**
+     * @param connectionsPerSecond 每秒最多接收的连接数，0 表示不限制
+     * @param burst 令牌桶的容量（允许的突发连接数）
+     * @param maxConnections 最大并发连接数，0 表示不限制
+     * @param heapThreshold 堆内存使用率的上限（0 ~ 1），0 表示不检查
+     * @param directThreshold 直接内存使用率的上限（0 ~ 1），0 表示不检查
+     * @param pauseMillis 因为连接数或者内存暂停时，多久之后重新检查
+     * @param memoryCheckMillis 内存的采样间隔
+     */
+    public AdmissionController(String name, double connectionsPerSecond, int burst, int maxConnections,
+                               double heapThreshold, double directThreshold, long pauseMillis, long memoryCheckMillis) {
+        if (connectionsPerSecond < 0 || (connectionsPerSecond > 0 && burst < 1) || maxConnections < 0
+                || heapThreshold < 0 || heapThreshold > 1 || directThreshold < 0 || directThreshold > 1
+                || pauseMillis < 1 || memoryCheckMillis < 0) {
+            throw new IllegalArgumentException("准入控制参数不正确 : rate=" + connectionsPerSecond + ", burst=" + burst
+                    + ", maxConnections=" + maxConnections + ", heapThreshold=" + heapThreshold
+                    + ", directThreshold=" + directThreshold + ", pauseMillis=" + pauseMillis);
+        }
+        this.name = name;
+        this.connectionsPerSecond = connectionsPerSecond;
+        this.burst = burst;
+        this.maxConnections = maxConnections;
+        this.heapThreshold = heapThreshold;
+        this.directThreshold = directThreshold;
+        this.pauseMillis = pauseMillis;
+        this.memoryCheckNanos = TimeUnit.MILLISECONDS.toNanos(memoryCheckMillis);
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isValid()) {
+                continue;
+            }
+            if (isYoungPool(pool.getName())) {
+                this.youngPools.add(pool);
+            } else {
+                this.tenuredPools.add(pool);
+            }
+        }
+        BufferPoolMXBean directPool = null;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                directPool = pool;
+            }
+        }
+        this.directPool = directPool;
+        this.maxDirectMemory = maxDirectMemory();
+        sampleMemory(System.nanoTime());
+    }
+
+    /**
+     * @return 按照 -Dadmission.* 创建的准入控制；所有条件都不检查时返回 null
+     */
+    public static AdmissionController fromConfig(String name) {
+        double rate = Double.parseDouble(Configs.getString("admission.rate", "0"));
+        int maxConnections = Configs.getInt("admission.maxConnections", 0);
+        double heapThreshold = Double.parseDouble(Configs.getString("admission.heapThreshold", "0"));
+        double directThreshold = Double.parseDouble(Configs.getString("admission.directThreshold", "0"));
+        if (rate == 0 && maxConnections == 0 && heapThreshold == 0 && directThreshold == 0) {
+            return null;
+        }
+        int burst = Configs.getInt("admission.burst", Math.max(1, (int) Math.ceil(rate)));
+        AdmissionController controller = new AdmissionController(name, rate, burst, maxConnections, heapThreshold, directThreshold,
+                Configs.getLong("admission.pauseMillis", 50), Configs.getLong("admission.memoryCheckMillis", 100));
+        logger.info(name + " 准入控制 : rate=" + (rate == 0 ? "不限制" : rate + "/s, burst=" + burst)
+                + ", maxConnections=" + (maxConnections == 0 ? "不限制" : maxConnections)
+                + ", heapThreshold=" + heapThreshold + ", directThreshold=" + directThreshold);
+        return controller.registerMBean();
+    }
+
+    /**
+     * 只检查、不占用名额，用于提前判断下一个连接能不能接收
+     * @return null 表示可以接收，否则是不能接收的原因
+     */
+    public RejectReason check() {
+        RejectReason reason = checkCapacity();
+        if (reason != null) {
+            return reason;
+        }
+        if (this.connectionsPerSecond > 0) {
+            synchronized (this) {
+                refill(System.nanoTime());
+                if (this.tokens < 1) {
+                    return RejectReason.RATE_LIMITED;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在 accept 之前调用，占用一个连接名额和一个令牌
+     * @return null 表示可以 accept；否则是暂停 accept 的原因，暂停多久见 {@link #getPauseMillis(RejectReason)}
+     */
+    public RejectReason tryAdmit() {
+        RejectReason reason = checkCapacity();
+        if (reason == null && this.maxConnections > 0) {
+            int active;
+            do {
+                active = this.activeConnections.get();
+                if (active >= this.maxConnections) {
+                    reason = RejectReason.TOO_MANY_CONNECTIONS;
+                    break;
+                }
+            } while (!this.activeConnections.compareAndSet(active, active + 1));
+        } else if (reason == null) {
+            this.activeConnections.incrementAndGet();
+        }
+        if (reason == null && this.connectionsPerSecond > 0) {
+            synchronized (this) {
+                refill(System.nanoTime());
+                if (this.tokens < 1) {
+                    reason = RejectReason.RATE_LIMITED;
+                } else {
+                    this.tokens -= 1;
+                }
+            }
+            if (reason != null) {
+                this.activeConnections.decrementAndGet();
+            }
+        }
+        if (reason == null) {
+            this.admittedCount.incrementAndGet();
+            return null;
+        }
+        counterOf(reason).incrementAndGet();
+        return reason;
+    }
+
+    /**
+     * {@link #tryAdmit()} 成功之后并没有 accept 到连接（例如 accept 返回 null、accept 失败），归还名额和令牌
+     */
+    public void cancelAdmission() {
+        this.activeConnections.decrementAndGet();
+        this.admittedCount.decrementAndGet();
+        if (this.connectionsPerSecond > 0) {
+            synchronized (this) {
+                this.tokens = Math.min(this.burst, this.tokens + 1);
+            }
+        }
+    }
+
+    /**
+     * 接收的连接关闭时调用，每个连接只能调用一次
+     */
+    public void connectionClosed() {
+        this.activeConnections.decrementAndGet();
+    }
+
+    /**
+     * @return 因为 reason 暂停之后，多久重新检查（毫秒，至少 1）
+     */
+    public long getPauseMillis(RejectReason reason) {
+        if (reason != RejectReason.RATE_LIMITED) {
+            return this.pauseMillis;
+        }
+        synchronized (this) {
+            refill(System.nanoTime());
+            double missing = 1 - this.tokens;
+            if (missing <= 0) {
+                return 1;
+            }
+            return Math.max(1, (long) Math.ceil(missing * 1000 / this.connectionsPerSecond));
+        }
+    }
+
+    private RejectReason checkCapacity() {
+        long nowNanos = System.nanoTime();
+        if (nowNanos - this.lastMemoryCheckNanos >= this.memoryCheckNanos) {
+            sampleMemory(nowNanos);
+        }
+        if (this.heapThreshold > 0 && this.heapUsageRatio >= this.heapThreshold) {
+            return RejectReason.HEAP_PRESSURE;
+        }
+        if (this.directThreshold > 0 && this.directMemoryUsageRatio >= this.directThreshold) {
+            return RejectReason.DIRECT_MEMORY_PRESSURE;
+        }
+        if (this.maxConnections > 0 && this.activeConnections.get() >= this.maxConnections) {
+            return RejectReason.TOO_MANY_CONNECTIONS;
+        }
+        return null;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsedNanos = nowNanos - this.lastRefillNanos;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        this.tokens = Math.min(this.burst, this.tokens + elapsedNanos * this.connectionsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * 多个线程同时采样没有关系，结果都一样
+     */
+    private void sampleMemory(long nowNanos) {
+        this.lastMemoryCheckNanos = nowNanos;
+        if (this.heapThreshold > 0) {
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            long maxHeap = heap.getMax() > 0 ? heap.getMax() : Runtime.getRuntime().maxMemory();
+            long used = 0;
+            for (MemoryPoolMXBean pool : this.youngPools) {
+                // 新生代在 GC 之后基本是空的（Eden 是 0），0 也是有效的值；还没有 GC 过时（没有 GC 之后的数据）取当前使用量
+                MemoryUsage collectionUsage = pool.getCollectionUsage();
+                used += collectionUsage != null && !neverCollected(pool) ? collectionUsage.getUsed() : pool.getUsage().getUsed();
+            }
+            for (MemoryPoolMXBean pool : this.tenuredPools) {
+                used += pool.getUsage().getUsed();
+            }
+            this.heapUsageRatio = (double) used / maxHeap;
+        }
+        if (this.directThreshold > 0 && this.directPool != null) {
+            this.directMemoryUsageRatio = (double) this.directPool.getMemoryUsed() / this.maxDirectMemory;
+        }
+    }
+
+    /**
+     * @return 负责这个内存池的 GC 一次都还没有执行过（这时 GC 之后的使用量还没有数据）；找不到负责它的 GC 时返回 false
+     */
+    private boolean neverCollected(MemoryPoolMXBean pool) {
+        boolean owned = false;
+        for (GarbageCollectorMXBean collector : this.collectors) {
+            if (!Arrays.asList(collector.getMemoryPoolNames()).contains(pool.getName())) {
+                continue;
+            }
+            if (collector.getCollectionCount() > 0) {
+                return false;
+            }
+            owned = true;
+        }
+        return owned;
+    }
+
+    /**
+     * 按 HotSpot / OpenJ9 的内存池名称识别新生代：Eden、Survivor（各种 GC 的前缀不同）、nursery
+     */
+    private static boolean isYoungPool(String poolName) {
+        String name = poolName.toLowerCase(Locale.ROOT);
+        return name.contains("eden") || name.contains("survivor") || name.contains("nursery");
+    }
+
+    private AtomicLong counterOf(RejectReason reason) {
+        switch (reason) {
+            case RATE_LIMITED:
+                return this.rateLimitedCount;
+            case TOO_MANY_CONNECTIONS:
+                return this.connectionLimitedCount;
+            case HEAP_PRESSURE:
+                return this.heapPressureCount;
+            default:
+                return this.directMemoryPressureCount;
+        }
+    }
+
+    /**
+     * @return -XX:MaxDirectMemorySize 的值，没有设置时和 JDK 的默认值一样，等于最大堆内存
+     */
+    private static long maxDirectMemory() {
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!argument.startsWith("-XX:MaxDirectMemorySize=")) {
+                continue;
+            }
+            String value = argument.substring("-XX:MaxDirectMemorySize=".length()).trim().toLowerCase(Locale.ROOT);
+            long unit = 1;
+            char suffix = value.isEmpty() ? ' ' : value.charAt(value.length() - 1);
+            if (suffix == 'k' || suffix == 'm' || suffix == 'g' || suffix == 't') {
+                unit = suffix == 'k' ? 1L << 10 : suffix == 'm' ? 1L << 20 : suffix == 'g' ? 1L << 30 : 1L << 40;
+                value = value.substring(0, value.length() - 1);
+            }
+            try {
+                long maxDirectMemory = Long.parseLong(value) * unit;
+                if (maxDirectMemory > 0) {
+                    return maxDirectMemory;
+                }
+            } catch (NumberFormatException e) {
+                logger.warn("不能解析 -XX:MaxDirectMemorySize : " + argument);
+            }
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    public AdmissionController registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName());
+        } catch (Exception e) {
+            logger.warn("AdmissionController " + this.name + " 注册 JMX 失败 : " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    /**
+     * 服务器停止时调用，同一个 JVM 中再次启动同名的服务器时才能重新注册
+     */
+    public void unregisterMBean() {
+        try {
+            ObjectName objectName = objectName();
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            logger.warn("AdmissionController " + this.name + " 注销 JMX 失败 : " + e.getMessage());
+        }
+    }
+
+    private ObjectName objectName() throws MalformedObjectNameException {
+        return new ObjectName("com.hong.common:type=AdmissionController,name=" + this.name);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return this.activeConnections.get();
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return this.maxConnections;
+    }
+
+    @Override
+    public double getConnectionsPerSecond() {
+        return this.connectionsPerSecond;
+    }
+
+    @Override
+    public long getAdmittedCount() {
+        return this.admittedCount.get();
+    }
+
+    @Override
+    public long getRateLimitedCount() {
+        return this.rateLimitedCount.get();
+    }
+
+    @Override
+    public long getConnectionLimitedCount() {
+        return this.connectionLimitedCount.get();
+    }
+
+    @Override
+    public long getHeapPressureCount() {
+        return this.heapPressureCount.get();
+    }
+
+    @Override
+    public long getDirectMemoryPressureCount() {
+        return this.directMemoryPressureCount.get();
+    }
+
+    @Override
+    public double getHeapUsageRatio() {
+        return this.heapUsageRatio;
+    }
+
+    @Override
+    public double getDirectMemoryUsageRatio() {
+        return this.directMemoryUsageRatio;
+    }
+}
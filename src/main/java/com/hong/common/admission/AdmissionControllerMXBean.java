@@ -0,0 +1,57 @@
+package com.hong.common.admission;
+
+/**
+ * {@link AdmissionController} 通过 JMX 暴露的运行指标
+ */
+public interface AdmissionControllerMXBean {
+
+    /**
+     * 当前已经接收、还没有关闭的连接数
+     */
+    int getActiveConnections();
+
+    /**
+     * 最大并发连接数，0 表示不限制
+     */
+    int getMaxConnections();
+
+    /**
+     * 每秒最多接收的连接数，0 表示不限制
+     */
+    double getConnectionsPerSecond();
+
+    /**
+     * 累计接收的连接数
+     */
+    long getAdmittedCount();
+
+    /**
+     * 因为超过连接速率而暂停 accept 的次数
+     */
+    long getRateLimitedCount();
+
+    /**
+     * 因为达到最大并发连接数而暂停 accept 的次数
+     */
+    long getConnectionLimitedCount();
+
+    /**
+     * 因为堆内存紧张而暂停 accept 的次数
+     */
+    long getHeapPressureCount();
+
+    /**
+     * 因为直接内存紧张而暂停 accept 的次数
+     */
+    long getDirectMemoryPressureCount();
+
+    /**
+     * 最近一次采样的堆内存使用率（0 ~ 1）
+     */
+    double getHeapUsageRatio();
+
+    /**
+     * 最近一次采样的直接内存使用率（0 ~ 1）
+     */
+    double getDirectMemoryUsageRatio();
+}
@@ -0,0 +1,56 @@
+package com.hong.common.bench;
+
+import java.util.Arrays;
+
+/**
+ * 压测用的延迟记录器：记录每一次请求的耗时（纳秒），最后排序计算分位数。
+ * 线程安全，但只适合压测场景（样本全部保存在内存中）。
+ */
+public class LatencyRecorder {
+
+    private long[] samples;
+
+    private int size;
+
+    public LatencyRecorder(int expectedSamples) {
+        this.samples = new long[Math.max(16, expectedSamples)];
+    }
+
+    public synchronized void record(long nanos) {
+        if (this.size == this.samples.length) {
+            this.samples = Arrays.copyOf(this.samples, this.size * 2);
+        }
+        this.samples[this.size++] = nanos;
+    }
+
+    public synchronized int count() {
+        return this.size;
+    }
+
+    /**
+     * @param percentile 0 ~ 100 之间，例如 99 表示 p99
+     * @return 对应分位的耗时（微秒），没有样本时返回 0
+     */
+    public synchronized double percentileMicros(double percentile) {
+        if (this.size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(this.samples, this.size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        index = Math.max(0, Math.min(sorted.length - 1, index));
+        return sorted[index] / 1000.0;
+    }
+
+    public synchronized void reset() {
+        this.size = 0;
+    }
+
+    /**
+     * 形如 "count=1000 p50=120.0us p99=850.3us max=1203.4us" 的摘要
+     */
+    public String summary() {
+        return String.format("count=%d p50=%.1fus p99=%.1fus max=%.1fus",
+                count(), percentileMicros(50), percentileMicros(99), percentileMicros(100));
+    }
+}
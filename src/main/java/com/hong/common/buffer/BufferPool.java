@@ -0,0 +1,414 @@
+package com.hong.common.buffer;
+
+import com.hong.common.Configs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按尺寸分级的缓存区池，NIO、AIO 服务器的读缓存区都从这里借用。<br>
+ * 1、默认分配 direct 缓存区：heap 缓存区在 channel 读写时，JDK 内部还要经过一个临时的 direct 缓存区复制一次；<br>
+ * 2、尺寸按 2 的幂分级（默认 64B ~ 64KB），申请的容量向上取整到所在级别，超过最大级别的直接分配、不入池；<br>
+ * 3、每个线程有自己的本地缓存（每个级别若干个），reactor 线程上的借用/归还一般不需要和其它线程竞争；
+ * 本地缓存满了或者空了，再使用各级别共享的无锁队列；<br>
+ * 4、泄漏检测：按照采样比例跟踪借出的 {@link PooledBuffer}，如果它没有归还就被 GC 回收了，打印错误日志并计数。
+ * paranoid 级别会跟踪每一次借用，并记录借用时的调用栈。<br>
+ * 池的占用、命中率、泄漏次数通过 {@link BufferPoolMXBean} 暴露。<br>
+ * 参数（默认池）：-Dbuffer.pool.direct（默认 true）、-Dbuffer.pool.minSize（默认 64）、-Dbuffer.pool.maxSize（默认 65536）、
+ * -Dbuffer.pool.maxPooledPerClass（每个级别共享池最多保存多少个，默认 1024）、-Dbuffer.pool.threadCacheSize（默认 32）、
+ * -Dbuffer.leakDetection=disabled|simple|paranoid（默认 simple）。
+ */
+public class BufferPool implements BufferPoolMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
+    public enum LeakDetectionLevel {
+        /**
+         * 不做泄漏检测
+         */
+        DISABLED,
+        /**
+         * 每 128 次借用采样跟踪一次，开销可以忽略
+         */
+        SIMPLE,
+        /**
+         * 跟踪每一次借用并记录调用栈，只适合排查问题时使用
+         */
+        PARANOID
+    }
+
+    private static final int SIMPLE_SAMPLING_INTERVAL = 128;
+
+    private static volatile BufferPool defaultPool;
+
+    private final String name;
+
+    private final boolean direct;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final int maxPooledPerClass;
+
+    private final int threadCacheSize;
+
+    private final LeakDetectionLevel leakDetectionLevel;
+
+    /**
+     * minSize 是 2 的多少次幂
+     */
+    private final int minSizeShift;
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] sharedPools;
+
+    private final AtomicInteger[] sharedPoolSizes;
+
+    private final ThreadLocal<ThreadCache> threadCaches = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache();
+        }
+    };
+
+    private final LongAdder acquireCount = new LongAdder();
+
+    private final LongAdder threadCacheHitCount = new LongAdder();
+
+    private final LongAdder sharedHitCount = new LongAdder();
+
+    private final LongAdder borrowedBuffers = new LongAdder();
+
+    /**
+     * 线程本地缓存中的空闲个数和字节数（线程结束后它的本地缓存随之回收，这两个值可能偏大，只作为近似值）
+     */
+    private final LongAdder threadCachedBuffers = new LongAdder();
+
+    private final LongAdder threadCachedBytes = new LongAdder();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private final LongAdder unpooledAllocations = new LongAdder();
+
+    private final LongAdder leakCount = new LongAdder();
+
+    private final AtomicLong samplingCounter = new AtomicLong();
+
+    private final ReferenceQueue<PooledBuffer> leakQueue = new ReferenceQueue<>();
+
+    /**
+     * 持有所有跟踪对象，保证跟踪对象本身不会先于 PooledBuffer 被回收
+     */
+    private final Set<LeakTracker> leakTrackers = Collections.newSetFromMap(new ConcurrentHashMap<LeakTracker, Boolean>());
+
+    public BufferPool(String name, boolean direct, int minSize, int maxSize, int maxPooledPerClass, int threadCacheSize,
+                      LeakDetectionLevel leakDetectionLevel) {
+        if (minSize < 1 || Integer.bitCount(minSize) != 1 || maxSize < minSize || Integer.bitCount(maxSize) != 1) {
+            throw new IllegalArgumentException("尺寸级别必须是 2 的幂，并且 minSize <= maxSize : min=" + minSize + ", max=" + maxSize);
+        }
+        this.name = name;
+        this.direct = direct;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxPooledPerClass = maxPooledPerClass;
+        this.threadCacheSize = threadCacheSize;
+        this.leakDetectionLevel = leakDetectionLevel;
+        this.minSizeShift = Integer.numberOfTrailingZeros(minSize);
+
+        int sizeClassCount = Integer.numberOfTrailingZeros(maxSize) - this.minSizeShift + 1;
+        // 不能直接创建泛型数组
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ConcurrentLinkedQueue<ByteBuffer>[] sharedPools = new ConcurrentLinkedQueue[sizeClassCount];
+        this.sharedPools = sharedPools;
+        this.sharedPoolSizes = new AtomicInteger[sizeClassCount];
+        for (int index = 0; index < sizeClassCount; index++) {
+            this.sharedPools[index] = new ConcurrentLinkedQueue<>();
+            this.sharedPoolSizes[index] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * 按照启动参数创建的全局默认池（第一次使用时创建，并注册到 JMX）
+     */
+    public static BufferPool getDefault() {
+        BufferPool pool = defaultPool;
+        if (pool == null) {
+            synchronized (BufferPool.class) {
+                pool = defaultPool;
+                if (pool == null) {
+                    String level = Configs.getString("buffer.leakDetection", "simple");
+                    pool = new BufferPool("default",
+                            Configs.getBoolean("buffer.pool.direct", true),
+                            Configs.getInt("buffer.pool.minSize", 64),
+                            Configs.getInt("buffer.pool.maxSize", 64 * 1024),
+                            Configs.getInt("buffer.pool.maxPooledPerClass", 1024),
+                            Configs.getInt("buffer.pool.threadCacheSize", 32),
+                            LeakDetectionLevel.valueOf(level.toUpperCase())).registerMBean();
+                    defaultPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 借用一个容量至少为 minCapacity 的缓存区（position = 0，limit = capacity）
+     */
+    public PooledBuffer acquire(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("容量不能小于 0 : " + minCapacity);
+        }
+        this.acquireCount.increment();
+        reportLeaks();
+        boolean tracked = shouldTrack();
+
+        if (minCapacity > this.maxSize) {
+            this.unpooledAllocations.increment();
+            this.borrowedBuffers.increment();
+            return new PooledBuffer(this, allocate(minCapacity), -1, tracked);
+        }
+
+        int sizeClass = sizeClassOf(minCapacity);
+        ByteBuffer buffer = this.threadCaches.get().poll(sizeClass);
+        if (buffer != null) {
+            this.threadCacheHitCount.increment();
+        } else {
+            buffer = this.sharedPools[sizeClass].poll();
+            if (buffer != null) {
+                this.sharedPoolSizes[sizeClass].decrementAndGet();
+                this.sharedHitCount.increment();
+            } else {
+                int capacity = this.minSize << sizeClass;
+                buffer = allocate(capacity);
+                this.allocatedBytes.addAndGet(capacity);
+            }
+        }
+        buffer.clear();
+        this.borrowedBuffers.increment();
+        return new PooledBuffer(this, buffer, sizeClass, tracked);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private int sizeClassOf(int capacity) {
+        if (capacity <= this.minSize) {
+            return 0;
+        }
+        // 向上取整到 2 的幂
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - this.minSizeShift;
+    }
+
+    /**
+     * 由 {@link PooledBuffer#release()} 调用
+     */
+    void recycle(ByteBuffer buffer, int sizeClass) {
+        this.borrowedBuffers.decrement();
+        if (sizeClass < 0) {
+            return;
+        }
+        if (this.threadCaches.get().offer(sizeClass, buffer)) {
+            return;
+        }
+        // 本地缓存满了，放回共享池；共享池也满了就丢弃，由 GC 回收
+        if (this.sharedPoolSizes[sizeClass].incrementAndGet() <= this.maxPooledPerClass) {
+            this.sharedPools[sizeClass].offer(buffer);
+        } else {
+            this.sharedPoolSizes[sizeClass].decrementAndGet();
+        }
+    }
+
+    private boolean shouldTrack() {
+        switch (this.leakDetectionLevel) {
+            case PARANOID:
+                return true;
+            case SIMPLE:
+                return this.samplingCounter.incrementAndGet() % SIMPLE_SAMPLING_INTERVAL == 0;
+            default:
+                return false;
+        }
+    }
+
+    LeakTracker track(PooledBuffer pooledBuffer) {
+        LeakTracker tracker = new LeakTracker(pooledBuffer, this.leakQueue,
+                this.leakDetectionLevel == LeakDetectionLevel.PARANOID ? new Throwable("借用位置") : null);
+        this.leakTrackers.add(tracker);
+        return tracker;
+    }
+
+    void untrack(LeakTracker tracker) {
+        this.leakTrackers.remove(tracker);
+        tracker.clear();
+    }
+
+    /**
+     * 检查被 GC 回收、但没有归还的 PooledBuffer
+     */
+    private void reportLeaks() {
+        LeakTracker tracker;
+        while ((tracker = (LeakTracker) this.leakQueue.poll()) != null) {
+            if (!this.leakTrackers.remove(tracker)) {
+                continue;
+            }
+            this.leakCount.increment();
+            this.borrowedBuffers.decrement();
+            String message = "BufferPool " + this.name + " 检测到缓存区泄漏（容量 " + tracker.capacity
+                    + " 字节，借出后没有调用 release 就被回收了）";
+            if (tracker.allocationSite != null) {
+                logger.error(message, tracker.allocationSite);
+            } else {
+                logger.error(message + "，使用 -Dbuffer.leakDetection=paranoid 可以查看借用位置");
+            }
+        }
+    }
+
+    /**
+     * 把自己注册到平台 MBeanServer，注册失败只影响监控，不影响服务
+     */
+    public BufferPool registerMBean() {
+        try {
+            ObjectName objectName = new ObjectName("com.hong.common:type=BufferPool,name=" + this.name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            logger.warn("BufferPool " + this.name + " 注册 JMX 失败 : " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    @Override
+    public long getAcquireCount() {
+        return this.acquireCount.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long acquires = getAcquireCount();
+        return acquires == 0 ? 0 : (double) (this.threadCacheHitCount.sum() + this.sharedHitCount.sum()) / acquires;
+    }
+
+    @Override
+    public double getThreadCacheHitRate() {
+        long acquires = getAcquireCount();
+        return acquires == 0 ? 0 : (double) this.threadCacheHitCount.sum() / acquires;
+    }
+
+    @Override
+    public long getBorrowedBuffers() {
+        return this.borrowedBuffers.sum();
+    }
+
+    @Override
+    public long getPooledBuffers() {
+        long pooled = this.threadCachedBuffers.sum();
+        for (AtomicInteger size : this.sharedPoolSizes) {
+            pooled += size.get();
+        }
+        return pooled;
+    }
+
+    @Override
+    public long getPooledBytes() {
+        long pooled = this.threadCachedBytes.sum();
+        for (int index = 0; index < this.sharedPoolSizes.length; index++) {
+            pooled += (long) this.sharedPoolSizes[index].get() * (this.minSize << index);
+        }
+        return pooled;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.get();
+    }
+
+    @Override
+    public long getUnpooledAllocations() {
+        return this.unpooledAllocations.sum();
+    }
+
+    @Override
+    public long getLeakCount() {
+        reportLeaks();
+        return this.leakCount.sum();
+    }
+
+    @Override
+    public String getLeakDetectionLevel() {
+        return this.leakDetectionLevel.name();
+    }
+
+    @Override
+    public String getSizeClassOccupancy() {
+        StringBuilder occupancy = new StringBuilder();
+        for (int index = 0; index < this.sharedPoolSizes.length; index++) {
+            if (index > 0) {
+                occupancy.append(' ');
+            }
+            occupancy.append(this.minSize << index).append("B=").append(this.sharedPoolSizes[index].get());
+        }
+        return occupancy.toString();
+    }
+
+    /**
+     * 一个线程自己的缓存，只被这个线程访问，不需要同步
+     */
+    private class ThreadCache {
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final ArrayDeque<ByteBuffer>[] caches = new ArrayDeque[sharedPools.length];
+
+        ByteBuffer poll(int sizeClass) {
+            ArrayDeque<ByteBuffer> cache = this.caches[sizeClass];
+            ByteBuffer buffer = cache == null ? null : cache.pollLast();
+            if (buffer != null) {
+                threadCachedBuffers.decrement();
+                threadCachedBytes.add(-buffer.capacity());
+            }
+            return buffer;
+        }
+
+        boolean offer(int sizeClass, ByteBuffer buffer) {
+            ArrayDeque<ByteBuffer> cache = this.caches[sizeClass];
+            if (cache == null) {
+                cache = new ArrayDeque<>(threadCacheSize);
+                this.caches[sizeClass] = cache;
+            }
+            if (cache.size() >= threadCacheSize) {
+                return false;
+            }
+            cache.addLast(buffer);
+            threadCachedBuffers.increment();
+            threadCachedBytes.add(buffer.capacity());
+            return true;
+        }
+    }
+
+    /**
+     * 泄漏跟踪：弱引用借出的 PooledBuffer，它被回收时会进入 leakQueue
+     */
+    static final class LeakTracker extends WeakReference<PooledBuffer> {
+
+        private final int capacity;
+
+        private final Throwable allocationSite;
+
+        LeakTracker(PooledBuffer referent, ReferenceQueue<PooledBuffer> queue, Throwable allocationSite) {
+            super(referent, queue);
+            this.capacity = referent.capacity();
+            this.allocationSite = allocationSite;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.hong.common.buffer;
+
+/**
+ * BufferPool 通过 JMX 暴露的运行指标
+ */
+public interface BufferPoolMXBean {
+
+    /**
+     * 累计申请次数
+     */
+    long getAcquireCount();
+
+    /**
+     * 命中率：从线程缓存或者共享池中直接拿到缓存区的比例（0 ~ 1）
+     */
+    double getHitRate();
+
+    /**
+     * 其中命中线程本地缓存的比例（0 ~ 1）
+     */
+    double getThreadCacheHitRate();
+
+    /**
+     * 已经借出、还没有归还的缓存区个数
+     */
+    long getBorrowedBuffers();
+
+    /**
+     * 池中空闲的缓存区个数（共享池 + 各线程本地缓存）
+     */
+    long getPooledBuffers();
+
+    long getPooledBytes();
+
+    /**
+     * 池累计向操作系统申请的内存字节数（不包括超过最大尺寸、不入池的缓存区）
+     */
+    long getAllocatedBytes();
+
+    /**
+     * 超过最大尺寸级别、直接分配而不入池的次数
+     */
+    long getUnpooledAllocations();
+
+    /**
+     * 检测到的泄漏（借出后没有归还就被回收）次数
+     */
+    long getLeakCount();
+
+    String getLeakDetectionLevel();
+
+    /**
+     * 各尺寸级别共享池中的空闲个数，形如 "64B=3 128B=0 ..."
+     */
+    String getSizeClassOccupancy();
+}
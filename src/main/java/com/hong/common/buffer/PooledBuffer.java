@@ -0,0 +1,76 @@
+package com.hong.common.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 从 {@link BufferPool} 借出的缓存区。用完之后必须调用 {@link #release()} 归还，
+ * 归还之后不能再使用 {@link #buffer()} 返回的 ByteBuffer（它可能已经借给了别的连接）。<br>
+ * 没有归还就被 GC 回收的 PooledBuffer 会被泄漏检测发现并打印错误日志。
+ */
+public final class PooledBuffer {
+
+    private final BufferPool pool;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * 尺寸级别的下标，-1 表示不入池
+     */
+    private final int sizeClass;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * 泄漏检测的跟踪对象，没有被采样时为 null
+     */
+    private final BufferPool.LeakTracker leakTracker;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass, boolean tracked) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+        this.leakTracker = tracked ? pool.track(this) : null;
+    }
+
+    public ByteBuffer buffer() {
+        if (this.released.get()) {
+            throw new IllegalStateException("缓存区已经归还，不能再使用");
+        }
+        return this.buffer;
+    }
+
+    public int capacity() {
+        return this.buffer.capacity();
+    }
+
+    public boolean isReleased() {
+        return this.released.get();
+    }
+
+    /**
+     * 归还到池中。重复归还会抛出 IllegalStateException（重复归还意味着同一个缓存区可能同时被两个连接使用）
+     */
+    public void release() {
+        if (!this.released.compareAndSet(false, true)) {
+            throw new IllegalStateException("缓存区被重复归还");
+        }
+        recycle();
+    }
+
+    /**
+     * 还没有归还时才归还，用于多个关闭路径都可能执行到的清理代码
+     */
+    public void releaseIfNeeded() {
+        if (this.released.compareAndSet(false, true)) {
+            recycle();
+        }
+    }
+
+    private void recycle() {
+        if (this.leakTracker != null) {
+            this.pool.untrack(this.leakTracker);
+        }
+        this.pool.recycle(this.buffer, this.sizeClass);
+    }
+}
@@ -0,0 +1,15 @@
+package com.hong.common.codec;
+
+import java.io.IOException;
+
+/**
+ * 收到的数据不符合帧格式（长度超限、长度字段损坏、连接关闭时帧不完整等）
+ */
+public class CodecException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CodecException(String message) {
+        super(message);
+    }
+}
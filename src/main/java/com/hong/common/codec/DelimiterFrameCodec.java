@@ -0,0 +1,46 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 原来的 "over" 结束标记协议。
+ * 这种协议的信息由发送方自己带上结束标记，服务器的响应也没有结束标记（客户端读到连接关闭为止），
+ * 所以编码时原样输出负载。
+ */
+public class DelimiterFrameCodec implements FrameCodec {
+
+    public static final byte[] DEFAULT_DELIMITER = "over".getBytes();
+
+    private final byte[] delimiter;
+
+    private final int maxFrameLength;
+
+    public DelimiterFrameCodec(byte[] delimiter, int maxFrameLength) {
+        this.delimiter = delimiter.clone();
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public byte[] getDelimiter() {
+        return this.delimiter.clone();
+    }
+
+    @Override
+    public String name() {
+        return "delimiter";
+    }
+
+    @Override
+    public FrameDecoder newDecoder() {
+        return new DelimiterFrameDecoder(this.delimiter, this.maxFrameLength);
+    }
+
+    @Override
+    public ByteBuffer encode(Frame frame) {
+        return frame.getPayload();
+    }
+
+    @Override
+    public ByteBuffer encodeHeader(byte type, int payloadLength) {
+        return ByteBuffer.allocate(0);
+    }
+}
@@ -0,0 +1,137 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 原来的协议：以 "over"（或者通过 -Dcodec.delimiter 指定的多字节标记）作为一条信息的结束标记。
+ * 为了兼容，帧的负载包含结束标记本身；连接关闭时缓存中剩余的数据也作为一帧交出去。<br>
+ * 结束标记由 {@link DelimiterMatcher} 增量查找：新收到的每个字节只检查一次，
+ * 结束标记被拆到两次 read 中也没有关系；帧完整之前不会构造任何 String。<br>
+ * 被拆到多次 read 中的帧累积在一个可增长的缓存中，帧完整时直接把这个缓存交给帧（只读视图），
+ * 不再复制一次；下一帧需要缓存时再重新分配。
+ */
+public class DelimiterFrameDecoder implements FrameDecoder {
+
+    private final DelimiterMatcher matcher;
+
+    private final int maxFrameLength;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    /**
+     * 还没有凑成完整帧的字节（交给上一帧之后为 null，用到时再分配）
+     */
+    private byte[] buffer;
+
+    private int size;
+
+    public DelimiterFrameDecoder(byte[] delimiter, int maxFrameLength) {
+        this.matcher = new DelimiterMatcher(delimiter);
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public void decode(ByteBuffer in, List<Frame> out) throws CodecException {
+        if (!in.hasArray()) {
+            decodeDirect(in, out);
+            return;
+        }
+        int end;
+        while ((end = this.matcher.indexOf(in)) != -1) {
+            int length = end - in.position();
+            checkFrameLength(this.size + length);
+            if (this.size == 0) {
+                // 整帧都在这次收到的数据中，直接复制出来，不经过缓存
+                byte[] payload = new byte[length];
+                in.get(payload);
+                out.add(new Frame(Frame.TYPE_DATA, payload));
+            } else {
+                // 把最后一段追加到缓存中，然后缓存本身就是这一帧的负载
+                ensureCapacity(this.size + length);
+                in.get(this.buffer, this.size, length);
+                out.add(new Frame(Frame.TYPE_DATA, ByteBuffer.wrap(this.buffer, 0, this.size + length)));
+                this.buffer = null;
+                this.size = 0;
+            }
+        }
+
+        // 剩下的是不完整的帧，追加到缓存中，下次只扫描新收到的字节
+        int remaining = in.remaining();
+        if (remaining > 0) {
+            checkFrameLength(this.size + remaining);
+            ensureCapacity(this.size + remaining);
+            in.get(this.buffer, this.size, remaining);
+            this.size += remaining;
+        }
+    }
+
+    /**
+     * direct 缓存区（例如从池中借用的读缓存区）逐个字节 get(index) 查找结束标记很慢，
+     * 所以先整块追加到缓存中（反正不完整的帧也要追加），再在数组上查找新追加的部分
+     */
+    private void decodeDirect(ByteBuffer in, List<Frame> out) throws CodecException {
+        int remaining = in.remaining();
+        if (remaining == 0) {
+            return;
+        }
+        ensureCapacity(this.size + remaining);
+        int scanFrom = this.size;
+        in.get(this.buffer, this.size, remaining);
+        this.size += remaining;
+
+        int frameStart = 0;
+        int end;
+        while ((end = this.matcher.indexOf(this.buffer, scanFrom, this.size)) != -1) {
+            checkFrameLength(end - frameStart);
+            if (frameStart == 0 && end == this.size) {
+                // 缓存中正好是一个完整的帧（最常见的情况），缓存本身就是这一帧的负载
+                out.add(new Frame(Frame.TYPE_DATA, ByteBuffer.wrap(this.buffer, 0, end)));
+                this.buffer = null;
+                this.size = 0;
+                return;
+            }
+            out.add(new Frame(Frame.TYPE_DATA, Arrays.copyOfRange(this.buffer, frameStart, end)));
+            frameStart = end;
+            scanFrom = end;
+        }
+        // 把剩下的不完整的帧移到缓存的开头
+        if (frameStart > 0) {
+            System.arraycopy(this.buffer, frameStart, this.buffer, 0, this.size - frameStart);
+            this.size -= frameStart;
+        }
+        checkFrameLength(this.size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (this.buffer == null) {
+            this.buffer = new byte[Math.max(INITIAL_BUFFER_SIZE, capacity)];
+        } else if (capacity > this.buffer.length) {
+            // 按 2 倍增长，但不超过帧长度上限（加上结束标记）
+            int newCapacity = (int) Math.min(Math.max(this.buffer.length * 2L, capacity), Math.max(capacity, this.maxFrameLength));
+            this.buffer = Arrays.copyOf(this.buffer, newCapacity);
+        }
+    }
+
+    private void checkFrameLength(int length) throws CodecException {
+        if (length > this.maxFrameLength) {
+            throw new CodecException("超过 " + this.maxFrameLength + " 字节还没有收到结束标记");
+        }
+    }
+
+    @Override
+    public void decodeLast(List<Frame> out) {
+        if (this.size > 0) {
+            out.add(new Frame(Frame.TYPE_DATA, ByteBuffer.wrap(this.buffer, 0, this.size)));
+            this.buffer = null;
+            this.size = 0;
+        }
+        this.matcher.reset();
+    }
+
+    @Override
+    public boolean hasPartialFrame() {
+        return this.size > 0;
+    }
+}
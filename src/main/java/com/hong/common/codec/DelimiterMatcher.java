@@ -0,0 +1,109 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 增量的结束标记匹配器（KMP），直接在字节上工作。<br>
+ * 原来的写法是每读到一段数据就追加到 StringBuffer，再对整个 StringBuffer 做 indexOf("over")，
+ * 一条信息分成 n 段到达时总的扫描量是 O(n²)，而且每次都要先把字节转成字符串。<br>
+ * 匹配器只保存 "已经匹配了结束标记的前几个字节" 这一个状态，所以一个结束标记被拆到两次 read、
+ * 两个 ByteBuffer / ByteBuf 中时也能正确识别，每个字节只检查一次。<br>
+ * 匹配器是有状态的，每个连接独享一个。
+ */
+public class DelimiterMatcher {
+
+    private final byte[] delimiter;
+
+    /**
+     * KMP 的部分匹配表：failure[i] 表示 delimiter[0..i] 的最长相同前后缀的长度
+     */
+    private final int[] failure;
+
+    /**
+     * 当前已经匹配的结束标记长度
+     */
+    private int matched;
+
+    public DelimiterMatcher(byte[] delimiter) {
+        if (delimiter == null || delimiter.length == 0) {
+            throw new IllegalArgumentException("结束标记不能为空");
+        }
+        this.delimiter = delimiter.clone();
+        this.failure = new int[delimiter.length];
+        for (int index = 1, length = 0; index < delimiter.length; index++) {
+            while (length > 0 && delimiter[index] != delimiter[length]) {
+                length = this.failure[length - 1];
+            }
+            if (delimiter[index] == delimiter[length]) {
+                length++;
+            }
+            this.failure[index] = length;
+        }
+    }
+
+    /**
+     * 输入一个字节
+     * @return 这个字节是否恰好完成了一个结束标记（完成后状态归零，下一个字节开始新的匹配）
+     */
+    public boolean matches(byte value) {
+        int length = this.matched;
+        while (length > 0 && value != this.delimiter[length]) {
+            length = this.failure[length - 1];
+        }
+        if (value == this.delimiter[length]) {
+            length++;
+        }
+        if (length == this.delimiter.length) {
+            this.matched = 0;
+            return true;
+        }
+        this.matched = length;
+        return false;
+    }
+
+    /**
+     * 在 bytes[from, to) 中继续查找
+     * @return 结束标记之后第一个字节的下标；没有找到返回 -1（已经扫描过的字节不会再扫描）
+     */
+    public int indexOf(byte[] bytes, int from, int to) {
+        for (int index = from; index < to; index++) {
+            if (matches(bytes[index])) {
+                return index + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在 buffer 的 [position, limit) 中继续查找，不改变 buffer 的 position
+     * @return 结束标记之后第一个字节的绝对下标；没有找到返回 -1
+     */
+    public int indexOf(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            int index = indexOf(buffer.array(), offset + buffer.position(), offset + buffer.limit());
+            return index == -1 ? -1 : index - offset;
+        }
+        for (int index = buffer.position(); index < buffer.limit(); index++) {
+            if (matches(buffer.get(index))) {
+                return index + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 当前已经匹配的结束标记前缀长度，大于 0 说明结束标记可能被拆到了下一次 read 中
+     */
+    public int getMatchedLength() {
+        return this.matched;
+    }
+
+    public byte[] getDelimiter() {
+        return this.delimiter.clone();
+    }
+
+    public void reset() {
+        this.matched = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 一条完整的信息（帧）：一个类型字节，加上不透明的负载内容。<br>
+ * 负载以只读 ByteBuffer 的形式保存，拿到帧的一方不能修改其中的数据，也不需要再复制一次。
+ */
+public final class Frame {
+
+    /**
+     * 普通的业务数据
+     */
+    public static final byte TYPE_DATA = 0x01;
+
+    private final byte type;
+
+    private final ByteBuffer payload;
+
+    public Frame(byte type, byte[] payload) {
+        this(type, ByteBuffer.wrap(payload));
+    }
+
+    public Frame(byte type, ByteBuffer payload) {
+        this.type = type;
+        this.payload = payload.asReadOnlyBuffer();
+    }
+
+    public byte getType() {
+        return this.type;
+    }
+
+    /**
+     * @return 负载内容的只读视图，每次调用都是一个独立的 position / limit
+     */
+    public ByteBuffer getPayload() {
+        return this.payload.duplicate();
+    }
+
+    public int getPayloadLength() {
+        return this.payload.remaining();
+    }
+
+    /**
+     * 把负载复制成一个新的 byte 数组
+     */
+    public byte[] getPayloadBytes() {
+        byte[] bytes = new byte[this.payload.remaining()];
+        this.payload.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public String getPayloadAsString(Charset charset) {
+        return charset.decode(this.payload.duplicate()).toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Frame{type=" + this.type + ", payloadLength=" + getPayloadLength() + "}";
+    }
+}
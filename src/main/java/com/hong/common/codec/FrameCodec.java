@@ -0,0 +1,38 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 一种分帧协议：负责为每个连接创建解码器，以及把帧编码成可以直接发送的字节
+ */
+public interface FrameCodec {
+
+    String name();
+
+    FrameDecoder newDecoder();
+
+    /**
+     * @return 处于 "读模式" 的 ByteBuffer，可以直接写入通道
+     */
+    ByteBuffer encode(Frame frame);
+
+    /**
+     * 只编码帧头，负载由调用方另外发送（例如直接从文件发送）：帧头之后紧跟 payloadLength 个字节就是一个完整的帧
+     * @return 处于 "读模式" 的 ByteBuffer，没有帧头的协议返回一个空的 ByteBuffer
+     */
+    ByteBuffer encodeHeader(byte type, int payloadLength);
+
+    default ByteBuffer encode(byte[] payload) {
+        return encode(new Frame(Frame.TYPE_DATA, payload));
+    }
+
+    /**
+     * 给使用 OutputStream 的阻塞式代码使用
+     */
+    default byte[] encodeToBytes(byte[] payload) {
+        ByteBuffer encoded = encode(payload);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,62 @@
+package com.hong.common.codec;
+
+import com.hong.common.Configs;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按照启动参数选择分帧协议，所有服务器和客户端使用同一个参数：<br>
+ * -Dcodec：delimiter（默认，原来的 "over" 结束标记）或 length（长度前缀的二进制帧）；<br>
+ * -Dcodec.maxFrameLength：单帧最大长度，默认 16MB；<br>
+ * -Dcodec.delimiter：delimiter 协议的结束标记，默认 over，可以是多个字节，支持 \r \n \t \\ 转义。
+ */
+public final class FrameCodecs {
+
+    private FrameCodecs() {
+    }
+
+    public static FrameCodec fromConfig() {
+        String name = Configs.getString("codec", "delimiter");
+        int maxFrameLength = Configs.getInt("codec.maxFrameLength", 16 * 1024 * 1024);
+        if ("delimiter".equalsIgnoreCase(name)) {
+            return new DelimiterFrameCodec(delimiterFromConfig(), maxFrameLength);
+        }
+        if ("length".equalsIgnoreCase(name)) {
+            return new LengthFieldFrameCodec(maxFrameLength);
+        }
+        throw new IllegalArgumentException("不支持的 codec : " + name);
+    }
+
+    /**
+     * 客户端发送信息时也用这个方法取得结束标记，保证和服务器一致
+     */
+    public static byte[] delimiterFromConfig() {
+        String value = Configs.getString("codec.delimiter", null);
+        if (value == null || value.isEmpty()) {
+            return DelimiterFrameCodec.DEFAULT_DELIMITER.clone();
+        }
+        StringBuilder delimiter = new StringBuilder(value.length());
+        for (int index = 0; index < value.length(); index++) {
+            char current = value.charAt(index);
+            if (current != '\\' || index == value.length() - 1) {
+                delimiter.append(current);
+                continue;
+            }
+            char escaped = value.charAt(++index);
+            switch (escaped) {
+                case 'r':
+                    delimiter.append('\r');
+                    break;
+                case 'n':
+                    delimiter.append('\n');
+                    break;
+                case 't':
+                    delimiter.append('\t');
+                    break;
+                default:
+                    delimiter.append(escaped);
+            }
+        }
+        return delimiter.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,31 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 增量解码器：每次把新收到的字节交给它，它负责保存不完整的部分，
+ * 凑成完整的帧后放入 out。<br>
+ * 解码器是有状态的，每个连接独享一个，不能在多个连接之间共享。
+ */
+public interface FrameDecoder {
+
+    /**
+     * 解码 in 中全部可读的字节（调用后 in.remaining() == 0）
+     */
+    void decode(ByteBuffer in, List<Frame> out) throws CodecException;
+
+    default void decode(byte[] bytes, int offset, int length, List<Frame> out) throws CodecException {
+        decode(ByteBuffer.wrap(bytes, offset, length), out);
+    }
+
+    /**
+     * 连接关闭时调用，处理缓存中剩余的数据
+     */
+    void decodeLast(List<Frame> out) throws CodecException;
+
+    /**
+     * @return 是否还有不完整的帧（已经收到一部分字节）
+     */
+    boolean hasPartialFrame();
+}
@@ -0,0 +1,49 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 长度前缀的二进制帧协议，格式见 {@link LengthFieldFrameDecoder}
+ */
+public class LengthFieldFrameCodec implements FrameCodec {
+
+    private final int maxFrameLength;
+
+    public LengthFieldFrameCodec(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public String name() {
+        return "length";
+    }
+
+    @Override
+    public FrameDecoder newDecoder() {
+        return new LengthFieldFrameDecoder(this.maxFrameLength);
+    }
+
+    @Override
+    public ByteBuffer encode(Frame frame) {
+        ByteBuffer payload = frame.getPayload();
+        int length = payload.remaining();
+        ByteBuffer encoded = ByteBuffer.allocate(Varint.sizeOf(length) + 1 + length);
+        Varint.write(length, encoded);
+        encoded.put(frame.getType());
+        encoded.put(payload);
+        encoded.flip();
+        return encoded;
+    }
+
+    @Override
+    public ByteBuffer encodeHeader(byte type, int payloadLength) {
+        if (payloadLength < 0 || payloadLength > this.maxFrameLength) {
+            throw new IllegalArgumentException("帧长度 " + payloadLength + " 超过上限 " + this.maxFrameLength);
+        }
+        ByteBuffer header = ByteBuffer.allocate(Varint.sizeOf(payloadLength) + 1);
+        Varint.write(payloadLength, header);
+        header.put(type);
+        header.flip();
+        return header;
+    }
+}
@@ -0,0 +1,116 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 长度前缀帧的增量解码器，帧格式：
+ * <pre>
+ * +----------------------+-----------+------------------+
+ * | varint 负载长度(1~5) | 类型(1)   | 负载(长度个字节) |
+ * +----------------------+-----------+------------------+
+ * </pre>
+ * 通过一个简单的状态机逐段解析，任何一段都可以被拆分在多次 read 中，
+ * 负载部分按块复制。负载的缓存不按长度字段一次分配：先分配 min(长度, 64 KB)，随着负载实际到达按 2 倍增长，
+ * 对方只发几个字节的帧头（声明一个很大的长度）不会让服务器分配 maxFrameLength 大小的数组。
+ */
+public class LengthFieldFrameDecoder implements FrameDecoder {
+
+    private static final int READ_LENGTH = 0;
+
+    private static final int READ_TYPE = 1;
+
+    private static final int READ_PAYLOAD = 2;
+
+    private static final int INITIAL_PAYLOAD_SIZE = 64 * 1024;
+
+    private final int maxFrameLength;
+
+    private int state = READ_LENGTH;
+
+    private int length;
+
+    private int lengthShift;
+
+    private byte type;
+
+    private byte[] payload;
+
+    private int payloadFilled;
+
+    public LengthFieldFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public void decode(ByteBuffer in, List<Frame> out) throws CodecException {
+        while (in.hasRemaining()) {
+            switch (this.state) {
+                case READ_LENGTH:
+                    byte current = in.get();
+                    // 第 5 个字节只剩 32 - 28 = 4 位有效数据：更高的位会被移出 int，后面也不能再有字节，都视为格式错误
+                    if (this.lengthShift == Varint.LAST_BYTE_SHIFT && (current & 0xFF) > Varint.LAST_BYTE_MAX) {
+                        throw new CodecException("帧长度字段超过 32 位（第 " + Varint.MAX_VARINT_SIZE + " 个字节是 0x"
+                                + Integer.toHexString(current & 0xFF) + "）");
+                    }
+                    this.length |= (current & 0x7F) << this.lengthShift;
+                    if ((current & 0x80) != 0) {
+                        this.lengthShift += 7;
+                        break;
+                    }
+                    if (this.length < 0 || this.length > this.maxFrameLength) {
+                        throw new CodecException("帧长度 " + (this.length & 0xFFFFFFFFL) + " 超过上限 " + this.maxFrameLength);
+                    }
+                    this.state = READ_TYPE;
+                    break;
+                case READ_TYPE:
+                    this.type = in.get();
+                    this.payload = new byte[Math.min(this.length, INITIAL_PAYLOAD_SIZE)];
+                    this.payloadFilled = 0;
+                    this.state = READ_PAYLOAD;
+                    if (this.length == 0) {
+                        complete(out);
+                    }
+                    break;
+                default:
+                    int size = Math.min(in.remaining(), this.length - this.payloadFilled);
+                    ensureCapacity(this.payloadFilled + size);
+                    in.get(this.payload, this.payloadFilled, size);
+                    this.payloadFilled += size;
+                    if (this.payloadFilled == this.length) {
+                        complete(out);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.payload.length) {
+            // 按 2 倍增长，但不超过这一帧的长度，负载收完时数组正好是负载的大小
+            int newCapacity = (int) Math.min(Math.max(this.payload.length * 2L, capacity), this.length);
+            this.payload = Arrays.copyOf(this.payload, newCapacity);
+        }
+    }
+
+    private void complete(List<Frame> out) {
+        out.add(new Frame(this.type, this.payload));
+        this.payload = null;
+        this.length = 0;
+        this.lengthShift = 0;
+        this.state = READ_LENGTH;
+    }
+
+    @Override
+    public void decodeLast(List<Frame> out) throws CodecException {
+        if (hasPartialFrame()) {
+            throw new CodecException("连接关闭时还有不完整的帧");
+        }
+    }
+
+    @Override
+    public boolean hasPartialFrame() {
+        return this.state != READ_LENGTH || this.lengthShift > 0;
+    }
+}
@@ -0,0 +1,42 @@
+package com.hong.common.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 无符号 varint（LEB128）编码：每个字节的低 7 位是数据，最高位为 1 表示后面还有字节。
+ * 长度小于 128 的帧，长度字段只占一个字节。
+ */
+public final class Varint {
+
+    /**
+     * 32 位整数最多占 5 个字节
+     */
+    public static final int MAX_VARINT_SIZE = 5;
+
+    /**
+     * 第 5 个字节的数据从第 28 位开始，只有低 4 位有效，最高位（后面还有字节）也不能是 1
+     */
+    static final int LAST_BYTE_SHIFT = 7 * (MAX_VARINT_SIZE - 1);
+
+    static final int LAST_BYTE_MAX = 0x0F;
+
+    private Varint() {
+    }
+
+    public static int sizeOf(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static void write(int value, ByteBuffer target) {
+        while ((value & ~0x7F) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+}
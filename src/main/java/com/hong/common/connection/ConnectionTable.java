@@ -0,0 +1,262 @@
+package com.hong.common.connection;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 以 long 类型的连接 id 为 key 的紧凑连接表，保存每个连接固定个数的 long 字段（时间戳、计数器、缓存区句柄等）。<br>
+ * 原来每个连接的状态放在 ConcurrentHashMap&lt;Integer, StringBuffer&gt; 或者 Netty 的 AttributeKey 中，
+ * 一个空闲的连接光是 Node、装箱的 Integer、StringBuffer 和它的 char[] 就要一百多字节，还要加上 GC 扫描这些小对象的开销。
+ * 这里所有连接的 id 和字段放在同一个扁平的 long 数组中：<br>
+ * 1、开放寻址（线性探测），每个槽位依次是 id 和 fieldCount 个字段，没有任何每连接的对象，
+ * 每个连接只占 (1 + fieldCount) × 8 字节再除以装载因子；<br>
+ * 2、删除只把 id 改成墓碑，槽位不移动，所以并发的读取不会因为元素被挪动而漏掉；墓碑在扩容（或者原尺寸重新整理）时清除；<br>
+ * 3、并发约定：修改（put、remove、set、add）只能由一个线程进行（例如连接所属的 reactor 线程），或者由调用方加锁；
+ * 读取（contains、get）可以在任意线程中进行，不加锁：读到字段之后再确认一次槽位上还是这个 id，不是就重新查找。
+ * 扩容时新数组整理完成之后才发布（volatile），读取的线程最多看到稍旧一点的值。<br>
+ * 连接 id 必须大于 0（0 表示空槽位，-1 表示墓碑），并且不应该重复使用（id 递增分配即可）。
+ */
+public class ConnectionTable {
+
+    private static final long EMPTY = 0;
+
+    private static final long TOMBSTONE = -1;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final int fieldCount;
+
+    private final int stride;
+
+    /**
+     * 槽位数组，长度是 capacity × stride；扩容时整体替换
+     */
+    private volatile AtomicLongArray slots;
+
+    private int capacity;
+
+    private int threshold;
+
+    private volatile int size;
+
+    /**
+     * 墓碑数，和 size 一起决定什么时候整理
+     */
+    private int tombstones;
+
+    /**
+     * @param fieldCount 每个连接保存多少个 long 字段
+     * @param expectedSize 预计的连接数，用来确定初始容量，避免频繁扩容
+     */
+    public ConnectionTable(int fieldCount, int expectedSize) {
+        if (fieldCount < 0 || expectedSize < 0) {
+            throw new IllegalArgumentException("连接表参数不正确 : fieldCount=" + fieldCount + ", expectedSize=" + expectedSize);
+        }
+        this.fieldCount = fieldCount;
+        this.stride = 1 + fieldCount;
+        resize(capacityFor(expectedSize));
+    }
+
+    /**
+     * 加入一个连接，所有字段为 0
+     * @return false 表示这个 id 已经在表中（字段不变）
+     */
+    public boolean put(long id) {
+        checkId(id);
+        if (this.size + this.tombstones + 1 > this.threshold) {
+            // 墓碑占了一半以上时按原尺寸整理就够了，否则扩大一倍
+            resize(this.size + 1 > this.threshold / 2 ? this.capacity << 1 : this.capacity);
+        }
+        AtomicLongArray slots = this.slots;
+        int mask = this.capacity - 1;
+        int firstTombstone = -1;
+        for (int index = indexOf(id, mask); ; index = (index + 1) & mask) {
+            long current = slots.get(index * this.stride);
+            if (current == id) {
+                return false;
+            }
+            if (current == TOMBSTONE) {
+                if (firstTombstone < 0) {
+                    firstTombstone = index;
+                }
+            } else if (current == EMPTY) {
+                int target = firstTombstone >= 0 ? firstTombstone : index;
+                int base = target * this.stride;
+                for (int field = 1; field <= this.fieldCount; field++) {
+                    slots.lazySet(base + field, 0);
+                }
+                // 字段清零之后再写 id，读取的线程看到 id 时字段已经是新连接的
+                slots.set(base, id);
+                if (target == firstTombstone) {
+                    this.tombstones--;
+                }
+                this.size++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return false 表示这个 id 不在表中
+     */
+    public boolean remove(long id) {
+        int base = baseOf(this.slots, id);
+        if (base < 0) {
+            return false;
+        }
+        this.slots.set(base, TOMBSTONE);
+        this.size--;
+        this.tombstones++;
+        return true;
+    }
+
+    public boolean contains(long id) {
+        return baseOf(this.slots, id) >= 0;
+    }
+
+    /**
+     * 读取一个字段（任意线程，不加锁）
+     * @return 字段的值；id 不在表中时返回 defaultValue
+     */
+    public long get(long id, int field, long defaultValue) {
+        checkField(field);
+        while (true) {
+            AtomicLongArray slots = this.slots;
+            int base = baseOf(slots, id);
+            if (base < 0) {
+                return defaultValue;
+            }
+            long value = slots.get(base + 1 + field);
+            // 读取字段的同时这个槽位可能被删除、又被别的连接占用，确认一下 id 没有变
+            if (slots.get(base) == id) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @return false 表示这个 id 不在表中
+     */
+    public boolean set(long id, int field, long value) {
+        checkField(field);
+        int base = baseOf(this.slots, id);
+        if (base < 0) {
+            return false;
+        }
+        this.slots.lazySet(base + 1 + field, value);
+        return true;
+    }
+
+    /**
+     * 给一个字段加上 delta（只由修改线程调用，所以不需要 CAS）
+     * @return 新的值；id 不在表中时返回 0 并且不做任何修改
+     */
+    public long add(long id, int field, long delta) {
+        checkField(field);
+        int base = baseOf(this.slots, id);
+        if (base < 0) {
+            return 0;
+        }
+        long value = this.slots.get(base + 1 + field) + delta;
+        this.slots.lazySet(base + 1 + field, value);
+        return value;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    public int fieldCount() {
+        return this.fieldCount;
+    }
+
+    /**
+     * @return 槽位数组占用的字节数（不含数组对象头）
+     */
+    public long memoryBytes() {
+        return (long) this.capacity * this.stride * 8;
+    }
+
+    private int baseOf(AtomicLongArray slots, long id) {
+        if (id <= 0) {
+            return -1;
+        }
+        int mask = slots.length() / this.stride - 1;
+        for (int index = indexOf(id, mask), probes = 0; probes <= mask; index = (index + 1) & mask, probes++) {
+            long current = slots.get(index * this.stride);
+            if (current == id) {
+                return index * this.stride;
+            }
+            if (current == EMPTY) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private void resize(int newCapacity) {
+        if ((long) newCapacity * this.stride > Integer.MAX_VALUE) {
+            throw new IllegalStateException("连接表已经达到最大容量 : " + this.capacity);
+        }
+        AtomicLongArray oldSlots = this.slots;
+        AtomicLongArray newSlots = new AtomicLongArray(newCapacity * this.stride);
+        int mask = newCapacity - 1;
+        if (oldSlots != null) {
+            for (int oldBase = 0; oldBase < oldSlots.length(); oldBase += this.stride) {
+                long id = oldSlots.get(oldBase);
+                if (id == EMPTY || id == TOMBSTONE) {
+                    continue;
+                }
+                int index = indexOf(id, mask);
+                while (newSlots.get(index * this.stride) != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                int newBase = index * this.stride;
+                for (int offset = 0; offset < this.stride; offset++) {
+                    newSlots.lazySet(newBase + offset, oldSlots.get(oldBase + offset));
+                }
+            }
+        }
+        this.capacity = newCapacity;
+        this.threshold = (int) (newCapacity * LOAD_FACTOR);
+        this.tombstones = 0;
+        this.slots = newSlots;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(expectedSize / (double) LOAD_FACTOR) + 1;
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int indexOf(long id, int mask) {
+        // 连接 id 一般是连续递增的，先打散（MurmurHash3 的 fmix64）再取低位
+        long hash = id;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    private static void checkId(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("连接 id 必须大于 0 : " + id);
+        }
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= this.fieldCount) {
+            throw new IndexOutOfBoundsException("字段下标越界 : " + field + "，字段数 " + this.fieldCount);
+        }
+    }
+}
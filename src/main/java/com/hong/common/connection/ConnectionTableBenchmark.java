@@ -0,0 +1,82 @@
+package com.hong.common.connection;
+
+import com.hong.common.Configs;
+import com.hong.common.bench.BenchmarkSupport;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 测量保存 N 个空闲连接的状态时，平均每个连接占用多少堆内存（字节）：<br>
+ * 1、stringbuffer：最初 SocketServerNIO2 的写法，ConcurrentHashMap&lt;Integer, StringBuffer&gt;，每个连接一个空的 StringBuffer；<br>
+ * 2、boxed：ConcurrentHashMap&lt;Long, 状态对象&gt;，状态对象中是和 table 相同的几个 long 字段；<br>
+ * 3、table：{@link ConnectionTable}，扁平的 long 数组，没有每连接的对象。<br>
+ * 不建立真正的连接，只模拟连接表中的条目：连接 id 递增分配，每个连接 -Dbench.fields 个字段。
+ * 内存是填充前后 GC 之后的堆占用之差，建议加上 -Xmx 足够大的堆运行（1M 个 stringbuffer 条目大约要 200MB）。
+ * table 的容量是 2 的幂，每个连接实际占用的字节数随装载比例在 (1 + 字段数) × 8 的 1.33 ~ 2.67 倍之间变化；
+ * 更重要的区别是 table 没有每连接的对象，1M 个连接时 map 的写法有三百多万个小对象要由 GC 扫描、复制。<br>
+ * 参数：-Dbench.entries（默认 100000,1000000）、-Dbench.modes（默认 stringbuffer,boxed,table）、-Dbench.fields（默认 4）。
+ */
+public class ConnectionTableBenchmark {
+
+    public static void main(String[] args) {
+        BenchmarkSupport.quietLogging();
+        String[] entriesList = Configs.getString("bench.entries", "100000,1000000").split(",");
+        String[] modes = Configs.getString("bench.modes", "stringbuffer,boxed,table").split(",");
+        int fields = Configs.getInt("bench.fields", 4);
+
+        System.out.println("每个连接 " + fields + " 个字段");
+        for (String entriesValue : entriesList) {
+            int entries = Integer.parseInt(entriesValue.trim());
+            for (String mode : modes) {
+                String name = mode.trim();
+                long before = BenchmarkSupport.settledUsedHeapBytes();
+                long startNanos = System.nanoTime();
+                Object holder = fill(name, entries, fields);
+                long elapsedNanos = System.nanoTime() - startNanos;
+                long after = BenchmarkSupport.settledUsedHeapBytes();
+                String detail = "";
+                if (holder instanceof ConnectionTable) {
+                    ConnectionTable table = (ConnectionTable) holder;
+                    detail = String.format("，容量 %,d（装载 %.2f）", table.capacity(), (double) table.size() / table.capacity());
+                }
+                System.out.println(String.format("%-12s %,9d 个连接：每个连接 %,6.1f 字节，填充耗时 %,dms",
+                        name, entries, (double) (after - before) / entries, elapsedNanos / 1000000) + detail);
+                // 测量完之前 holder 必须可达，否则会被 GC 回收
+                if (holder.hashCode() == 42) {
+                    System.out.println();
+                }
+            }
+        }
+    }
+
+    private static Object fill(String mode, int entries, int fields) {
+        long now = System.currentTimeMillis();
+        if ("stringbuffer".equals(mode)) {
+            ConcurrentMap<Integer, StringBuffer> map = new ConcurrentHashMap<>();
+            for (int id = 1; id <= entries; id++) {
+                map.put(id, new StringBuffer());
+            }
+            return map;
+        }
+        if ("boxed".equals(mode)) {
+            ConcurrentMap<Long, long[]> map = new ConcurrentHashMap<>();
+            for (long id = 1; id <= entries; id++) {
+                long[] state = new long[fields];
+                state[0] = now;
+                map.put(id, state);
+            }
+            return map;
+        }
+        if ("table".equals(mode)) {
+            // 不预先指定容量，把扩容过程中的装载因子也算进去
+            ConnectionTable table = new ConnectionTable(fields, 0);
+            for (long id = 1; id <= entries; id++) {
+                table.put(id);
+                table.set(id, 0, now);
+            }
+            return table;
+        }
+        throw new IllegalArgumentException("未知的模式 : " + mode);
+    }
+}
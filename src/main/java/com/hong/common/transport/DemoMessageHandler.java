@@ -0,0 +1,27 @@
+package com.hong.common.transport;
+
+import com.hong.common.codec.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 和各个示例服务器一样的处理：打印客户端发来的信息，回发一句固定的话。
+ * 没有通过 -Dtransport.handler 指定业务处理器时使用
+ */
+public class DemoMessageHandler implements MessageHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(DemoMessageHandler.class);
+
+    @Override
+    public Frame handle(MessageContext context, Frame message) throws Exception {
+        if (logger.isInfoEnabled()) {
+            // 注意中文乱码的问题，使用 URLDecoder/URLEncoder 进行解编码。
+            String text = URLDecoder.decode(message.getPayloadAsString(StandardCharsets.UTF_8), "UTF-8");
+            logger.info("端口：" + context.getRemotePort() + "客户端发来的信息=====message : " + text);
+        }
+        return new Frame(Frame.TYPE_DATA, (context.getTransportName() + " 回发处理结果").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,36 @@
+package com.hong.common.transport;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 一条信息的来源：由哪个传输层、从哪个客户端地址收到。每个连接创建一个，连接上的所有信息共用
+ */
+public final class MessageContext {
+
+    private final String transportName;
+
+    private final InetSocketAddress remoteAddress;
+
+    public MessageContext(String transportName, InetSocketAddress remoteAddress) {
+        this.transportName = transportName;
+        this.remoteAddress = remoteAddress;
+    }
+
+    public String getTransportName() {
+        return this.transportName;
+    }
+
+    /**
+     * @return 客户端地址，连接已经断开、取不到地址时为 null
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return this.remoteAddress;
+    }
+
+    /**
+     * @return 客户端使用的端口，日志中用来区分连接
+     */
+    public int getRemotePort() {
+        return this.remoteAddress == null ? -1 : this.remoteAddress.getPort();
+    }
+}
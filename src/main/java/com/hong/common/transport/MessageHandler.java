@@ -0,0 +1,21 @@
+package com.hong.common.transport;
+
+import com.hong.common.codec.Frame;
+
+/**
+ * 业务处理器：每次处理一条完整的信息（帧），返回要回发的响应。<br>
+ * 处理器和使用哪种 IO 模型无关，同一个实现可以不加修改地运行在 BIO、NIO、AIO、Netty 任何一个 {@link Transport} 上，
+ * 分帧由传输层按照 -Dcodec 完成，处理器拿到的总是完整的帧。<br>
+ * 同一个处理器实例会被多个连接（多个线程）同时调用，实现必须是线程安全的；
+ * 同一个连接的信息总是按到达顺序依次交给处理器，不会并发。
+ */
+public interface MessageHandler {
+
+    /**
+     * @param context 信息来自哪个连接
+     * @param message 一条完整的信息
+     * @return 回发的响应，null 表示不回发
+     * @throws Exception 处理失败时，传输层记录日志并关闭这个连接
+     */
+    Frame handle(MessageContext context, Frame message) throws Exception;
+}
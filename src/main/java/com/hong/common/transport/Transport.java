@@ -0,0 +1,29 @@
+package com.hong.common.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * 传输层（IO 模型）的统一接口：负责监听、接收连接、按照分帧协议读出完整的信息交给 {@link MessageHandler}，
+ * 再把处理器返回的响应编码后写回。<br>
+ * 每种 IO 模型一个实现（bio / nio / aio / netty），通过 ServiceLoader（META-INF/services）发现，
+ * 由 {@link Transports} 按照 -Dtransport 选择。实现类需要有无参构造方法（发现时每个实现都会被创建一次，构造方法中不要创建线程、打开端口），一个实例只能启动一次。
+ */
+public interface Transport {
+
+    /**
+     * @return 传输层的名称，也就是 -Dtransport 的取值
+     */
+    String name();
+
+    /**
+     * 绑定地址并开始服务，方法在服务启动之后立即返回（接收和处理连接都在传输层自己的线程中）
+     * @return 实际监听的地址（绑定随机端口时使用）
+     */
+    InetSocketAddress start(TransportConfig config, MessageHandler handler) throws IOException;
+
+    /**
+     * 停止监听并释放线程，已经建立的连接不保证处理完
+     */
+    void stop();
+}
@@ -0,0 +1,46 @@
+package com.hong.common.transport;
+
+import com.hong.common.Configs;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 所有传输层共用的启动参数：<br>
+ * -Dserver.port：监听端口，默认 83；-Dserver.bindHost：监听地址，默认 0.0.0.0；<br>
+ * -Dcodec.*：分帧协议，和客户端一致，见 {@link FrameCodecs}；<br>
+ * -Dtransport.closeAfterReply：处理完一条信息、响应写完之后是否关闭连接，默认 true
+ * （delimiter 协议的示例客户端一直读到连接关闭才算收到了完整的响应）；使用长连接、pipelining 的客户端时设为 false。
+ */
+public final class TransportConfig {
+
+    private final InetSocketAddress address;
+
+    private final FrameCodec codec;
+
+    private final boolean closeAfterReply;
+
+    public TransportConfig(InetSocketAddress address, FrameCodec codec, boolean closeAfterReply) {
+        this.address = address;
+        this.codec = codec;
+        this.closeAfterReply = closeAfterReply;
+    }
+
+    public static TransportConfig fromConfig() {
+        InetSocketAddress address = new InetSocketAddress(Configs.getString("server.bindHost", "0.0.0.0"), Configs.getServerPort());
+        return new TransportConfig(address, FrameCodecs.fromConfig(), Configs.getBoolean("transport.closeAfterReply", true));
+    }
+
+    public InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    public FrameCodec getCodec() {
+        return this.codec;
+    }
+
+    public boolean isCloseAfterReply() {
+        return this.closeAfterReply;
+    }
+}
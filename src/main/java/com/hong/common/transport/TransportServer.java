@@ -0,0 +1,51 @@
+package com.hong.common.transport;
+
+import com.hong.common.Configs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 通用的服务器入口：同一个业务处理器可以运行在任何一种 IO 模型上，只需要换一个启动参数，
+ * 方便在相同的业务和分帧协议下比较各个 IO 模型。<br>
+ * -Dtransport：bio、nio（默认）、aio、netty，见 {@link Transports}；<br>
+ * -Dtransport.handler：业务处理器的类名（需要有无参构造方法），默认 {@link DemoMessageHandler}；<br>
+ * 其它参数见 {@link TransportConfig}，以及各个传输层自己的参数（-Dbio.*、-Dnio.*、-Daio.*、-Dnetty.*）。
+ */
+public class TransportServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransportServer.class);
+
+    public static void main(String[] args) throws Exception {
+        final Transport transport = Transports.fromConfig();
+        MessageHandler handler = handlerFromConfig();
+        InetSocketAddress address = transport.start(TransportConfig.fromConfig(), handler);
+        logger.info("TransportServer 启动，传输层：" + transport.name() + "，业务处理器：" + handler.getClass().getName()
+                + "，监听地址：" + address);
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                transport.stop();
+                stopped.countDown();
+            }
+        }, "TransportServer-shutdown"));
+        // 传输层的线程都在后台运行，主线程在这里等待，直到进程退出
+        stopped.await();
+    }
+
+    private static MessageHandler handlerFromConfig() throws ReflectiveOperationException {
+        String className = Configs.getString("transport.handler", null);
+        if (className == null) {
+            return new DemoMessageHandler();
+        }
+        Class<?> handlerClass = Class.forName(className);
+        if (!MessageHandler.class.isAssignableFrom(handlerClass)) {
+            throw new IllegalArgumentException("transport.handler 不是 MessageHandler 的实现 : " + className);
+        }
+        return (MessageHandler) handlerClass.getConstructor().newInstance();
+    }
+}
@@ -0,0 +1,41 @@
+package com.hong.common.transport;
+
+import com.hong.common.Configs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * 通过 ServiceLoader 发现所有的 {@link Transport} 实现（在 META-INF/services/com.hong.common.transport.Transport 中登记），
+ * 按照名称创建。新增一种 IO 模型时只需要实现 Transport 并登记，不需要修改这里
+ */
+public final class Transports {
+
+    private Transports() {
+    }
+
+    /**
+     * 按照 -Dtransport 创建传输层，默认 nio
+     */
+    public static Transport fromConfig() {
+        return create(Configs.getString("transport", "nio"));
+    }
+
+    public static Transport create(String name) {
+        for (Transport transport : ServiceLoader.load(Transport.class)) {
+            if (transport.name().equalsIgnoreCase(name)) {
+                return transport;
+            }
+        }
+        throw new IllegalArgumentException("不支持的 transport : " + name + "，可以使用：" + availableNames());
+    }
+
+    public static List<String> availableNames() {
+        List<String> names = new ArrayList<>();
+        for (Transport transport : ServiceLoader.load(Transport.class)) {
+            names.add(transport.name());
+        }
+        return names;
+    }
+}
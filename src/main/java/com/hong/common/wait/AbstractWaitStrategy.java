@@ -0,0 +1,105 @@
+package com.hong.common.wait;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 负责统计空转次数和延迟代价，子类只需要实现具体的等待动作
+ */
+public abstract class AbstractWaitStrategy implements WaitStrategy, WaitStatsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractWaitStrategy.class);
+
+    private final LongAdder idleRounds = new LongAdder();
+
+    private final LongAdder idleNanos = new LongAdder();
+
+    private final LongAdder wakeups = new LongAdder();
+
+    private final LongAdder wakeupDelayNanos = new LongAdder();
+
+    private final LongAccumulator maxWakeupDelayNanos = new LongAccumulator(Math::max, 0);
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public final void idle(int idleRounds) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            doIdle(idleRounds);
+        } finally {
+            this.idleRounds.increment();
+            this.idleNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 具体的等待动作
+     */
+    protected abstract void doIdle(int idleRounds) throws InterruptedException;
+
+    @Override
+    public void wakeup(long lastIdleNanos) {
+        this.wakeups.increment();
+        this.wakeupDelayNanos.add(lastIdleNanos);
+        this.maxWakeupDelayNanos.accumulate(lastIdleNanos);
+    }
+
+    @Override
+    public WaitStatsMXBean stats() {
+        return this;
+    }
+
+    /**
+     * 注册到平台 MBeanServer，注册失败只影响监控
+     */
+    public WaitStrategy registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.hong.common.wait:type=WaitStrategy,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            logger.warn("WaitStrategy " + name + " 注册 JMX 失败 : " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    @Override
+    public long getIdleRounds() {
+        return this.idleRounds.sum();
+    }
+
+    @Override
+    public long getIdleMillis() {
+        return this.idleNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getWakeups() {
+        return this.wakeups.sum();
+    }
+
+    @Override
+    public double getAverageWakeupDelayMicros() {
+        long count = this.wakeups.sum();
+        return count == 0 ? 0 : this.wakeupDelayNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public double getMaxWakeupDelayMicros() {
+        return this.maxWakeupDelayNanos.get() / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return getStrategyName() + "{idleRounds=" + getIdleRounds() + ", idleMillis=" + getIdleMillis()
+                + ", wakeups=" + getWakeups() + ", avgWakeupDelay=" + getAverageWakeupDelayMicros() + "us}";
+    }
+}
@@ -0,0 +1,54 @@
+package com.hong.common.wait;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 逐级退避：前 spinRounds 次忙等，接下来 yieldRounds 次让出时间片，
+ * 之后 park，park 的时间从 minParkNanos 开始每次翻倍，直到 maxParkNanos。<br>
+ * 刚刚空闲下来时延迟很低，长时间空闲时几乎不占 CPU。
+ */
+public class BackoffParkWaitStrategy extends AbstractWaitStrategy {
+
+    private final int spinRounds;
+
+    private final int yieldRounds;
+
+    private final long minParkNanos;
+
+    private final long maxParkNanos;
+
+    public BackoffParkWaitStrategy(int spinRounds, int yieldRounds, long minParkNanos, long maxParkNanos) {
+        if (minParkNanos <= 0 || maxParkNanos < minParkNanos) {
+            throw new IllegalArgumentException("park 时间不正确 : min=" + minParkNanos + ", max=" + maxParkNanos);
+        }
+        this.spinRounds = spinRounds;
+        this.yieldRounds = yieldRounds;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    protected void doIdle(int idleRounds) throws InterruptedException {
+        if (idleRounds <= this.spinRounds) {
+            return;
+        }
+        if (idleRounds <= this.spinRounds + this.yieldRounds) {
+            Thread.yield();
+            return;
+        }
+        int shift = Math.min(30, idleRounds - this.spinRounds - this.yieldRounds - 1);
+        long parkNanos = this.minParkNanos << shift;
+        if (parkNanos <= 0 || parkNanos > this.maxParkNanos) {
+            parkNanos = this.maxParkNanos;
+        }
+        LockSupport.parkNanos(parkNanos);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public String getStrategyName() {
+        return "backoff";
+    }
+}
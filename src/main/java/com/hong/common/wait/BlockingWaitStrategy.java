@@ -0,0 +1,40 @@
+package com.hong.common.wait;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 完全阻塞：调用方不再轮询，而是直接使用阻塞 IO（accept / read 一直阻塞到有数据），
+ * 由操作系统负责唤醒。CPU 占用最低，但线程在阻塞期间不能做其它事情。<br>
+ * 不能使用阻塞 IO 的调用方（例如只有非阻塞通道）仍然可以调用 idle：每次固定 park parkNanos，
+ * 相当于原来 setSoTimeout 的写法，空闲时几乎不占 CPU，代价是最多 parkNanos 的额外延迟
+ */
+public class BlockingWaitStrategy extends AbstractWaitStrategy {
+
+    private final long parkNanos;
+
+    public BlockingWaitStrategy(long parkNanos) {
+        if (parkNanos <= 0) {
+            throw new IllegalArgumentException("park 时间不正确 : " + parkNanos);
+        }
+        this.parkNanos = parkNanos;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    @Override
+    protected void doIdle(int idleRounds) throws InterruptedException {
+        // parkNanos 可能提前返回（unpark、中断或者虚假唤醒），调用方会重新检查，再次空转时接着等待
+        LockSupport.parkNanos(this.parkNanos);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public String getStrategyName() {
+        return "blocking";
+    }
+}
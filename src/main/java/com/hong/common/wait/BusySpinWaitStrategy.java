@@ -0,0 +1,16 @@
+package com.hong.common.wait;
+
+/**
+ * 忙等：什么都不做，立刻开始下一轮轮询。延迟最低，代价是占满一个 CPU 核
+ */
+public class BusySpinWaitStrategy extends AbstractWaitStrategy {
+
+    @Override
+    protected void doIdle(int idleRounds) {
+    }
+
+    @Override
+    public String getStrategyName() {
+        return "spin";
+    }
+}
@@ -0,0 +1,34 @@
+package com.hong.common.wait;
+
+/**
+ * 等待策略的运行指标，用来评估每种策略的 CPU / 延迟代价
+ */
+public interface WaitStatsMXBean {
+
+    String getStrategyName();
+
+    /**
+     * 累计空转次数
+     */
+    long getIdleRounds();
+
+    /**
+     * 累计花在空转上的时间（毫秒）
+     */
+    long getIdleMillis();
+
+    /**
+     * 空转之后拿到事件的次数
+     */
+    long getWakeups();
+
+    /**
+     * 平均每次事件因为等待策略而多付出的延迟（微秒）
+     */
+    double getAverageWakeupDelayMicros();
+
+    /**
+     * 单次事件因为等待策略而多付出的最大延迟（微秒）
+     */
+    double getMaxWakeupDelayMicros();
+}
@@ -0,0 +1,40 @@
+package com.hong.common.wait;
+
+import com.hong.common.Configs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按照启动参数创建等待策略：<br>
+ * -D{prefix}.wait：spin / yield / backoff（默认） / blocking；<br>
+ * backoff 策略的参数：-D{prefix}.wait.spinRounds、-D{prefix}.wait.yieldRounds、
+ * -D{prefix}.wait.minParkMicros、-D{prefix}.wait.maxParkMicros；
+ * blocking 策略不能使用阻塞 IO 时每次 park 的时间：-D{prefix}.wait.blockingParkMicros（默认 10000）。
+ */
+public final class WaitStrategies {
+
+    private WaitStrategies() {
+    }
+
+    public static WaitStrategy fromConfig(String prefix) {
+        String name = Configs.getString(prefix + ".wait", "backoff");
+        AbstractWaitStrategy strategy;
+        if ("spin".equalsIgnoreCase(name)) {
+            strategy = new BusySpinWaitStrategy();
+        } else if ("yield".equalsIgnoreCase(name)) {
+            strategy = new YieldingWaitStrategy();
+        } else if ("backoff".equalsIgnoreCase(name)) {
+            strategy = new BackoffParkWaitStrategy(
+                    Configs.getInt(prefix + ".wait.spinRounds", 100),
+                    Configs.getInt(prefix + ".wait.yieldRounds", 10),
+                    TimeUnit.MICROSECONDS.toNanos(Configs.getLong(prefix + ".wait.minParkMicros", 1)),
+                    TimeUnit.MICROSECONDS.toNanos(Configs.getLong(prefix + ".wait.maxParkMicros", 1000)));
+        } else if ("blocking".equalsIgnoreCase(name)) {
+            strategy = new BlockingWaitStrategy(
+                    TimeUnit.MICROSECONDS.toNanos(Configs.getLong(prefix + ".wait.blockingParkMicros", 10000)));
+        } else {
+            throw new IllegalArgumentException("不支持的等待策略 " + prefix + ".wait : " + name);
+        }
+        return strategy.registerMBean(prefix);
+    }
+}
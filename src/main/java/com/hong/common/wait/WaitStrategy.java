@@ -0,0 +1,32 @@
+package com.hong.common.wait;
+
+/**
+ * 轮询循环（accept 循环、read 循环）在 "本轮没有拿到任何连接/数据" 时的等待策略。<br>
+ * 不同的策略是延迟和 CPU 占用之间的不同取舍：<br>
+ * BusySpin：延迟最低，但会占满一个核；<br>
+ * Yielding：让出时间片，CPU 占用依然很高；<br>
+ * BackoffPark：先自旋、再让出、最后逐步加长 park 的时间，空闲时几乎不占 CPU；<br>
+ * Blocking：不轮询，直接使用阻塞 IO，由操作系统唤醒。<br>
+ * 策略对象本身是无状态、线程安全的，连续空转的次数由调用方记录并传入。
+ */
+public interface WaitStrategy {
+
+    /**
+     * @return true 表示调用方应该直接使用阻塞 IO，而不是轮询
+     */
+    boolean isBlocking();
+
+    /**
+     * 本轮没有拿到任何连接/数据时调用
+     * @param idleRounds 连续空转的次数，从 1 开始；拿到数据后调用方重新计数
+     */
+    void idle(int idleRounds) throws InterruptedException;
+
+    /**
+     * 空转之后终于拿到了连接/数据时调用
+     * @param lastIdleNanos 最后一次 idle 调用花费的时间，这段时间就是该策略给这次事件带来的最大额外延迟
+     */
+    void wakeup(long lastIdleNanos);
+
+    WaitStatsMXBean stats();
+}
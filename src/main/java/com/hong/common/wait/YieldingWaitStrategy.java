@@ -0,0 +1,18 @@
+package com.hong.common.wait;
+
+/**
+ * 每次空转都调用 Thread.yield() 让出时间片。
+ * 有其它线程需要 CPU 时会让给它们，否则和忙等差不多
+ */
+public class YieldingWaitStrategy extends AbstractWaitStrategy {
+
+    @Override
+    protected void doIdle(int idleRounds) {
+        Thread.yield();
+    }
+
+    @Override
+    public String getStrategyName() {
+        return "yield";
+    }
+}
@@ -0,0 +1,168 @@
+package com.hong.netty;
+
+import com.hong.common.Configs;
+import com.hong.common.bench.BenchmarkSupport;
+import com.hong.common.bench.LatencyRecorder;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接频繁建立/断开（connection churn）场景下，比较 Netty 服务器的两种线程布局（见 {@link NettyServerLauncher}）：
+ * boss/worker 与 SO_REUSEPORT（每个核心一个独立的监听者）。<br>
+ * 每个客户端线程不断地：建立连接 -> 发送一条短请求 -> 读取响应直到服务器关闭连接。
+ * 输出每秒完成的连接数、单个连接从 connect 到收到全部响应的延迟，以及连接在服务器各个 event loop 线程上的分布。<br>
+ * 参数：-Dbench.layouts（默认 bossWorker,reuseport）、-Dbench.seconds（默认 5）、-Dbench.clientThreads（默认 CPU 个数 * 4）。
+ * 在 JDK 9 以上运行时要加上 --add-opens java.base/java.nio=ALL-UNNAMED，否则 reuseport 会退回 boss/worker。
+ */
+public class ConnectionChurnBenchmark {
+
+    private static final byte[] REQUEST = "ConnectionChurnBenchmark request over".getBytes();
+
+    private static final byte[] RESPONSE = "ConnectionChurnBenchmark response".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkSupport.quietLogging();
+        String[] layouts = Configs.getString("bench.layouts", "bossWorker,reuseport").split(",");
+        int seconds = Configs.getInt("bench.seconds", 5);
+        int processorsNumber = Runtime.getRuntime().availableProcessors();
+        int clientThreads = Configs.getInt("bench.clientThreads", Math.max(4, processorsNumber * 4));
+
+        System.out.println("CPU " + processorsNumber + "，客户端线程数：" + clientThreads + "，每种布局运行 " + seconds + " 秒");
+        for (String layoutName : layouts) {
+            NettyServerLauncher.Layout layout = "reuseport".equalsIgnoreCase(layoutName.trim())
+                    ? NettyServerLauncher.Layout.REUSEPORT : NettyServerLauncher.Layout.BOSS_WORKER;
+            int threads = layout == NettyServerLauncher.Layout.REUSEPORT ? processorsNumber : processorsNumber * 2;
+            run(new NettyServerLauncher("ConnectionChurnBenchmark", layout, threads), clientThreads, seconds);
+        }
+    }
+
+    private static void run(NettyServerLauncher launcher, int clientThreads, int seconds) throws Exception {
+        ChurnServerHandler serverHandler = new ChurnServerHandler();
+        launcher.option(ChannelOption.SO_BACKLOG, 1024);
+        InetSocketAddress address = (InetSocketAddress) launcher
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), serverHandler).get(0).localAddress();
+
+        try {
+            // 预热一秒，结果丢弃
+            churn(address, clientThreads, 1, new LatencyRecorder(1024));
+            serverHandler.acceptedPerThread.clear();
+
+            LatencyRecorder latency = new LatencyRecorder(1 << 16);
+            long start = System.nanoTime();
+            long failed = churn(address, clientThreads, seconds, latency);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(String.format("[%s] connections/s=%.0f failed=%d %s",
+                    launcher.getBoundLayout(), latency.count() / elapsedSeconds, failed, latency.summary()));
+            System.out.println("    各 event loop 线程接收的连接数：" + serverHandler.distribution());
+        } finally {
+            launcher.shutdown();
+        }
+    }
+
+    /**
+     * @return 失败的连接数
+     */
+    private static long churn(final InetSocketAddress address, int clientThreads, int seconds,
+                              final LatencyRecorder latency) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final LongAdder failed = new LongAdder();
+        final CountDownLatch finished = new CountDownLatch(clientThreads);
+        List<Thread> clients = new ArrayList<>(clientThreads);
+        for (int index = 0; index < clientThreads; index++) {
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] response = new byte[256];
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            long start = System.nanoTime();
+                            try (Socket socket = new Socket()) {
+                                socket.connect(address);
+                                OutputStream out = socket.getOutputStream();
+                                out.write(REQUEST);
+                                out.flush();
+                                InputStream in = socket.getInputStream();
+                                while (in.read(response) != -1) {
+                                    // 读到服务器关闭连接为止
+                                }
+                                latency.record(System.nanoTime() - start);
+                            } catch (IOException e) {
+                                failed.increment();
+                            }
+                        }
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "churn-client-" + index);
+            client.setDaemon(true);
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.start();
+        }
+        finished.await();
+        return failed.sum();
+    }
+
+    /**
+     * 收到任何数据就返回响应并关闭连接，同时统计每个 event loop 线程接收了多少个连接
+     */
+    @ChannelHandler.Sharable
+    private static class ChurnServerHandler extends ChannelInboundHandlerAdapter {
+
+        private final ConcurrentMap<String, LongAdder> acceptedPerThread = new ConcurrentHashMap<>();
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            String threadName = Thread.currentThread().getName();
+            LongAdder accepted = this.acceptedPerThread.get(threadName);
+            if (accepted == null) {
+                this.acceptedPerThread.putIfAbsent(threadName, new LongAdder());
+                accepted = this.acceptedPerThread.get(threadName);
+            }
+            accepted.increment();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ReferenceCountUtil.release(msg);
+            ctx.writeAndFlush(Unpooled.wrappedBuffer(RESPONSE)).addListener(ChannelFutureListener.CLOSE);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            ctx.close();
+        }
+
+        String distribution() {
+            Map<String, Long> sorted = new TreeMap<>();
+            for (Map.Entry<String, LongAdder> entry : this.acceptedPerThread.entrySet()) {
+                sorted.put(entry.getKey(), entry.getValue().sum());
+            }
+            return sorted.toString();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.hong.netty;
+
+import com.hong.common.codec.DelimiterMatcher;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 把 {@link DelimiterMatcher} 包装成 Netty 的 ByteProcessor，
+ * 这样可以用 ByteBuf.forEachByte 直接在 ByteBuf 上查找结束标记，不需要先把字节复制出来或者转成 String。<br>
+ * 匹配状态保存在 matcher 中，结束标记被拆到两个 ByteBuf 中时也能识别。
+ * forEachByte 返回的是结束标记最后一个字节的下标，没有找到时返回 -1。<br>
+ * 逐个字节回调比较慢（每个字节一次虚方法调用加上 KMP 的状态转移），大块数据用 {@link #indexOf(ByteBuf)}：
+ * 没有匹配到一半时，一次读 8 个字节（SWAR）跳过所有不是结束标记第一个字节的位置，只在候选位置上逐个字节匹配。
+ */
+public class DelimiterByteProcessor implements ByteProcessor {
+
+    private final DelimiterMatcher matcher;
+
+    private static final long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * 结束标记的第一个字节
+     */
+    private final byte first;
+
+    /**
+     * 第一个字节重复 8 次，和读到的 8 个字节做异或，结果中为 0 的字节就是候选位置
+     */
+    private final long firstPattern;
+
+    public DelimiterByteProcessor(byte[] delimiter) {
+        this.matcher = new DelimiterMatcher(delimiter);
+        this.first = delimiter[0];
+        this.firstPattern = (this.first & 0xFFL) * 0x0101010101010101L;
+    }
+
+    /**
+     * 在 buffer 的可读部分中继续查找，结果和 forEachByte(this) 相同，不改变 readerIndex
+     * @return 结束标记最后一个字节的下标，没有找到时返回 -1（匹配状态保留到下一个 ByteBuf）
+     */
+    public int indexOf(ByteBuf buffer) {
+        int from = buffer.readerIndex();
+        int length = buffer.readableBytes();
+        if (length == 0) {
+            return -1;
+        }
+        if (buffer.nioBufferCount() != 1) {
+            // CompositeByteBuf 等由多段组成的缓存区，逐个字节查找
+            return buffer.forEachByte(this);
+        }
+        // 通过 NIO 视图读取：ByteBuffer 的绝对位置 get/getLong 没有 ByteBuf 每次访问时的引用计数检查
+        ByteBuffer nio = buffer.internalNioBuffer(from, length);
+        int offset = nio.position() - from;
+        int index = indexOf(nio, nio.position(), nio.limit());
+        return index == -1 ? -1 : index - offset;
+    }
+
+    private int indexOf(ByteBuffer buffer, int from, int end) {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int index = from;
+        while (index < end) {
+            if (this.matcher.getMatchedLength() == 0) {
+                // 状态为 0 时，不是结束标记第一个字节的输入不会改变状态，可以直接跳过
+                index = skipToFirst(buffer, index, end, bigEndian);
+                if (index == end) {
+                    return -1;
+                }
+            }
+            if (this.matcher.matches(buffer.get(index))) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return [from, end) 中第一个等于结束标记第一个字节的位置，没有时返回 end
+     */
+    private int skipToFirst(ByteBuffer buffer, int from, int end, boolean bigEndian) {
+        int index = from;
+        for (; index + 8 <= end; index += 8) {
+            long word = buffer.getLong(index) ^ this.firstPattern;
+            // 精确的 "找 0 字节"：值为 0 的字节对应的最高位为 1，其它字节为 0（不会因为借位误报）
+            long zeros = ~(((word & LOW_7_BITS) + LOW_7_BITS) | word | LOW_7_BITS);
+            if (zeros != 0) {
+                // 大端序时内存中的第一个字节在最高位，小端序时在最低位
+                return index + ((bigEndian ? Long.numberOfLeadingZeros(zeros) : Long.numberOfTrailingZeros(zeros)) >>> 3);
+            }
+        }
+        for (; index < end; index++) {
+            if (buffer.get(index) == this.first) {
+                return index;
+            }
+        }
+        return end;
+    }
+
+    @Override
+    public boolean process(byte value) throws Exception {
+        // 返回 false 表示停止遍历
+        return !this.matcher.matches(value);
+    }
+
+    public void reset() {
+        this.matcher.reset();
+    }
+}
@@ -0,0 +1,111 @@
+package com.hong.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * delimiter 协议（"over" 结束标记）的分帧处理器，向后传递的是一条完整信息的 ByteBuf（包含结束标记本身，和 DelimiterFrameDecoder 一致）。<br>
+ * 收到的字节不复制：结束标记用 {@link DelimiterByteProcessor#indexOf} 在收到的 ByteBuf 上直接查找（一次检查 8 个字节），
+ * 每个字节只检查一次；
+ * 一条信息被拆到多次 read 中时，每一段以 retained slice 的形式加入一个 CompositeByteBuf，
+ * 信息完整时这个 CompositeByteBuf 就是交出去的帧；整条信息都在一次 read 中时，交出去的是这次 read 的 ByteBuf 的 slice。<br>
+ * 交出去的帧由后面的处理器负责 release。连接关闭时还不完整的信息直接丢弃。
+ * 每个连接一个实例。
+ */
+public class DelimiterFrameAccumulator extends ChannelInboundHandlerAdapter {
+
+    /**
+     * CompositeByteBuf 的组件个数上限，超过时 Netty 会把已有的组件合并（复制）成一个。
+     * 只有信息被拆成非常多的小段时才会发生，这时复制的成本由很多次 read 分摊
+     */
+    private static final int MAX_COMPONENTS = 1024;
+
+    private final DelimiterByteProcessor processor;
+
+    private final int maxFrameLength;
+
+    /**
+     * 还不完整的信息，没有时为 null
+     */
+    private CompositeByteBuf cumulation;
+
+    public DelimiterFrameAccumulator(byte[] delimiter, int maxFrameLength) {
+        this.processor = new DelimiterByteProcessor(delimiter);
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        ByteBuf in = (ByteBuf) msg;
+        try {
+            while (in.isReadable()) {
+                // 返回的是结束标记最后一个字节的下标，匹配状态保存在 processor 中，跨 ByteBuf 也能识别
+                int index = this.processor.indexOf(in);
+                if (index == -1) {
+                    append(ctx, in.readRetainedSlice(in.readableBytes()));
+                    return;
+                }
+                ByteBuf frame;
+                int length = index - in.readerIndex() + 1;
+                if (this.cumulation == null) {
+                    checkFrameLength(length);
+                    frame = in.readRetainedSlice(length);
+                } else {
+                    append(ctx, in.readRetainedSlice(length));
+                    frame = this.cumulation;
+                    this.cumulation = null;
+                }
+                ctx.fireChannelRead(frame);
+            }
+        } finally {
+            in.release();
+        }
+    }
+
+    private void append(ChannelHandlerContext ctx, ByteBuf slice) throws TooLongFrameException {
+        if (this.cumulation == null) {
+            this.cumulation = ctx.alloc().compositeBuffer(MAX_COMPONENTS);
+        }
+        // 第一个参数 true：同时移动 writerIndex，组件的所有权交给 CompositeByteBuf
+        this.cumulation.addComponent(true, slice);
+        try {
+            checkFrameLength(this.cumulation.readableBytes());
+        } catch (TooLongFrameException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    private void checkFrameLength(int length) throws TooLongFrameException {
+        if (length > this.maxFrameLength) {
+            this.processor.reset();
+            throw new TooLongFrameException("超过 " + this.maxFrameLength + " 字节还没有收到结束标记");
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discard();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        discard();
+    }
+
+    private void discard() {
+        if (this.cumulation != null) {
+            ReferenceCountUtil.release(this.cumulation);
+            this.cumulation = null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.hong.netty;
+
+import com.hong.common.Configs;
+import com.hong.common.bench.BenchmarkSupport;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * 单线程比较 delimiter 协议的两种分帧写法（不经过网络，用 EmbeddedChannel 直接把 ByteBuf 交给 pipeline）：<br>
+ * 1、accumulate：{@link DelimiterFrameAccumulator}，收到的 ByteBuf 以 retained slice 的形式组成帧，不复制；<br>
+ * 2、copy：原来 TCPServerHandler 的写法，每次 read 的字节追加（复制）到一个累积缓存中，帧完整时再复制出来。<br>
+ * 每次 "read" 是同一块 direct 缓存区的 retainedDuplicate，里面有若干条信息，最后一条被拆到下一次 read 中。
+ * 输出每秒处理的字节数和帧数。<br>
+ * 参数：-Dbench.frameSize（每条信息的字节数，包含结束标记，默认 1024）、-Dbench.readSize（每次 read 的字节数，默认 65536）、
+ * -Dbench.seconds（默认 5）、-Dbench.modes（默认 accumulate,copy）。
+ */
+public class FrameAccumulationBenchmark {
+
+    private static final byte[] DELIMITER = "over".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkSupport.quietLogging();
+        int frameSize = Configs.getInt("bench.frameSize", 1024);
+        int readSize = Configs.getInt("bench.readSize", 65536);
+        int seconds = Configs.getInt("bench.seconds", 5);
+        String[] modes = Configs.getString("bench.modes", "accumulate,copy").split(",");
+
+        // 内容是重复的 "信息 + 结束标记"，长度不是 frameSize 的整数倍，所以每次 read 的最后一条信息会和下一次 read 的第一条拼在一起
+        int length = readSize % frameSize == 0 ? readSize - frameSize / 2 : readSize;
+        ByteBuf source = PooledByteBufAllocator.DEFAULT.directBuffer(length);
+        for (int index = 0; index < length; index++) {
+            int offset = index % frameSize;
+            int delimiterStart = frameSize - DELIMITER.length;
+            source.writeByte(offset >= delimiterStart ? DELIMITER[offset - delimiterStart] : 'a' + offset % 26);
+        }
+
+        System.out.println("frameSize=" + frameSize + " readSize=" + readSize + "，每种写法运行 " + seconds + " 秒");
+        for (String mode : modes) {
+            boolean copy = "copy".equalsIgnoreCase(mode.trim());
+            // 预热一秒，结果丢弃
+            run(source, copy, 1);
+            run(source, copy, seconds);
+        }
+        source.release();
+    }
+
+    private static void run(ByteBuf source, boolean copy, int seconds) {
+        FrameSink sink = new FrameSink();
+        EmbeddedChannel channel = new EmbeddedChannel(
+                copy ? new CopyingAccumulator(DELIMITER) : new DelimiterFrameAccumulator(DELIMITER, Integer.MAX_VALUE), sink);
+        long bytes = 0;
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        long start = System.nanoTime();
+        while (System.nanoTime() < deadline) {
+            for (int batch = 0; batch < 64; batch++) {
+                channel.writeInbound(source.retainedDuplicate());
+                bytes += source.readableBytes();
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        channel.finishAndReleaseAll();
+        if (seconds > 1) {
+            System.out.println(String.format("[%s] %.2f GB/s，%.0f 帧/s", copy ? "copy" : "accumulate",
+                    bytes / elapsedSeconds / 1e9, sink.frames / elapsedSeconds));
+        }
+    }
+
+    /**
+     * 统计收到的帧并释放
+     */
+    private static class FrameSink extends ChannelInboundHandlerAdapter {
+
+        private long frames;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            this.frames++;
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    /**
+     * 原来的写法：字节复制到累积缓存中，找到结束标记之后把整条信息复制出来
+     */
+    private static class CopyingAccumulator extends ChannelInboundHandlerAdapter {
+
+        private final DelimiterByteProcessor processor;
+
+        private ByteBuf bytes;
+
+        CopyingAccumulator(byte[] delimiter) {
+            this.processor = new DelimiterByteProcessor(delimiter);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ByteBuf in = (ByteBuf) msg;
+            try {
+                if (this.bytes == null) {
+                    this.bytes = ctx.alloc().heapBuffer(1024);
+                }
+                while (in.isReadable()) {
+                    int index = in.forEachByte(this.processor);
+                    if (index == -1) {
+                        this.bytes.writeBytes(in);
+                        return;
+                    }
+                    this.bytes.writeBytes(in, index - in.readerIndex() + 1);
+                    ctx.fireChannelRead(this.bytes.copy());
+                    this.bytes.clear();
+                }
+            } finally {
+                in.release();
+            }
+        }
+
+        @Override
+        public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+            if (this.bytes != null) {
+                this.bytes.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.hong.netty;
+
+import com.hong.common.admission.AdmissionController;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.unix.UnixChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 放在监听通道（server channel）的 pipeline 上的准入控制：监听通道 "读" 到的每一条消息就是一个新接收的连接。<br>
+ * 不能再接收连接时关闭监听通道的 autoRead，Netty 就不再 accept，连接留在内核的 backlog 队列中，
+ * 过一段时间（见 {@link AdmissionController#getPauseMillis}）重新打开 autoRead。<br>
+ * Netty 一次读事件会连续 accept 多个连接，所以每放行一个连接都提前检查下一个能不能接收，接收不了就马上暂停；
+ * 即便如此，同一批里已经 accept 的连接还是可能超出限制，这些连接直接关闭。
+ * 每个监听通道一个实例，只在监听通道的 event loop 线程中调用。
+ */
+class NettyAdmissionHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyAdmissionHandler.class);
+
+    private final String name;
+
+    private final AdmissionController admission;
+
+    private final ChannelFutureListener closeListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            admission.connectionClosed();
+        }
+    };
+
+    /**
+     * 上次暂停的原因，只在原因变化时打印日志
+     */
+    private AdmissionController.RejectReason pauseReason;
+
+    NettyAdmissionHandler(String name, AdmissionController admission) {
+        this.name = name;
+        this.admission = admission;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        Channel child = (Channel) msg;
+        AdmissionController.RejectReason reason = this.admission.tryAdmit();
+        if (reason != null) {
+            closeUnregistered(child);
+            pause(ctx, reason);
+            return;
+        }
+        if (this.pauseReason != null && this.pauseReason != AdmissionController.RejectReason.RATE_LIMITED) {
+            logger.info(this.name + " 恢复 accept");
+            this.pauseReason = null;
+        }
+        child.closeFuture().addListener(this.closeListener);
+        ctx.fireChannelRead(child);
+
+        AdmissionController.RejectReason nextReason = this.admission.check();
+        if (nextReason != null) {
+            pause(ctx, nextReason);
+        }
+    }
+
+    /**
+     * 关闭还没有注册到 event loop 的连接。netty 4.1.3 的 epoll 通道在注册之前 closeForcibly
+     * 会在 deregister 时抛出异常（文件描述符最后还是会关闭，但每次都打印一个 WARN），所以直接关闭文件描述符
+     */
+    private void closeUnregistered(Channel child) {
+        if (child instanceof UnixChannel) {
+            try {
+                ((UnixChannel) child).fd().close();
+            } catch (IOException e) {
+                logger.warn(this.name + " 关闭被拒绝的连接失败 : " + e.getMessage(), e);
+            }
+        } else {
+            child.unsafe().closeForcibly();
+        }
+    }
+
+    private void pause(final ChannelHandlerContext ctx, AdmissionController.RejectReason reason) {
+        final Channel serverChannel = ctx.channel();
+        if (!serverChannel.config().isAutoRead()) {
+            return;
+        }
+        long pauseMillis = this.admission.getPauseMillis(reason);
+        if (reason != this.pauseReason) {
+            this.pauseReason = reason;
+            logger.warn(this.name + " 暂停 accept（" + reason + "），" + pauseMillis + "ms 后重新检查");
+        }
+        serverChannel.config().setAutoRead(false);
+        serverChannel.eventLoop().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (serverChannel.isOpen()) {
+                    serverChannel.config().setAutoRead(true);
+                }
+            }
+        }, pauseMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,55 @@
+package com.hong.netty;
+
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把通用的增量解码器 {@link FrameDecoder} 接入 Netty 的 pipeline，向后传递的是 {@link Frame} 对象。<br>
+ * 解码器自己保存不完整的帧，所以每次都把 ByteBuf 中的字节全部交给它（通过 nioBuffers 直接访问，不复制），
+ * ByteToMessageDecoder 的累积缓存始终是空的。
+ */
+public class NettyFrameDecoder extends ByteToMessageDecoder {
+
+    private final FrameDecoder decoder;
+
+    private final List<Frame> frames = new ArrayList<>();
+
+    public NettyFrameDecoder(FrameDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        int readable = in.readableBytes();
+        if (readable == 0) {
+            return;
+        }
+        if (in.nioBufferCount() > 0) {
+            for (ByteBuffer nioBuffer : in.nioBuffers(in.readerIndex(), readable)) {
+                this.decoder.decode(nioBuffer, this.frames);
+            }
+        } else {
+            byte[] bytes = new byte[readable];
+            in.getBytes(in.readerIndex(), bytes);
+            this.decoder.decode(bytes, 0, readable, this.frames);
+        }
+        in.skipBytes(readable);
+        out.addAll(this.frames);
+        this.frames.clear();
+    }
+
+    @Override
+    protected void decodeLast(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        decode(ctx, in, out);
+        this.decoder.decodeLast(this.frames);
+        out.addAll(this.frames);
+        this.frames.clear();
+    }
+}
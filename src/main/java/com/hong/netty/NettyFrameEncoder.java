@@ -0,0 +1,24 @@
+package com.hong.netty;
+
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * 把 {@link Frame} 按照指定的分帧协议编码后写出
+ */
+public class NettyFrameEncoder extends MessageToByteEncoder<Frame> {
+
+    private final FrameCodec codec;
+
+    public NettyFrameEncoder(FrameCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Frame frame, ByteBuf out) throws Exception {
+        out.writeBytes(this.codec.encode(frame));
+    }
+}
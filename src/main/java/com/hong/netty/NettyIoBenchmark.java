@@ -0,0 +1,223 @@
+package com.hong.netty;
+
+import com.hong.common.Configs;
+import com.hong.common.bench.BenchmarkSupport;
+import com.hong.common.bench.LatencyRecorder;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameDecoder;
+import com.hong.common.codec.LengthFieldFrameCodec;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.bytes.ByteArrayEncoder;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在回环地址上比较 Netty 的两种 IO 实现（见 {@link NettyServerLauncher.IoMode}）：JDK NIO 与 Linux epoll native 传输。<br>
+ * 服务器使用和 TestTCPNetty（长度前缀的二进制帧）、TestHTTPNetty 相同的 pipeline；
+ * 每个客户端线程保持一个长连接，不断地发送一条请求、等待响应，输出每秒完成的请求数和单个请求的延迟分位。<br>
+ * 参数：-Dbench.ios（默认 nio,epoll）、-Dbench.protocols（默认 tcp,http）、-Dbench.seconds（默认 5）、
+ * -Dbench.connections（默认 CPU 个数 * 4，至少 4）；epoll 相关的参数见 NettyServerLauncher（-Dnetty.epoll.*）。
+ * 在 JDK 9 以上运行时要加上 --add-opens java.base/java.nio=ALL-UNNAMED，否则 epoll 会退回 NIO。
+ */
+public class NettyIoBenchmark {
+
+    private static final FrameCodec TCP_CODEC = new LengthFieldFrameCodec(64 * 1024);
+
+    private static final byte[] TCP_REQUEST = "NettyIoBenchmark request".getBytes();
+
+    private static final byte[] HTTP_REQUEST = ("GET /bench HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes();
+
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkSupport.quietLogging();
+        String[] ios = Configs.getString("bench.ios", "nio,epoll").split(",");
+        String[] protocols = Configs.getString("bench.protocols", "tcp,http").split(",");
+        int seconds = Configs.getInt("bench.seconds", 5);
+        int processorsNumber = Runtime.getRuntime().availableProcessors();
+        int connections = Configs.getInt("bench.connections", Math.max(4, processorsNumber * 4));
+
+        System.out.println("CPU " + processorsNumber + "，连接数：" + connections + "，每种组合运行 " + seconds + " 秒");
+        for (String protocol : protocols) {
+            boolean http = "http".equalsIgnoreCase(protocol.trim());
+            for (String ioName : ios) {
+                NettyServerLauncher.IoMode io = "epoll".equalsIgnoreCase(ioName.trim())
+                        ? NettyServerLauncher.IoMode.EPOLL : NettyServerLauncher.IoMode.NIO;
+                NettyServerLauncher launcher = new NettyServerLauncher("NettyIoBenchmark",
+                        NettyServerLauncher.Layout.BOSS_WORKER, processorsNumber * 2)
+                        .io(io)
+                        .epollOptions(Configs.getBoolean("netty.epoll.quickAck", true), Configs.getBoolean("netty.epoll.cork", false),
+                                Configs.getInt("netty.epoll.maxEventsAtOnce", 0));
+                run(launcher, http, connections, seconds);
+            }
+        }
+    }
+
+    private static void run(NettyServerLauncher launcher, final boolean http, int connections, int seconds) throws Exception {
+        ChannelInitializer<SocketChannel> childHandler = new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) throws Exception {
+                if (http) {
+                    ch.pipeline().addLast(new HttpResponseEncoder());
+                    ch.pipeline().addLast(new HttpRequestDecoder());
+                    ch.pipeline().addLast(new HTTPServerHandler());
+                } else {
+                    ch.pipeline().addLast(new NettyFrameDecoder(TCP_CODEC.newDecoder()));
+                    ch.pipeline().addLast(new NettyFrameEncoder(TCP_CODEC));
+                    ch.pipeline().addLast(new ByteArrayEncoder());
+                    ch.pipeline().addLast(new TCPServerHandler());
+                }
+            }
+        };
+        InetSocketAddress address = (InetSocketAddress) launcher
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), childHandler).get(0).localAddress();
+
+        try {
+            // 预热一秒，结果丢弃
+            requests(address, http, connections, 1, new LatencyRecorder(1024));
+
+            LatencyRecorder latency = new LatencyRecorder(1 << 18);
+            long start = System.nanoTime();
+            long failed = requests(address, http, connections, seconds, latency);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(String.format("[%s/%s] requests/s=%.0f failed=%d %s", http ? "HTTP" : "TCP",
+                    launcher.getBoundIo(), latency.count() / elapsedSeconds, failed, latency.summary()));
+        } finally {
+            launcher.shutdown();
+        }
+    }
+
+    /**
+     * @return 失败的连接数
+     */
+    private static long requests(final InetSocketAddress address, final boolean http, int connections, int seconds,
+                                 final LatencyRecorder latency) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final LongAdder failed = new LongAdder();
+        final CountDownLatch finished = new CountDownLatch(connections);
+        List<Thread> clients = new ArrayList<>(connections);
+        for (int index = 0; index < connections; index++) {
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (Socket socket = new Socket()) {
+                        socket.setTcpNoDelay(true);
+                        socket.connect(address);
+                        OutputStream out = socket.getOutputStream();
+                        InputStream in = socket.getInputStream();
+                        byte[] request = http ? HTTP_REQUEST : encode(TCP_REQUEST);
+                        FrameDecoder decoder = TCP_CODEC.newDecoder();
+                        byte[] buffer = new byte[4096];
+                        List<Frame> frames = new ArrayList<>(1);
+                        while (System.nanoTime() < deadline) {
+                            long start = System.nanoTime();
+                            out.write(request);
+                            out.flush();
+                            if (http) {
+                                readHttpResponse(in, buffer);
+                            } else {
+                                readFrame(in, buffer, decoder, frames);
+                            }
+                            latency.record(System.nanoTime() - start);
+                        }
+                    } catch (IOException e) {
+                        failed.increment();
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "io-bench-client-" + index);
+            client.setDaemon(true);
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.start();
+        }
+        finished.await();
+        return failed.sum();
+    }
+
+    private static byte[] encode(byte[] payload) {
+        ByteBuffer encoded = TCP_CODEC.encode(new Frame(Frame.TYPE_DATA, payload));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    private static void readFrame(InputStream in, byte[] buffer, FrameDecoder decoder, List<Frame> frames) throws IOException {
+        frames.clear();
+        while (frames.isEmpty()) {
+            int length = in.read(buffer);
+            if (length == -1) {
+                throw new EOFException("服务器关闭了连接");
+            }
+            decoder.decode(buffer, 0, length, frames);
+        }
+    }
+
+    /**
+     * 读取一个响应：先读到头部结束（空行），再按照 Content-Length 读完响应体
+     */
+    private static void readHttpResponse(InputStream in, byte[] buffer) throws IOException {
+        int size = 0;
+        int headerEnd = -1;
+        while (headerEnd == -1) {
+            int length = in.read(buffer, size, buffer.length - size);
+            if (length == -1) {
+                throw new EOFException("服务器关闭了连接");
+            }
+            size += length;
+            headerEnd = indexOf(buffer, size, HEADER_END);
+        }
+        int bodyStart = headerEnd + HEADER_END.length;
+        int contentLength = contentLength(new String(buffer, 0, headerEnd, "ISO-8859-1"));
+        int remaining = contentLength - (size - bodyStart);
+        while (remaining > 0) {
+            int length = in.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (length == -1) {
+                throw new EOFException("服务器关闭了连接");
+            }
+            remaining -= length;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int size, byte[] target) {
+        for (int index = 0; index + target.length <= size; index++) {
+            int matched = 0;
+            while (matched < target.length && bytes[index + matched] == target[matched]) {
+                matched++;
+            }
+            if (matched == target.length) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static int contentLength(String headers) throws IOException {
+        for (String line : headers.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && "content-length".equalsIgnoreCase(line.substring(0, colon).trim())) {
+                return Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        throw new IOException("响应中没有 Content-Length");
+    }
+}
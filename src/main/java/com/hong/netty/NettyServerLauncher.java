@@ -0,0 +1,341 @@
+package com.hong.netty;
+
+import com.hong.common.Configs;
+import com.hong.common.admission.AdmissionController;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 按照不同的线程布局启动 Netty 服务器，TestTCPNetty、TestHTTPNetty 共用：<br>
+ * 1、BOSS_WORKER（默认）：原来的布局，一个 boss 线程负责 accept，再把连接交给 CPU 个数 * 2 个 work 线程。
+ * 连接频繁建立/断开时，唯一的 boss 线程会成为瓶颈，而且连接总是从 boss 所在的核心交接到另一个核心；<br>
+ * 2、REUSEPORT：每个核心一个完全独立的监听者（shared-nothing / thread-per-core）。
+ * 通过 SO_REUSEPORT 在同一个端口上绑定 N 个监听 socket，每个监听 socket 有自己的 event loop，
+ * accept 和之后的读写都在这一个线程中完成。由内核在 N 个监听 socket 之间分配新连接，连接不会跨核心交接。
+ * 这个模式需要 Linux 的 epoll 传输（netty-all 中已经带有 native 库），不可用时退回 BOSS_WORKER。
+ * 在 JDK 9 以上运行时，netty 4.1.3 需要 --add-opens java.base/java.nio=ALL-UNNAMED 才能启用 epoll。<br>
+ * 两种布局下都可以在 accept 时做准入控制（见 {@link AdmissionController}），不能接收时关闭监听通道的 autoRead，之后自动恢复。<br>
+ * IO 实现（{@link IoMode}）：默认 AUTO，Linux 的 epoll native 库能加载时使用 epoll 传输，否则使用 JDK 的 NIO。
+ * epoll 传输直接调用 epoll_wait，一次 JNI 调用把就绪事件批量读到 native 数组中，没有 Selector 的 selectedKeys 集合，
+ * 唤醒用 eventfd 而不是管道；连接和监听通道使用边缘触发（EPOLLET），同一批数据只通知一次，不需要反复修改关注的事件
+ * （打开准入控制时监听通道改用水平触发，见 configure）。
+ * epoll 模式下连接默认打开 TCP_QUICKACK（请求/响应式的协议不需要延迟确认），TCP_CORK 默认关闭：
+ * Netty 在 flush 时已经用 writev 把多个缓存区一次写出，只有处理器分多次 flush 一个响应时才需要它。<br>
+ * 参数：-Dnetty.layout=bossWorker|reuseport，-Dnetty.reuseport.listeners（默认 CPU 个数），
+ * -Dnetty.io=auto|epoll|nio，-Dnetty.epoll.quickAck（默认 true），-Dnetty.epoll.cork（默认 false），
+ * -Dnetty.epoll.maxEventsAtOnce（一次 epoll_wait 最多取多少个事件，默认 0，表示由 Netty 决定并按需增长）。
+ * 如果还要把线程绑定到核心上，可以在启动时配合 taskset 使用。
+ */
+public class NettyServerLauncher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyServerLauncher.class);
+
+    public enum Layout {
+        BOSS_WORKER,
+        REUSEPORT
+    }
+
+    public enum IoMode {
+        /**
+         * epoll 可用时使用 epoll，否则使用 NIO
+         */
+        AUTO,
+        NIO,
+        EPOLL
+    }
+
+    private final String name;
+
+    private final Layout layout;
+
+    /**
+     * REUSEPORT：监听者（也就是 event loop 线程）的个数；BOSS_WORKER：work 线程个数
+     */
+    private final int threads;
+
+    private final Map<ChannelOption<?>, Object> options = new LinkedHashMap<>();
+
+    private final Map<ChannelOption<?>, Object> childOptions = new LinkedHashMap<>();
+
+    private final List<EventLoopGroup> groups = new ArrayList<>();
+
+    private AdmissionController admission;
+
+    private IoMode io = IoMode.AUTO;
+
+    private boolean tcpQuickAck = true;
+
+    private boolean tcpCork;
+
+    private int epollMaxEventsAtOnce;
+
+    /**
+     * 实际使用的布局（REUSEPORT 不可用时会退回 BOSS_WORKER）
+     */
+    private volatile Layout boundLayout;
+
+    /**
+     * 实际使用的 IO 实现（NIO 或 EPOLL）
+     */
+    private volatile IoMode boundIo;
+
+    public NettyServerLauncher(String name, Layout layout, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("线程数不正确 : " + threads);
+        }
+        this.name = name;
+        this.layout = layout;
+        this.threads = threads;
+    }
+
+    public static NettyServerLauncher fromConfig(String name) {
+        int processorsNumber = Runtime.getRuntime().availableProcessors();
+        String layoutName = Configs.getString("netty.layout", "bossWorker");
+        NettyServerLauncher launcher;
+        if ("reuseport".equalsIgnoreCase(layoutName)) {
+            launcher = new NettyServerLauncher(name, Layout.REUSEPORT, Configs.getInt("netty.reuseport.listeners", processorsNumber));
+        } else if ("bossWorker".equalsIgnoreCase(layoutName)) {
+            launcher = new NettyServerLauncher(name, Layout.BOSS_WORKER, processorsNumber * 2);
+        } else {
+            throw new IllegalArgumentException("不支持的 netty.layout : " + layoutName);
+        }
+        String ioName = Configs.getString("netty.io", "auto");
+        IoMode io;
+        if ("auto".equalsIgnoreCase(ioName)) {
+            io = IoMode.AUTO;
+        } else if ("epoll".equalsIgnoreCase(ioName)) {
+            io = IoMode.EPOLL;
+        } else if ("nio".equalsIgnoreCase(ioName)) {
+            io = IoMode.NIO;
+        } else {
+            throw new IllegalArgumentException("不支持的 netty.io : " + ioName);
+        }
+        return launcher.admission(AdmissionController.fromConfig(name))
+                .io(io)
+                .epollOptions(Configs.getBoolean("netty.epoll.quickAck", true), Configs.getBoolean("netty.epoll.cork", false),
+                        Configs.getInt("netty.epoll.maxEventsAtOnce", 0));
+    }
+
+    /**
+     * 设置准入控制，在 bind 之前调用；null 表示不限制
+     */
+    public NettyServerLauncher admission(AdmissionController admission) {
+        this.admission = admission;
+        return this;
+    }
+
+    /**
+     * 设置 IO 实现，在 bind 之前调用；EPOLL 不可用时退回 NIO
+     */
+    public NettyServerLauncher io(IoMode io) {
+        this.io = io;
+        return this;
+    }
+
+    /**
+     * 只在使用 epoll 时生效的参数，在 bind 之前调用
+     * @param maxEventsAtOnce 一次 epoll_wait 最多取多少个事件，0 表示由 Netty 决定
+     */
+    public NettyServerLauncher epollOptions(boolean tcpQuickAck, boolean tcpCork, int maxEventsAtOnce) {
+        if (maxEventsAtOnce < 0) {
+            throw new IllegalArgumentException("maxEventsAtOnce 不正确 : " + maxEventsAtOnce);
+        }
+        this.tcpQuickAck = tcpQuickAck;
+        this.tcpCork = tcpCork;
+        this.epollMaxEventsAtOnce = maxEventsAtOnce;
+        return this;
+    }
+
+    public <T> NettyServerLauncher option(ChannelOption<T> option, T value) {
+        this.options.put(option, value);
+        return this;
+    }
+
+    public <T> NettyServerLauncher childOption(ChannelOption<T> option, T value) {
+        this.childOptions.put(option, value);
+        return this;
+    }
+
+    /**
+     * 绑定端口并开始服务
+     * @param childHandler 连接的处理器，一般是 ChannelInitializer&lt;SocketChannel&gt;（两种布局下连接的类型不同）
+     * @return 所有的监听通道，BOSS_WORKER 只有一个
+     */
+    public List<Channel> bind(InetSocketAddress address, ChannelHandler childHandler) throws InterruptedException {
+        boolean epoll = useEpoll();
+        this.boundIo = epoll ? IoMode.EPOLL : IoMode.NIO;
+        if (this.layout == Layout.REUSEPORT) {
+            if (epoll) {
+                this.boundLayout = Layout.REUSEPORT;
+                return bindReusePort(address, childHandler);
+            }
+            logger.warn(this.name + " SO_REUSEPORT 模式需要 epoll 传输，退回 boss/worker 模式");
+        }
+        this.boundLayout = Layout.BOSS_WORKER;
+        return bindBossWorker(address, childHandler, epoll);
+    }
+
+    /**
+     * @return 是否使用 epoll 传输：AUTO、EPOLL 在 native 库能加载时使用，否则退回 NIO
+     */
+    private boolean useEpoll() {
+        if (this.io == IoMode.NIO) {
+            return false;
+        }
+        if (Epoll.isAvailable()) {
+            return true;
+        }
+        String message = this.name + " 当前平台不支持 epoll（" + Epoll.unavailabilityCause() + "），使用 NIO 传输"
+                + "（JDK 9 以上需要 --add-opens java.base/java.nio=ALL-UNNAMED）";
+        if (this.io == IoMode.EPOLL || this.layout == Layout.REUSEPORT) {
+            logger.warn(message);
+        } else {
+            logger.info(message);
+        }
+        return false;
+    }
+
+    private List<Channel> bindBossWorker(InetSocketAddress address, ChannelHandler childHandler, boolean epoll) throws InterruptedException {
+        // BOSS线程池
+        EventLoopGroup bossLoopGroup;
+        // WORK 线程池 ： 这样的申明方式，主要是为了说明 Netty 的线程组是怎样工作的
+        ThreadFactory threadFactory = new DefaultThreadFactory("work thread pool");
+        EventLoopGroup workLoopGroup;
+        if (epoll) {
+            bossLoopGroup = newEpollEventLoopGroup(1, new DefaultThreadFactory(this.name + "-boss"));
+            workLoopGroup = newEpollEventLoopGroup(this.threads, threadFactory);
+        } else {
+            bossLoopGroup = new NioEventLoopGroup(1);
+            workLoopGroup = new NioEventLoopGroup(this.threads, threadFactory, SelectorProvider.provider());
+        }
+        this.groups.add(bossLoopGroup);
+        this.groups.add(workLoopGroup);
+
+        ServerBootstrap serverBootstrap = new ServerBootstrap();
+        serverBootstrap.group(bossLoopGroup, workLoopGroup);
+        serverBootstrap.channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class);
+        serverBootstrap.childHandler(childHandler);
+        configure(serverBootstrap, epoll);
+        Channel channel = serverBootstrap.bind(address).sync().channel();
+        logger.info(this.name + " 以 boss/worker 模式启动，IO 实现：" + this.boundIo + "，work 线程数：" + this.threads
+                + "，地址：" + channel.localAddress());
+
+        List<Channel> channels = new ArrayList<>(1);
+        channels.add(channel);
+        return channels;
+    }
+
+    private List<Channel> bindReusePort(InetSocketAddress address, ChannelHandler childHandler) throws InterruptedException {
+        List<Channel> channels = new ArrayList<>(this.threads);
+        InetSocketAddress bindAddress = address;
+        for (int index = 0; index < this.threads; index++) {
+            // 每个监听者只有一个 event loop 线程：accept 和这个监听者接收的所有连接的读写都在这个线程中
+            EventLoopGroup loopGroup = newEpollEventLoopGroup(1, new DefaultThreadFactory(this.name + "-reuseport-" + index));
+            this.groups.add(loopGroup);
+
+            ServerBootstrap serverBootstrap = new ServerBootstrap();
+            serverBootstrap.group(loopGroup);
+            serverBootstrap.channel(EpollServerSocketChannel.class);
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            serverBootstrap.childHandler(childHandler);
+            configure(serverBootstrap, true);
+            Channel channel = serverBootstrap.bind(bindAddress).sync().channel();
+            channels.add(channel);
+            // 绑定随机端口（0）时，后面的监听者要绑定到第一个监听者实际得到的端口上
+            if (bindAddress.getPort() == 0) {
+                bindAddress = new InetSocketAddress(address.getAddress(), ((InetSocketAddress) channel.localAddress()).getPort());
+            }
+        }
+        logger.info(this.name + " 以 SO_REUSEPORT 模式启动，监听者个数：" + this.threads + "，地址：" + bindAddress);
+        return channels;
+    }
+
+    /**
+     * netty 4.1.3 中指定 maxEventsAtOnce 的构造方法已经废弃，但没有可以替代的写法（之后的版本由 Netty 自己按需增长），
+     * 所以只在设置了 -Dnetty.epoll.maxEventsAtOnce 时才使用它
+     */
+    @SuppressWarnings("deprecation")
+    private EventLoopGroup newEpollEventLoopGroup(int threads, ThreadFactory threadFactory) {
+        if (this.epollMaxEventsAtOnce > 0) {
+            return new EpollEventLoopGroup(threads, threadFactory, this.epollMaxEventsAtOnce);
+        }
+        return new EpollEventLoopGroup(threads, threadFactory);
+    }
+
+    /**
+     * deprecation：netty 4.1.3 中 MAX_MESSAGES_PER_READ 已经废弃，但仍然是设置监听通道每次读事件 accept 个数最直接的方式
+     */
+    @SuppressWarnings({"unchecked", "deprecation"})
+    private void configure(ServerBootstrap serverBootstrap, boolean epoll) {
+        if (epoll) {
+            // 连接使用边缘触发。准入控制默认关闭（没有设置任何 -Dadmission.* 阈值），这时监听通道也使用边缘触发；
+            // 打开准入控制时监听通道保持水平触发：暂停期间留在 backlog 中的连接，恢复 autoRead 之后要靠水平触发再次通知
+            serverBootstrap.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+            serverBootstrap.option(EpollChannelOption.EPOLL_MODE,
+                    this.admission == null ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED);
+            if (this.tcpQuickAck) {
+                serverBootstrap.childOption(EpollChannelOption.TCP_QUICKACK, true);
+            }
+            if (this.tcpCork) {
+                serverBootstrap.childOption(EpollChannelOption.TCP_CORK, true);
+            }
+        }
+        if (this.admission != null) {
+            // 每个监听通道一个实例（REUSEPORT 布局下有多个监听通道）
+            serverBootstrap.handler(new NettyAdmissionHandler(this.name, this.admission));
+            // 监听通道一次读事件默认连续 accept 16 个连接，准入控制来不及暂停；改成一次只 accept 一个
+            serverBootstrap.option(ChannelOption.MAX_MESSAGES_PER_READ, 1);
+        }
+        for (Map.Entry<ChannelOption<?>, Object> entry : this.options.entrySet()) {
+            serverBootstrap.option((ChannelOption<Object>) entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<ChannelOption<?>, Object> entry : this.childOptions.entrySet()) {
+            serverBootstrap.childOption((ChannelOption<Object>) entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return 实际使用的布局，bind 之前返回 null
+     */
+    public Layout getBoundLayout() {
+        return this.boundLayout;
+    }
+
+    /**
+     * @return 实际使用的 IO 实现（NIO 或 EPOLL），bind 之前返回 null
+     */
+    public IoMode getBoundIo() {
+        return this.boundIo;
+    }
+
+    public void shutdown() {
+        for (EventLoopGroup group : this.groups) {
+            group.shutdownGracefully();
+        }
+        this.groups.clear();
+        if (this.admission != null) {
+            this.admission.unregisterMBean();
+        }
+    }
+}
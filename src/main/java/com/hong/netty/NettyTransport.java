@@ -0,0 +1,124 @@
+package com.hong.netty;
+
+import com.hong.common.codec.Frame;
+import com.hong.common.transport.MessageContext;
+import com.hong.common.transport.MessageHandler;
+import com.hong.common.transport.Transport;
+import com.hong.common.transport.TransportConfig;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Netty 的传输层（-Dtransport=netty）：线程布局由 {@link NettyServerLauncher} 按照 -Dnetty.layout 决定，
+ * 分帧使用 {@link NettyFrameDecoder} / {@link NettyFrameEncoder}，处理器在连接所属的 event loop 线程中调用
+ * （处理器会阻塞时，同一个 event loop 上的其它连接也要等待）。
+ */
+public class NettyTransport implements Transport {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyTransport.class);
+
+    private NettyServerLauncher launcher;
+
+    private List<Channel> channels;
+
+    @Override
+    public String name() {
+        return "netty";
+    }
+
+    @Override
+    public InetSocketAddress start(final TransportConfig config, final MessageHandler handler) throws IOException {
+        if (this.launcher != null) {
+            throw new IllegalStateException("NettyTransport 已经启动");
+        }
+        this.launcher = NettyServerLauncher.fromConfig("NettyTransport");
+        this.launcher.option(ChannelOption.SO_BACKLOG, 128);
+        ChannelInitializer<SocketChannel> childHandler = new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) throws Exception {
+                ch.pipeline().addLast(new NettyFrameDecoder(config.getCodec().newDecoder()));
+                ch.pipeline().addLast(new NettyFrameEncoder(config.getCodec()));
+                ch.pipeline().addLast(new TransportChannelHandler(config, handler, new MessageContext("netty", ch.remoteAddress())));
+            }
+        };
+        try {
+            this.channels = this.launcher.bind(config.getAddress(), childHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("NettyTransport 绑定地址时被中断");
+        }
+        return (InetSocketAddress) this.channels.get(0).localAddress();
+    }
+
+    @Override
+    public void stop() {
+        if (this.channels != null) {
+            for (Channel channel : this.channels) {
+                channel.close();
+            }
+        }
+        if (this.launcher != null) {
+            this.launcher.shutdown();
+        }
+    }
+
+    /**
+     * 每个连接一个实例：把解码后的 {@link Frame} 交给处理器，响应由 NettyFrameEncoder 编码后写回
+     */
+    private static class TransportChannelHandler extends SimpleChannelInboundHandler<Frame> {
+
+        private final TransportConfig config;
+
+        private final MessageHandler handler;
+
+        private final MessageContext context;
+
+        private boolean finished;
+
+        TransportChannelHandler(TransportConfig config, MessageHandler handler, MessageContext context) {
+            this.config = config;
+            this.handler = handler;
+            this.context = context;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Frame frame) throws Exception {
+            if (this.finished) {
+                // 已经处理完一条信息、等待关闭的连接，后面的信息不再处理
+                return;
+            }
+            Frame response = this.handler.handle(this.context, frame);
+            if (!this.config.isCloseAfterReply()) {
+                if (response != null) {
+                    ctx.writeAndFlush(response);
+                }
+                return;
+            }
+            this.finished = true;
+            if (response == null) {
+                ctx.close();
+            } else {
+                // 响应写完之后再关闭连接
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            logger.error("端口：" + this.context.getRemotePort() + "的连接处理失败 : " + cause.getMessage(), cause);
+            ctx.close();
+        }
+    }
+}
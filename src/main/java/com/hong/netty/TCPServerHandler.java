@@ -0,0 +1,201 @@
+package com.hong.netty;
+
+import com.hong.common.codec.Frame;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+
+/**
+ * TestTCPNetty 的业务处理器，NettyIoBenchmark 也使用它
+ */
+class TCPServerHandler extends ChannelInboundHandlerAdapter {
+
+    private static Logger logger = LoggerFactory.getLogger(TCPServerHandler.class);
+
+    /**
+     * 连接只处理一条信息，回复之后关闭；同一次 read 中后面的信息（如果有的话）不再处理
+     */
+    private boolean replied;
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireChannelRegistered()} to forward
+     * to the next {@link ChannelInboundHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     */
+    @Override
+    public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+        logger.info("super.channelRegistered(ctx)");
+    }
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireChannelUnregistered()} to forward
+     * to the next {@link ChannelInboundHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     */
+    @Override
+    public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
+        logger.info("super.channelUnregistered((ctx)");
+    }
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireChannelActive()} to forward
+     * to the next {@link ChannelInboundHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     */
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        logger.info("super.channelActive((ctx)");
+    }
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireChannelInactive()} to forward
+     * to the next {@link ChannelInboundHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        logger.info("super.channelInactive((ctx)");
+    }
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireChannelRead(Object)} to forward
+     * to the next {@link ChannelInboundHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     * @param msg
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        logger.info("channelRead(ChannelHandlerContext ctx, Object msg)");
+        /**
+         * 使用长度前缀的二进制帧时，前面的 NettyFrameDecoder 已经完成了分帧，
+         * 这里收到的就是一条完整的信息，可以直接处理并返回响应（连接保持打开，可以继续发送下一帧）
+         */
+        if (msg instanceof Frame) {
+            Frame frame = (Frame) msg;
+            logger.info("收到完整的帧 : " + frame.getPayloadAsString(Charset.forName("UTF-8")));
+            ctx.writeAndFlush(new Frame(Frame.TYPE_DATA, "回发响应信息！".getBytes()));
+            return;
+        }
+
+        /**
+         * 使用 "over" 结束标记时，前面的 DelimiterFrameAccumulator 已经完成了分帧（数据缓慢提交、被拆到多次 read 中也没有关系），
+         * 这里收到的是一条完整信息的 ByteBuf。和之前的文章一样，一个连接只处理一条信息：回复之后关闭连接
+         */
+        ByteBuf byteBuf = (ByteBuf) msg;
+        try {
+            if (this.replied) {
+                return;
+            }
+            this.replied = true;
+            if (logger.isInfoEnabled()) {
+                // 只有打印日志时才需要把字节转换成字符
+                logger.info("收到完整的信息 : " + byteBuf.toString(Charset.forName("UTF-8")));
+            }
+        } finally {
+            byteBuf.release();
+        }
+
+        // 准备向客户端发送响应
+        ByteBuf response = ctx.alloc().buffer(1024);
+        response.writeBytes("回发响应信息！".getBytes());
+        /**
+         * 响应写完之后关闭，正常终止这个通道上下文，就可以关闭通道了
+         * （如果不关闭，这个通道的回话将一直存在，只要网络是稳定的，服务器就可以随时通过这个会话向客户端发送信息。）
+         * 关闭通道意味着 TCP 将正常断开，其中所有的
+         * handler、ChannelHandlerContext、ChannelPipiline、Attribute等信息都将注销
+         */
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireChannelReadComplete()} to forward
+     * to the next {@link ChannelInboundHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     */
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        logger.info("super.channelReadComplete(ChannelHandlerContext ctx)");
+    }
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireUserEventTriggered(Object)} to forward
+     * to the next {@link ChannelInboundHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     * @param evt
+     */
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        logger.info("super.userEventTriggered(ctx, evt)");
+    }
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireChannelWritabilityChanged()} to forward
+     * to the next {@link ChannelInboundHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        logger.info("super.channelWritabilityChanged((ctx)");
+    }
+
+    /**
+     * Calls {@link ChannelHandlerContext#fireExceptionCaught(Throwable)} to forward
+     * to the next {@link ChannelHandler} in the {@link ChannelPipeline}.
+     * <p>
+     * Sub-classes may override this method to change behavior.
+     *
+     * @param ctx
+     * @param cause
+     */
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        logger.info("super.exceptionCaught(ctx, cause)");
+    }
+
+    /**
+     * Do nothing by default, sub-classes may override this method.
+     *
+     * @param ctx
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        logger.info("super.handlerAdded((ctx)");
+    }
+
+    /**
+     * Do nothing by default, sub-classes may override this method.
+     *
+     * @param ctx
+     */
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        logger.info("super.handlerRemoved((ctx)");
+    }
+}
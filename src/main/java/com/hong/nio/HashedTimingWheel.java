@@ -0,0 +1,207 @@
+package com.hong.nio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 哈希时间轮：用于连接的空闲超时、信息读取超时这类 "数量很多、绝大多数会被取消" 的定时任务。<br>
+ * 时间被划分为固定长度的 tick，一圈有 ticksPerWheel 个槽，到期 tick 为 n 的任务放在第 n % ticksPerWheel 个槽的双向链表中。
+ * 添加、取消任务都是 O(1)；每个 tick 只检查一个槽，不需要扫描所有连接。
+ * 到期时间超过一圈的任务留在槽中，等转到它所在的那一圈再执行。精度是一个 tick。<br>
+ * 这个类不是线程安全的：每个 reactor 有自己的时间轮，所有操作都在 reactor 线程中完成。
+ */
+public class HashedTimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    private final long tickNanos;
+
+    private final Timeout[] wheel;
+
+    private final int mask;
+
+    private final long startNanos;
+
+    /**
+     * 下一个要处理的 tick
+     */
+    private long currentTick;
+
+    private int pendingTimeouts;
+
+    /**
+     * @param tickDuration 每个 tick 的长度
+     * @param ticksPerWheel 一圈的槽数，会向上取整到 2 的幂
+     */
+    public HashedTimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("时间轮参数不正确 : tick=" + tickDuration + ", ticksPerWheel=" + ticksPerWheel);
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(ticksPerWheel);
+        if (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * 添加一个定时任务，delay 之后（精度为一个 tick）由 {@link #advance(long)} 在调用线程中执行
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadlineNanos = System.nanoTime() - this.startNanos + unit.toNanos(delay);
+        // 向上取整，保证不会提前执行；也不会放到已经处理过的 tick 上
+        long deadlineTick = Math.max((deadlineNanos + this.tickNanos - 1) / this.tickNanos, this.currentTick);
+        Timeout timeout = new Timeout(this, task, deadlineTick);
+        int index = (int) (deadlineTick & this.mask);
+        timeout.next = this.wheel[index];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        this.wheel[index] = timeout;
+        this.pendingTimeouts++;
+        return timeout;
+    }
+
+    /**
+     * 处理到 nowNanos（System.nanoTime()）为止所有到期的 tick，执行其中到期的任务
+     * @return 执行了多少个任务
+     */
+    public int advance(long nowNanos) {
+        long targetTick = (nowNanos - this.startNanos) / this.tickNanos;
+        int expiredCount = 0;
+        List<Timeout> expired = null;
+        while (this.currentTick <= targetTick) {
+            long tick = this.currentTick;
+            // 先推进 tick，任务执行时新添加的定时任务不会落在正在处理的 tick 上
+            this.currentTick++;
+            if (this.pendingTimeouts == 0) {
+                // 没有任何任务时直接跳到目标 tick
+                this.currentTick = targetTick + 1;
+                break;
+            }
+            int index = (int) (tick & this.mask);
+            // 先把到期的任务从槽中摘下来，再统一执行（执行任务时可能会取消同一个槽中的其它任务）
+            Timeout timeout = this.wheel[index];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadlineTick <= tick) {
+                    remove(timeout);
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+            if (expired != null) {
+                for (Timeout expiredTimeout : expired) {
+                    if (expiredTimeout.expire()) {
+                        expiredCount++;
+                    }
+                }
+                expired.clear();
+            }
+        }
+        return expiredCount;
+    }
+
+    private void remove(Timeout timeout) {
+        int index = (int) (timeout.deadlineTick & this.mask);
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            this.wheel[index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        this.pendingTimeouts--;
+    }
+
+    /**
+     * @return 还没有到期、也没有取消的任务数
+     */
+    public int pendingTimeouts() {
+        return this.pendingTimeouts;
+    }
+
+    public long getTickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.tickNanos);
+    }
+
+    /**
+     * 时间轮中的一个定时任务
+     */
+    public static final class Timeout {
+
+        private static final int STATE_PENDING = 0;
+
+        private static final int STATE_CANCELLED = 1;
+
+        private static final int STATE_EXPIRED = 2;
+
+        private final HashedTimingWheel timingWheel;
+
+        private final Runnable task;
+
+        private final long deadlineTick;
+
+        private int state = STATE_PENDING;
+
+        private Timeout prev;
+
+        private Timeout next;
+
+        private Timeout(HashedTimingWheel timingWheel, Runnable task, long deadlineTick) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * 取消任务，O(1)
+         * @return 任务是否在执行之前被取消了
+         */
+        public boolean cancel() {
+            if (this.state != STATE_PENDING) {
+                return false;
+            }
+            this.state = STATE_CANCELLED;
+            // 已经从槽中摘下、等待执行的任务不在链表中
+            if (this.prev != null || this.next != null || this.timingWheel.wheel[(int) (this.deadlineTick & this.timingWheel.mask)] == this) {
+                this.timingWheel.remove(this);
+            }
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return this.state == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return this.state == STATE_EXPIRED;
+        }
+
+        private boolean expire() {
+            if (this.state != STATE_PENDING) {
+                return false;
+            }
+            this.state = STATE_EXPIRED;
+            try {
+                this.task.run();
+            } catch (RuntimeException e) {
+                logger.error("时间轮任务执行出错 : " + e.getMessage(), e);
+            }
+            return true;
+        }
+    }
+}
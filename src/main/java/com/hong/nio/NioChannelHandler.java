@@ -0,0 +1,31 @@
+package com.hong.nio;
+
+import java.io.IOException;
+
+/**
+ * reactor 引擎（{@link NioReactorServer}）回调的业务处理器。<br>
+ * 一个连接从注册开始，所有的回调都在同一个 reactor 线程中执行，
+ * 所以保存在 {@link NioSession} 中的连接状态不需要加锁；但同一个处理器会被多个 reactor 线程同时调用，
+ * 处理器自己的字段（不属于某一个连接的状态）必须是线程安全的。
+ */
+public interface NioChannelHandler {
+
+    /**
+     * 新连接已经分配给了某个 reactor，并且以 OP_READ 注册到了它的 selector 上（在这个 reactor 的线程中调用）。
+     * 处理器在这里准备这个连接的状态：自己的附件（{@link NioSession#setAttachment}），需要固定的读缓存区时还有 {@link NioSession#setReadBuffer}
+     * （不设置时使用 {@link NioSession#read()} 的自适应缓存区）
+     */
+    void registerSocketChannel(NioSession session) throws IOException;
+
+    /**
+     * 连接上有数据可以读了。这里抛出的异常只会关闭这一个连接，不会影响 reactor 上的其它连接
+     */
+    void readSocketChannel(NioSession session) throws IOException;
+
+    /**
+     * 连接关闭之后调用（无论是处理器自己调用了 {@link NioSession#close()}，还是因为超时、出错、停止服务），
+     * 用于释放附件中的资源。会话的读缓存区由引擎归还，不需要在这里处理
+     */
+    default void channelClosed(NioSession session) {
+    }
+}
@@ -0,0 +1,114 @@
+package com.hong.nio;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 文件中的一段区域，作为响应的一部分放入 {@link NioSession} 的发送队列。<br>
+ * 发送时使用 FileChannel.transferTo 直接写入 SocketChannel（Linux 上就是 sendfile），
+ * 文件内容不需要经过 Java 堆，适合发送预先生成好的大块数据。
+ * 一次 transferTo 可能只发送了一部分，已经发送的字节数记录在区域中，等通道可写时从这个位置继续发送。<br>
+ * 区域只能使用一次；发送完成、或者连接关闭时由会话调用 {@link #release()}。
+ */
+public class NioFileRegion {
+
+    private final FileChannel file;
+
+    private final long position;
+
+    private final long count;
+
+    /**
+     * 发送完成后是否关闭文件（区域自己打开的文件）
+     */
+    private final boolean closeFileOnRelease;
+
+    private long transferred;
+
+    private boolean released;
+
+    /**
+     * @param file 文件，发送完成后不会关闭，由调用方管理（同一个文件可以同时用于多个区域）
+     * @param position 区域在文件中的起始位置
+     * @param count 区域的长度
+     */
+    public NioFileRegion(FileChannel file, long position, long count) {
+        this(file, position, count, false);
+    }
+
+    private NioFileRegion(FileChannel file, long position, long count, boolean closeFileOnRelease) {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("文件区域不正确 : position=" + position + ", count=" + count);
+        }
+        this.file = file;
+        this.position = position;
+        this.count = count;
+        this.closeFileOnRelease = closeFileOnRelease;
+    }
+
+    /**
+     * 打开整个文件作为一个区域，发送完成后自动关闭文件
+     */
+    public static NioFileRegion open(Path path) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new NioFileRegion(file, 0, file.size(), true);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public long count() {
+        return this.count;
+    }
+
+    public long transferred() {
+        return this.transferred;
+    }
+
+    public long remaining() {
+        return this.count - this.transferred;
+    }
+
+    public boolean isComplete() {
+        return this.transferred == this.count;
+    }
+
+    /**
+     * 从上次停下的位置继续发送
+     * @return 本次发送的字节数，0 表示目标通道的发送缓存区满了
+     */
+    long transferTo(WritableByteChannel target) throws IOException {
+        if (isComplete()) {
+            return 0;
+        }
+        long written = this.file.transferTo(this.position + this.transferred, remaining(), target);
+        if (written == 0 && this.file.size() <= this.position + this.transferred) {
+            // 文件在发送过程中被截断了，继续等待只会不停地触发 OP_WRITE
+            throw new IOException("文件区域还有 " + remaining() + " 字节没有发送，但文件已经被截断为 " + this.file.size() + " 字节");
+        }
+        this.transferred += written;
+        return written;
+    }
+
+    /**
+     * 释放区域（重复调用没有影响）
+     */
+    void release() {
+        if (this.released) {
+            return;
+        }
+        this.released = true;
+        if (this.closeFileOnRelease) {
+            try {
+                this.file.close();
+            } catch (IOException e) {
+                // 只读打开的文件，关闭失败没有数据需要处理
+            }
+        }
+    }
+}
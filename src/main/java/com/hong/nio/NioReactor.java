@@ -0,0 +1,586 @@
+package com.hong.nio;
+
+import com.hong.common.Configs;
+import com.hong.common.admission.AdmissionController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个 reactor：一个 selector 加上一个线程，负责若干个连接的全部 IO 事件。<br>
+ * 其它线程（acceptor）通过 {@link #assign(SocketChannel)} 把新连接交给它：
+ * 连接先放入交接队列，再唤醒 selector，由 reactor 线程自己完成注册。
+ * 这样 register 和 select 不会在两个线程中互相阻塞（SelectableChannel.register 会等待正在进行的 select 结束）。<br>
+ * 主 reactor 上还可以注册 server socket channel，这时它同时负责 accept。<br>
+ * 事件循环的运行指标（select 等待时间、每次唤醒的就绪 key 数、每个 key 的处理时间、提前返回的次数、忙碌比例）
+ * 通过 JMX 暴露，见 {@link NioReactorMXBean}。<br>
+ * JDK 的 epoll 实现在某些内核上会出现 select 没有任何事件却立即返回 0 的问题（空转，会占满一个 CPU 核）。
+ * 连续 -Dnio.selector.rebuildThreshold 次（默认 512，0 表示不检测）select 提前返回 0 时，
+ * 认为 selector 已经坏掉，新建一个 selector，把所有通道连同关注的事件、附件一起迁移过去。<br>
+ * 每个连接每一轮的读取量有预算（见 {@link NioSessionConfig}），预算用完还有数据的连接暂时取消 OP_READ，进入轮转队列的末尾：
+ * 每一轮先处理 select 出来的就绪 key，再按顺序给队列中的每个连接一份新的预算。队列不为空时 select 不等待（selectNow），
+ * 这样持续发送大量数据的连接和只发几个字节的交互式连接轮流得到服务，后者的延迟不再取决于前者发送了多少数据。
+ */
+class NioReactor implements Runnable, NioReactorMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioReactor.class);
+
+    private static final int SELECTOR_REBUILD_THRESHOLD = Configs.getInt("nio.selector.rebuildThreshold", 512);
+
+    /**
+     * 忙碌比例的统计周期
+     */
+    private static final long BUSY_RATIO_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+
+    /**
+     * 重建 selector 时会被替换（只在 reactor 线程中替换，其它线程只用它来 wakeup）
+     */
+    private volatile Selector selector;
+
+    private final NioChannelHandler handler;
+
+    private final NioSessionConfig sessionConfig;
+
+    /**
+     * 这个 reactor 上所有连接的空闲超时、信息超时（只在 reactor 线程中使用）
+     */
+    private final HashedTimingWheel timingWheel;
+
+    /**
+     * 这个 reactor 上的连接做 gathering write 时共用的数组（只在 reactor 线程中使用）
+     */
+    private final ByteBuffer[] gatheringBuffers = new ByteBuffer[NioSession.MAX_GATHERING_BUFFERS];
+
+    /**
+     * 等待本 reactor 线程注册的新连接
+     */
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * 读预算用完、通道中还有数据的连接，按顺序轮流继续读取（只在 reactor 线程中使用）
+     */
+    private final ArrayDeque<NioSession> leftoverReads = new ArrayDeque<>();
+
+    /**
+     * 其它线程（例如业务线程）交给本 reactor 线程执行的任务，例如写回响应
+     */
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 已经有人唤醒过 selector、但 reactor 线程还没有处理交接队列（新连接、任务）时，不再重复调用 wakeup（wakeup 本身是一次系统调用）
+     */
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    /**
+     * 本 reactor 上注册的连接数，由 reactor 线程在每次 select 之后更新，供 "最少连接" 的分配策略读取
+     */
+    private volatile int registeredCount;
+
+    private volatile boolean running = true;
+
+    private volatile Thread thread;
+
+    /**
+     * 有新连接时交给谁（只有注册了 server socket channel 的主 reactor 才会用到）
+     */
+    private NioReactorServer acceptor;
+
+    /**
+     * 准入控制：连接关闭时归还名额，为 null 时不限制（在 run 之前设置）
+     */
+    private AdmissionController admission;
+
+    //================================================
+    //      运行指标：只由 reactor 线程更新，JMX 线程读取
+    //================================================
+
+    private volatile long wakeupCount;
+
+    private volatile long prematureWakeupCount;
+
+    private volatile long selectorRebuildCount;
+
+    private volatile long readYieldCount;
+
+    private volatile long totalSelectWaitNanos;
+
+    private volatile long totalReadyKeys;
+
+    private volatile long processedKeyCount;
+
+    private volatile long totalProcessNanos;
+
+    private volatile long maxProcessNanos;
+
+    private volatile double busyRatio;
+
+    NioReactor(String name, NioChannelHandler handler, NioSessionConfig sessionConfig) throws IOException {
+        this.name = name;
+        this.handler = handler;
+        this.sessionConfig = sessionConfig;
+        this.timingWheel = new HashedTimingWheel(sessionConfig.getTickMillis(), TimeUnit.MILLISECONDS, sessionConfig.getTicksPerWheel());
+        this.selector = Selector.open();
+    }
+
+    /**
+     * 在 run 之前调用：把 server socket channel 注册到这个 reactor 上，由它负责 accept
+     */
+    void registerServerChannel(ServerSocketChannel serverChannel, NioReactorServer acceptor) throws IOException {
+        // 注意：服务器通道只能注册 SelectionKey.OP_ACCEPT 事件
+        serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.acceptor = acceptor;
+    }
+
+    void setAdmission(AdmissionController admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * 由主 reactor 线程调用：暂停 accept，delayMillis 之后恢复（恢复之后由 acceptor 重新做准入检查）。
+     * 连接在这段时间里留在内核的 backlog 队列中
+     */
+    void pauseAccept(final ServerSocketChannel serverChannel, long delayMillis) {
+        SelectionKey key = serverChannel.keyFor(this.selector);
+        if (key == null || !key.isValid() || key.interestOps() == 0) {
+            return;
+        }
+        key.interestOps(0);
+        this.timingWheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // 时间轮的任务在 reactor 线程中执行；期间 selector 可能被重建过，所以重新取 key
+                SelectionKey key = serverChannel.keyFor(selector);
+                if (key != null && key.isValid()) {
+                    key.interestOps(SelectionKey.OP_ACCEPT);
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 一个被接收的连接关闭了（不管是否已经注册成会话）
+     */
+    void connectionClosed() {
+        if (this.admission != null) {
+            this.admission.connectionClosed();
+        }
+    }
+
+    /**
+     * 把一个新连接交给这个 reactor，可以在任何线程中调用
+     */
+    void assign(SocketChannel socketChannel) {
+        if (Thread.currentThread() == this.thread) {
+            register(socketChannel);
+            return;
+        }
+        this.pendingCount.incrementAndGet();
+        this.pendingChannels.offer(socketChannel);
+        if (this.wakenUp.compareAndSet(false, true)) {
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * 在 reactor 线程中执行 task，可以在任何线程中调用：任务放入无锁队列，再唤醒 selector
+     */
+    void execute(Runnable task) {
+        this.pendingTasks.offer(task);
+        if (Thread.currentThread() != this.thread && this.wakenUp.compareAndSet(false, true)) {
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * @return 这个 reactor 负责的连接数（包括还在交接队列中的）
+     */
+    int load() {
+        return this.registeredCount + this.pendingCount.get();
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    NioReactor registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName());
+        } catch (Exception e) {
+            logger.warn("reactor " + this.name + " 注册 JMX 失败 : " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    private void unregisterMBean() {
+        try {
+            ObjectName objectName = objectName();
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            logger.warn("reactor " + this.name + " 注销 JMX 失败 : " + e.getMessage());
+        }
+    }
+
+    private ObjectName objectName() throws MalformedObjectNameException {
+        return new ObjectName("com.hong.nio:type=NioReactor,name=" + this.name);
+    }
+
+    HashedTimingWheel getTimingWheel() {
+        return this.timingWheel;
+    }
+
+    ByteBuffer[] getGatheringBuffers() {
+        return this.gatheringBuffers;
+    }
+
+    @Override
+    public void run() {
+        this.thread = Thread.currentThread();
+        // 最多等待一个 tick，保证时间轮按时推进
+        long timeoutMillis = Math.min(100, this.timingWheel.getTickMillis());
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int prematureInARow = 0;
+        long windowStartNanos = System.nanoTime();
+        long windowBusyNanos = 0;
+        try {
+            while (this.running) {
+                // 如果条件成立，说明本次询问 selector, 并没有获取到任何准备好的、感兴趣的事件
+                // java 程序对 多路复用IO 的支持也包括了 阻塞模式 和 非阻塞模式 两种。
+                long selectStartNanos = System.nanoTime();
+                // 还有读预算用完的连接在排队时不能等待，它们的数据已经在内核缓存区中了
+                boolean blocking = this.leftoverReads.isEmpty();
+                int readyCount = blocking ? this.selector.select(timeoutMillis) : this.selector.selectNow();
+                long selectEndNanos = System.nanoTime();
+                boolean wokenUp = this.wakenUp.getAndSet(false);
+                long selectWaitNanos = selectEndNanos - selectStartNanos;
+                this.wakeupCount++;
+                this.totalSelectWaitNanos += selectWaitNanos;
+                this.totalReadyKeys += readyCount;
+
+                // 没有事件、没有人唤醒、也没有等到超时就返回了
+                if (blocking && readyCount == 0 && !wokenUp && this.running && selectWaitNanos < timeoutNanos / 2) {
+                    if (Thread.interrupted()) {
+                        // 线程的中断标记会让 select 每次都立即返回，这不是 selector 的问题
+                        logger.warn("reactor " + this.name + " 的线程被中断，已经清除中断标记");
+                    } else {
+                        this.prematureWakeupCount++;
+                        if (SELECTOR_REBUILD_THRESHOLD > 0 && ++prematureInARow >= SELECTOR_REBUILD_THRESHOLD) {
+                            rebuildSelector(prematureInARow);
+                            prematureInARow = 0;
+                        }
+                    }
+                } else {
+                    prematureInARow = 0;
+                }
+
+                registerPendingChannels();
+                this.registeredCount = this.selector.keys().size();
+                if (readyCount > 0) {
+                    processSelectedKeys();
+                }
+                processLeftoverReads();
+                runPendingTasks();
+                //================================================
+                //      没有事件时原来在这里 "做一些然并卵的事情"，
+                //      现在用来处理到期的空闲超时、信息超时
+                //================================================
+                this.timingWheel.advance(System.nanoTime());
+
+                long nowNanos = System.nanoTime();
+                windowBusyNanos += nowNanos - selectEndNanos;
+                if (nowNanos - windowStartNanos >= BUSY_RATIO_WINDOW_NANOS) {
+                    this.busyRatio = (double) windowBusyNanos / (nowNanos - windowStartNanos);
+                    windowStartNanos = nowNanos;
+                    windowBusyNanos = 0;
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // shutdown 时关闭了 selector
+        } catch (Exception e) {
+            logger.error("reactor " + this.name + " : " + e.getMessage(), e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel socketChannel;
+        while ((socketChannel = this.pendingChannels.poll()) != null) {
+            this.pendingCount.decrementAndGet();
+            register(socketChannel);
+        }
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = this.pendingTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("reactor " + this.name + " 执行任务时出错 : " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void register(SocketChannel socketChannel) {
+        NioSession session = null;
+        try {
+            socketChannel.configureBlocking(false);
+            // socket 通道可以且只可以注册三种事件 SelectionKey.OP_READ | SelectionKey.OP_WRITE | SelectionKey.OP_CONNECT
+            SelectionKey key = socketChannel.register(this.selector, SelectionKey.OP_READ);
+            session = new NioSession(key, this, this.handler, this.sessionConfig);
+            key.attach(session);
+            this.handler.registerSocketChannel(session);
+        } catch (IOException e) {
+            logger.error("reactor " + this.name + " 注册连接失败 : " + e.getMessage(), e);
+            if (session != null) {
+                session.close();
+            } else {
+                closeQuietly(socketChannel);
+                connectionClosed();
+            }
+        }
+    }
+
+    /**
+     * 新建一个 selector，把旧 selector 上所有有效的通道（连同关注的事件和附件）迁移过去，然后关闭旧的 selector
+     */
+    private void rebuildSelector(int prematureInARow) {
+        Selector oldSelector = this.selector;
+        Selector newSelector;
+        try {
+            newSelector = Selector.open();
+        } catch (IOException e) {
+            logger.error("reactor " + this.name + " 重建 selector 失败 : " + e.getMessage(), e);
+            return;
+        }
+        int migrated = 0;
+        for (SelectionKey key : oldSelector.keys()) {
+            if (!key.isValid()) {
+                continue;
+            }
+            Object attachment = key.attachment();
+            try {
+                int interestOps = key.interestOps();
+                key.cancel();
+                SelectionKey newKey = key.channel().register(newSelector, interestOps, attachment);
+                if (attachment instanceof NioSession) {
+                    ((NioSession) attachment).rebind(newKey);
+                }
+                migrated++;
+            } catch (Exception e) {
+                logger.error("reactor " + this.name + " 迁移通道到新的 selector 失败 : " + e.getMessage(), e);
+                if (attachment instanceof NioSession) {
+                    ((NioSession) attachment).close();
+                } else {
+                    closeQuietly(key.channel());
+                }
+            }
+        }
+        this.selector = newSelector;
+        try {
+            oldSelector.close();
+        } catch (IOException e) {
+            logger.warn("reactor " + this.name + " 关闭旧的 selector 失败 : " + e.getMessage());
+        }
+        this.selectorRebuildCount++;
+        logger.warn("reactor " + this.name + " 的 select 连续 " + prematureInARow + " 次提前返回 0（selector 空转），已经重建 selector，迁移了 "
+                + migrated + " 个通道");
+    }
+
+    private void processSelectedKeys() {
+        long keyCount = 0;
+        long processNanos = 0;
+        long maxNanos = this.maxProcessNanos;
+        long startNanos = System.nanoTime();
+        // 这里就是本次询问操作系统，所获取到的 "所关心的事件" 的事件类型（每一个通道都是独立的）
+        Iterator<SelectionKey> selectionKeys = this.selector.selectedKeys().iterator();
+        while (selectionKeys.hasNext()) {
+            SelectionKey readyKey = selectionKeys.next();
+            // 这个已经处理的 readyKey 一定要移除。如果不移除，就会一直存在在 selector.selectedKeys 集合中
+            // 待到下一次 selector.select() > 0 时，这个 readyKey 又会被处理一次
+            selectionKeys.remove();
+
+            if (readyKey.isValid() && readyKey.isAcceptable()) {
+                this.acceptor.accept((ServerSocketChannel) readyKey.channel());
+            } else if (readyKey.attachment() instanceof NioSession) {
+                NioSession session = (NioSession) readyKey.attachment();
+                try {
+                    // 先把上次没有写完的数据写出去，再读取新的请求
+                    if (readyKey.isValid() && readyKey.isWritable()) {
+                        session.flush();
+                    }
+                    if (readyKey.isValid() && readyKey.isReadable()) {
+                        readSession(session);
+                    }
+                } catch (IOException e) {
+                    // 一个连接出错，只关闭这个连接
+                    logger.error("reactor " + this.name + " 处理连接时出错 : " + e.getMessage(), e);
+                    session.close();
+                }
+            }
+
+            long endNanos = System.nanoTime();
+            long nanos = endNanos - startNanos;
+            keyCount++;
+            processNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+            startNanos = endNanos;
+        }
+        this.processedKeyCount += keyCount;
+        this.totalProcessNanos += processNanos;
+        this.maxProcessNanos = maxNanos;
+    }
+
+    /**
+     * 给轮转队列中的每个连接一份新的预算继续读取；这一轮又用完预算的连接重新排到队尾
+     */
+    private void processLeftoverReads() {
+        for (int count = this.leftoverReads.size(); count > 0; count--) {
+            NioSession session = this.leftoverReads.pollFirst();
+            if (session.isClosed() || session.isClosing()) {
+                continue;
+            }
+            try {
+                readSession(session);
+            } catch (IOException e) {
+                logger.error("reactor " + this.name + " 处理连接时出错 : " + e.getMessage(), e);
+                session.close();
+            }
+        }
+    }
+
+    private void readSession(NioSession session) throws IOException {
+        session.markRead();
+        this.handler.readSocketChannel(session);
+        if (session.isClosed()) {
+            return;
+        }
+        session.readComplete();
+        if (session.isReadBudgetExhausted()) {
+            if (!session.isReadSuspended()) {
+                session.suspendRead();
+            }
+            this.leftoverReads.addLast(session);
+            this.readYieldCount++;
+        } else if (session.isReadSuspended()) {
+            session.resumeRead();
+        }
+    }
+
+    void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : this.selector.keys()) {
+            if (key.attachment() instanceof NioSession) {
+                ((NioSession) key.attachment()).close();
+            } else {
+                closeQuietly(key.channel());
+            }
+        }
+        SocketChannel socketChannel;
+        while ((socketChannel = this.pendingChannels.poll()) != null) {
+            closeQuietly(socketChannel);
+            connectionClosed();
+        }
+        // 连接都已经关闭，剩下的任务（例如写回响应）没有意义了
+        this.pendingTasks.clear();
+        this.leftoverReads.clear();
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            logger.warn("reactor " + this.name + " 关闭 selector 失败 : " + e.getMessage());
+        }
+        unregisterMBean();
+    }
+
+    @Override
+    public int getRegisteredCount() {
+        return this.registeredCount;
+    }
+
+    @Override
+    public long getWakeupCount() {
+        return this.wakeupCount;
+    }
+
+    @Override
+    public long getPrematureWakeupCount() {
+        return this.prematureWakeupCount;
+    }
+
+    @Override
+    public long getSelectorRebuildCount() {
+        return this.selectorRebuildCount;
+    }
+
+    @Override
+    public double getAverageSelectWaitMicros() {
+        long wakeups = this.wakeupCount;
+        return wakeups == 0 ? 0 : this.totalSelectWaitNanos / 1000.0 / wakeups;
+    }
+
+    @Override
+    public double getAverageReadyKeysPerWakeup() {
+        long wakeups = this.wakeupCount;
+        return wakeups == 0 ? 0 : (double) this.totalReadyKeys / wakeups;
+    }
+
+    @Override
+    public double getAverageProcessMicrosPerKey() {
+        long keys = this.processedKeyCount;
+        return keys == 0 ? 0 : this.totalProcessNanos / 1000.0 / keys;
+    }
+
+    @Override
+    public double getMaxProcessMicrosPerKey() {
+        return this.maxProcessNanos / 1000.0;
+    }
+
+    @Override
+    public long getReadYieldCount() {
+        return this.readYieldCount;
+    }
+
+    @Override
+    public double getBusyRatio() {
+        return this.busyRatio;
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.hong.nio;
+
+/**
+ * 每个 reactor（selector 事件循环）通过 JMX 暴露的运行指标，
+ * 可以用 jconsole / jmc 观察，或者由监控系统采集后做事件循环饱和、selector 空转的告警。
+ */
+public interface NioReactorMXBean {
+
+    /**
+     * 注册在这个 reactor 上的通道数
+     */
+    int getRegisteredCount();
+
+    /**
+     * select 返回（被唤醒）的总次数
+     */
+    long getWakeupCount();
+
+    /**
+     * 没有任何就绪的事件、没有被主动唤醒、也没有等到超时就返回的 select 次数。
+     * 偶尔出现是正常的；持续快速增长说明遇到了 JDK epoll 空转的问题
+     */
+    long getPrematureWakeupCount();
+
+    /**
+     * 因为检测到空转而重建 selector 的次数
+     */
+    long getSelectorRebuildCount();
+
+    /**
+     * 平均每次 select 等待的时间（微秒）
+     */
+    double getAverageSelectWaitMicros();
+
+    /**
+     * 平均每次被唤醒时就绪的 key 数
+     */
+    double getAverageReadyKeysPerWakeup();
+
+    /**
+     * 平均处理一个就绪 key 的耗时（微秒）
+     */
+    double getAverageProcessMicrosPerKey();
+
+    /**
+     * 处理单个就绪 key 的最大耗时（微秒）
+     */
+    double getMaxProcessMicrosPerKey();
+
+    /**
+     * 连接的读预算用完、让出 selector 线程（进入轮转队列）的次数
+     */
+    long getReadYieldCount();
+
+    /**
+     * 最近一个统计周期（约 1 秒）中，reactor 线程在处理事件（而不是等待 select）上花费的时间比例，0 ~ 1。
+     * 持续接近 1 说明这个事件循环已经饱和
+     */
+    double getBusyRatio();
+}
@@ -0,0 +1,235 @@
+package com.hong.nio;
+
+import com.hong.common.Configs;
+import com.hong.common.admission.AdmissionController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 主从多 reactor 的 NIO 服务器引擎，SocketServerNIO1、SocketServerNIO2 共用。<br>
+ * 1、主 reactor（调用 {@link #run()} 的线程）只负责 accept；<br>
+ * 2、N 个从 reactor 各自拥有一个 selector 和一个线程，负责分配给它的连接的全部读写；
+ * 新连接按照轮询（roundRobin）或者最少连接（leastLoaded）分配给从 reactor，分配之后不再迁移，
+ * 所以每个连接的状态始终只被一个线程访问；<br>
+ * 3、N = 0 时就是原来的单线程模式：accept、读取、解码、写回全部在主 reactor 的一个 selector 上完成。<br>
+ * 4、每个连接的状态保存在 {@link NioSession} 中，空闲超时、信息超时由各个 reactor 的时间轮处理（见 {@link NioSessionConfig}）。<br>
+ * 5、每个 reactor 的事件循环指标通过 JMX（com.hong.nio:type=NioReactor）暴露，selector 空转时自动重建（见 {@link NioReactor}）。<br>
+ * 6、accept 之前做准入控制（连接速率、并发连接数、内存压力，见 {@link AdmissionController}），
+ * 不能接收时暂停主 reactor 上的 OP_ACCEPT，过一段时间自动恢复。<br>
+ * 参数：-Dnio.reactors（从 reactor 个数，默认 0）、-Dnio.reactor.assign=roundRobin|leastLoaded（默认 roundRobin）。
+ */
+public class NioReactorServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioReactorServer.class);
+
+    /**
+     * 新连接分配给哪一个从 reactor
+     */
+    public enum AssignPolicy {
+        ROUND_ROBIN,
+        LEAST_LOADED
+    }
+
+    private final String name;
+
+    private final AssignPolicy assignPolicy;
+
+    private final NioReactor mainReactor;
+
+    private final NioReactor[] subReactors;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private ServerSocketChannel serverChannel;
+
+    private AdmissionController admission;
+
+    /**
+     * 上次暂停 accept 的原因（只在主 reactor 线程中访问），只在原因变化时打印日志：
+     * 限速时暂停、恢复非常频繁，次数通过 JMX 查看
+     */
+    private AdmissionController.RejectReason pauseReason;
+
+    public NioReactorServer(String name, int subReactorCount, AssignPolicy assignPolicy, NioSessionConfig sessionConfig,
+                            NioChannelHandler handler) throws IOException {
+        if (subReactorCount < 0) {
+            throw new IllegalArgumentException("从 reactor 个数不正确 : " + subReactorCount);
+        }
+        this.name = name;
+        this.assignPolicy = assignPolicy;
+        this.mainReactor = new NioReactor(name + "-main-reactor", handler, sessionConfig).registerMBean();
+        this.subReactors = new NioReactor[subReactorCount];
+        for (int index = 0; index < subReactorCount; index++) {
+            this.subReactors[index] = new NioReactor(name + "-sub-reactor-" + index, handler, sessionConfig).registerMBean();
+        }
+    }
+
+    public static NioReactorServer fromConfig(String name, NioChannelHandler handler) throws IOException {
+        int subReactorCount = Configs.getInt("nio.reactors", 0);
+        String assign = Configs.getString("nio.reactor.assign", "roundRobin");
+        AssignPolicy assignPolicy;
+        if ("roundRobin".equalsIgnoreCase(assign)) {
+            assignPolicy = AssignPolicy.ROUND_ROBIN;
+        } else if ("leastLoaded".equalsIgnoreCase(assign)) {
+            assignPolicy = AssignPolicy.LEAST_LOADED;
+        } else {
+            throw new IllegalArgumentException("不支持的 nio.reactor.assign : " + assign);
+        }
+        return new NioReactorServer(name, subReactorCount, assignPolicy, NioSessionConfig.fromConfig(), handler)
+                .admission(AdmissionController.fromConfig(name));
+    }
+
+    /**
+     * 设置准入控制，在 {@link #run()} 之前调用；null 表示不限制
+     */
+    public NioReactorServer admission(AdmissionController admission) {
+        this.admission = admission;
+        this.mainReactor.setAdmission(admission);
+        for (NioReactor subReactor : this.subReactors) {
+            subReactor.setAdmission(admission);
+        }
+        return this;
+    }
+
+    public NioReactorServer bind(int port) throws IOException {
+        return bind(new InetSocketAddress(port));
+    }
+
+    public NioReactorServer bind(InetSocketAddress address) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.configureBlocking(false);
+        ServerSocket serverSocket = this.serverChannel.socket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        this.mainReactor.registerServerChannel(this.serverChannel, this);
+        return this;
+    }
+
+    /**
+     * @return 实际监听的地址（绑定随机端口时使用）
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) this.serverChannel.getLocalAddress();
+    }
+
+    /**
+     * 启动从 reactor 线程，然后在当前线程中运行主 reactor，直到 {@link #shutdown()}
+     */
+    public void run() throws IOException {
+        if (this.serverChannel == null) {
+            throw new IllegalStateException("请先调用 bind");
+        }
+        for (NioReactor subReactor : this.subReactors) {
+            Thread thread = new Thread(subReactor, subReactor.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        logger.info(this.name + " 启动，监听地址：" + getLocalAddress() + "，从 reactor 个数：" + this.subReactors.length
+                + (this.subReactors.length == 0 ? "（单线程模式）" : "，分配策略：" + this.assignPolicy));
+        try {
+            this.mainReactor.run();
+        } finally {
+            for (NioReactor subReactor : this.subReactors) {
+                subReactor.shutdown();
+            }
+            this.serverChannel.close();
+        }
+    }
+
+    /**
+     * 在后台线程中运行，用于压测等需要在同一个 JVM 中启动服务器的场景
+     */
+    public Thread start() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    NioReactorServer.this.run();
+                } catch (IOException e) {
+                    logger.error(name + " : " + e.getMessage(), e);
+                }
+            }
+        }, this.name + "-main-reactor");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public void shutdown() {
+        this.mainReactor.shutdown();
+        if (this.admission != null) {
+            this.admission.unregisterMBean();
+        }
+    }
+
+    /**
+     * 由主 reactor 线程调用：接收新连接并分配给某个 reactor
+     */
+    void accept(ServerSocketChannel serverSocketChannel) {
+        logger.info("===== channel 通道已经准备好 =====");
+        // 一次 OP_ACCEPT 事件可能对应多个已经完成握手的连接，尽量一次取完（但不要无限制地占用主 reactor）
+        for (int count = 0; count < 64; count++) {
+            if (this.admission != null) {
+                AdmissionController.RejectReason reason = this.admission.tryAdmit();
+                if (reason != null) {
+                    long pauseMillis = this.admission.getPauseMillis(reason);
+                    if (reason != this.pauseReason) {
+                        this.pauseReason = reason;
+                        logger.warn(this.name + " 暂停 accept（" + reason + "），" + pauseMillis + "ms 后重新检查");
+                    }
+                    this.mainReactor.pauseAccept(serverSocketChannel, pauseMillis);
+                    return;
+                }
+                if (this.pauseReason != null && this.pauseReason != AdmissionController.RejectReason.RATE_LIMITED) {
+                    logger.info(this.name + " 恢复 accept");
+                    this.pauseReason = null;
+                }
+            }
+            SocketChannel socketChannel;
+            try {
+                socketChannel = serverSocketChannel.accept();
+            } catch (IOException e) {
+                logger.error(this.name + " accept 失败 : " + e.getMessage(), e);
+                cancelAdmission();
+                return;
+            }
+            if (socketChannel == null) {
+                cancelAdmission();
+                return;
+            }
+            next().assign(socketChannel);
+        }
+    }
+
+    private void cancelAdmission() {
+        if (this.admission != null) {
+            this.admission.cancelAdmission();
+        }
+    }
+
+    private NioReactor next() {
+        if (this.subReactors.length == 0) {
+            return this.mainReactor;
+        }
+        if (this.assignPolicy == AssignPolicy.LEAST_LOADED) {
+            NioReactor leastLoaded = this.subReactors[0];
+            int minLoad = leastLoaded.load();
+            for (int index = 1; index < this.subReactors.length; index++) {
+                int load = this.subReactors[index].load();
+                if (load < minLoad) {
+                    leastLoaded = this.subReactors[index];
+                    minLoad = load;
+                }
+            }
+            return leastLoaded;
+        }
+        return this.subReactors[(this.nextIndex.getAndIncrement() & Integer.MAX_VALUE) % this.subReactors.length];
+    }
+}
@@ -0,0 +1,507 @@
+package com.hong.nio;
+
+import com.hong.common.buffer.BufferPool;
+import com.hong.common.buffer.PooledBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个连接的会话状态，作为 SelectionKey 的附件。<br>
+ * 原来 SocketServerNIO2 把不完整的信息放在一个以 channel.hashCode() 为 key 的静态 ConcurrentHashMap 中：
+ * hashCode 可能冲突，客户端中途断开时记录也不会被删除。现在连接的所有状态都跟着 SelectionKey 走，连接关闭时一起释放。<br>
+ * 会话只在所属 reactor 的线程中访问，不需要加锁。超时由 reactor 的 {@link HashedTimingWheel} 管理：<br>
+ * 1、空闲超时：每次读取只记录时间，不重新调度；定时任务到期时再检查最后一次读取的时间，没有超时就按剩余时间重新调度；<br>
+ * 2、信息超时：处理器通过 {@link #messageInProgress(boolean)} 告诉会话是否有收到一半的信息，从第一个字节开始计时。<br>
+ * 写出：{@link #write(ByteBuffer)} 把数据放入这个连接的发送队列，并立即尝试写出；
+ * 内核的发送缓存区满了（write 返回 0）时，剩下的数据留在队列中，并关注 OP_WRITE 事件，
+ * 等通道可写时由 reactor 调用 {@link #flush()} 继续写（每次用 gathering write 一次写出队列中的多个缓存区）。
+ * 所以 reactor 线程永远不会因为写而阻塞，也不会丢掉部分写出的数据。
+ * 发送队列中还可以放入文件区域（{@link #write(NioFileRegion)}），用 FileChannel.transferTo 直接发送，不经过 Java 堆。<br>
+ * 读取：处理器通过 {@link #read()} 读取时，读缓存区的大小是自适应的（见 {@link ReceiveBufferPredictor}）：
+ * 读满了就换大一级，连续几次读得很少就换小一级。解码器自己保存不完整的信息，一次读事件处理完之后缓存区就是空的，
+ * 这时直接归还到池中，下次可读时再借用，所以空闲的连接不占用读缓存区。
+ */
+public class NioSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioSession.class);
+
+    /**
+     * 一次 gathering write 最多写出的缓存区个数（操作系统对 writev 的 iovec 个数有限制）
+     */
+    static final int MAX_GATHERING_BUFFERS = 64;
+
+    /**
+     * 一次 flush 最多调用 write 的次数
+     */
+    private static final int WRITE_SPIN_COUNT = 16;
+
+    /**
+     * 连续多少次读到的数据都放得进小一级的缓存区时缩小
+     */
+    private static final int RECV_BUFFER_SHRINK_AFTER = 3;
+
+    private static final BufferPool BUFFER_POOL = BufferPool.getDefault();
+
+    /**
+     * reactor 重建 selector 时会换成新的 key
+     */
+    private SelectionKey key;
+
+    private final NioReactor reactor;
+
+    private final NioChannelHandler handler;
+
+    private final NioSessionConfig config;
+
+    private final Integer remotePort;
+
+    /**
+     * 处理器自己的连接状态（例如解码器）
+     */
+    private Object attachment;
+
+    /**
+     * 读缓存区，会话关闭时自动归还到池中
+     */
+    private PooledBuffer readBuffer;
+
+    /**
+     * 读缓存区是处理器通过 {@link #setReadBuffer(PooledBuffer)} 设置的固定缓存区（不自适应、读事件之后也不归还）
+     */
+    private boolean fixedReadBuffer;
+
+    /**
+     * 第一次 {@link #read()} 时创建
+     */
+    private ReceiveBufferPredictor recvBufferPredictor;
+
+    private long lastReadNanos;
+
+    private HashedTimingWheel.Timeout idleTimeout;
+
+    private HashedTimingWheel.Timeout messageTimeout;
+
+    /**
+     * 发送队列：ByteBuffer（都处于 "读模式"）或者 {@link NioFileRegion}
+     */
+    private final ArrayDeque<Object> outbound = new ArrayDeque<>();
+
+    private long pendingWriteBytes;
+
+    /**
+     * 发送队列写完之后关闭连接
+     */
+    private boolean closeWhenFlushed;
+
+    private boolean closed;
+
+    /**
+     * 这一轮已经读取的字节数、调用 read 的次数（见 {@link #spendReadBudget(int)}）
+     */
+    private int roundReadBytes;
+
+    private int roundReadCalls;
+
+    /**
+     * 读预算用完、暂时取消了 OP_READ，正在 reactor 的轮转队列中等待
+     */
+    private boolean readSuspended;
+
+    NioSession(SelectionKey key, NioReactor reactor, NioChannelHandler handler, NioSessionConfig config) {
+        this.key = key;
+        this.reactor = reactor;
+        this.handler = handler;
+        this.config = config;
+        InetSocketAddress remoteAddress = (InetSocketAddress) ((SocketChannel) key.channel()).socket().getRemoteSocketAddress();
+        this.remotePort = remoteAddress == null ? null : remoteAddress.getPort();
+        this.lastReadNanos = System.nanoTime();
+        if (config.getIdleTimeoutMillis() > 0) {
+            this.idleTimeout = reactor.getTimingWheel().schedule(new IdleCheck(), config.getIdleTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public SocketChannel channel() {
+        return (SocketChannel) this.key.channel();
+    }
+
+    public SelectionKey key() {
+        return this.key;
+    }
+
+    /**
+     * reactor 重建 selector 之后，换成在新 selector 上的 key
+     */
+    void rebind(SelectionKey key) {
+        this.key = key;
+    }
+
+    public Integer getRemotePort() {
+        return this.remotePort;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getAttachment() {
+        return (T) this.attachment;
+    }
+
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * @return 读缓存区；没有设置固定缓存区、当前也没有借用时，按照预测的大小从池中借用一个
+     */
+    public PooledBuffer getReadBuffer() {
+        if (this.readBuffer == null && !this.fixedReadBuffer) {
+            this.readBuffer = BUFFER_POOL.acquire(predictor().nextSize());
+        }
+        return this.readBuffer;
+    }
+
+    /**
+     * 设置这个连接固定使用的读缓存区，会话关闭时由引擎归还。设置之后不再自适应
+     */
+    public void setReadBuffer(PooledBuffer readBuffer) {
+        if (this.readBuffer != null && this.readBuffer != readBuffer) {
+            this.readBuffer.releaseIfNeeded();
+        }
+        this.readBuffer = readBuffer;
+        this.fixedReadBuffer = readBuffer != null;
+    }
+
+    /**
+     * 从通道读取到读缓存区中，并根据读到的字节数调整以后使用的缓存区大小。<br>
+     * 缓存区是空的（处理器已经把上次读到的数据交给了解码器并 clear）、而预测的大小变大了时，会先换成更大的缓存区，
+     * 所以每次 read 之后都要通过 {@link #getReadBuffer()} 重新取得缓存区，不要在 read 之前保存它
+     * @return 读到的字节数，-1 表示对方已经关闭了连接
+     */
+    public int read() throws IOException {
+        PooledBuffer pooledBuffer = getReadBuffer();
+        if (!this.fixedReadBuffer && pooledBuffer.buffer().position() == 0
+                && pooledBuffer.capacity() < this.recvBufferPredictor.nextSize()) {
+            pooledBuffer.release();
+            this.readBuffer = null;
+            pooledBuffer = getReadBuffer();
+        }
+        ByteBuffer buffer = pooledBuffer.buffer();
+        int capacity = buffer.remaining();
+        int realLen = channel().read(buffer);
+        predictor().record(realLen, capacity);
+        return realLen;
+    }
+
+    /**
+     * 一次读事件处理完之后由 reactor 调用：缓存区已经空了就归还到池中，空闲的连接不占用读缓存区
+     */
+    void readComplete() {
+        if (!this.fixedReadBuffer && this.readBuffer != null && this.readBuffer.buffer().position() == 0) {
+            this.readBuffer.release();
+            this.readBuffer = null;
+        }
+    }
+
+    private ReceiveBufferPredictor predictor() {
+        if (this.recvBufferPredictor == null) {
+            this.recvBufferPredictor = new ReceiveBufferPredictor(this.config.getRecvBufferMinSize(),
+                    this.config.getRecvBufferInitialSize(), this.config.getRecvBufferMaxSize(), RECV_BUFFER_SHRINK_AFTER);
+        }
+        return this.recvBufferPredictor;
+    }
+
+    /**
+     * 在这个会话所属的 reactor 线程中执行 task，可以在任何线程中调用。<br>
+     * 会话不是线程安全的：业务线程处理完信息之后，要通过这个方法回到 reactor 线程再写回响应
+     */
+    public void execute(Runnable task) {
+        this.reactor.execute(task);
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * 把 buffer（"读模式"）放入发送队列并尝试写出。写不完的部分留在队列中，等通道可写时继续写，
+     * 所以调用之后不要再修改 buffer
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        checkWritable();
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+        enqueue(buffer, buffer.remaining());
+    }
+
+    /**
+     * 把文件区域放入发送队列，排在之前写入的数据之后发送。
+     * 区域发送完成（或者连接关闭）之后由会话释放
+     */
+    public void write(NioFileRegion region) throws IOException {
+        if (this.closed || this.closeWhenFlushed) {
+            // 区域交给会话之后由会话负责释放，写入失败也一样
+            region.release();
+        }
+        checkWritable();
+        if (region.remaining() == 0) {
+            region.release();
+            return;
+        }
+        enqueue(region, region.remaining());
+    }
+
+    private void checkWritable() throws IOException {
+        if (this.closed || this.closeWhenFlushed) {
+            throw new IOException("端口：" + this.remotePort + " 的连接已经关闭（或者正在关闭），不能再写入");
+        }
+    }
+
+    private void enqueue(Object message, long size) throws IOException {
+        this.outbound.addLast(message);
+        this.pendingWriteBytes += size;
+        // 已经在等待 OP_WRITE 时，不需要马上再写一次（内核缓存区多半还是满的）
+        if ((this.key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * 发送队列中的数据写完之后关闭连接；队列已经空了就立即关闭。在此之后不再读取这个连接
+     */
+    public void closeWhenFlushed() {
+        if (this.closed) {
+            return;
+        }
+        if (this.outbound.isEmpty()) {
+            close();
+            return;
+        }
+        this.closeWhenFlushed = true;
+        this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    /**
+     * @return 发送队列中还没有写出的字节数
+     */
+    public long getPendingWriteBytes() {
+        return this.pendingWriteBytes;
+    }
+
+    /**
+     * 尽量写出发送队列中的数据（由 {@link #write(ByteBuffer)} 以及 reactor 在 OP_WRITE 事件时调用）。
+     * 队列头部连续的缓存区用一次 gathering write（最多 {@link #MAX_GATHERING_BUFFERS} 个）写出，
+     * 文件区域用 transferTo 发送；最多重复 {@link #WRITE_SPIN_COUNT} 次，
+     * 避免一个连接的大量数据长时间占用 reactor 线程
+     */
+    void flush() throws IOException {
+        SocketChannel channel = channel();
+        for (int spin = 0; spin < WRITE_SPIN_COUNT && !this.outbound.isEmpty(); spin++) {
+            long written;
+            Object first = this.outbound.peekFirst();
+            if (first instanceof NioFileRegion) {
+                NioFileRegion region = (NioFileRegion) first;
+                written = region.transferTo(channel);
+                if (region.isComplete()) {
+                    this.outbound.pollFirst();
+                    region.release();
+                }
+            } else {
+                written = writeBuffers(channel);
+            }
+            this.pendingWriteBytes -= written;
+            if (written == 0) {
+                // 内核的发送缓存区满了
+                break;
+            }
+        }
+        int interestOps = this.key.interestOps();
+        if (this.outbound.isEmpty()) {
+            if ((interestOps & SelectionKey.OP_WRITE) != 0) {
+                this.key.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+            }
+            if (this.closeWhenFlushed) {
+                close();
+            }
+        } else if ((interestOps & SelectionKey.OP_WRITE) == 0) {
+            this.key.interestOps(interestOps | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * 写出队列头部连续的缓存区（遇到文件区域为止），并移除已经完全写出的缓存区
+     */
+    private long writeBuffers(SocketChannel channel) throws IOException {
+        // gathering write 用的数组由 reactor 提供，所有连接共用，不需要每次分配
+        ByteBuffer[] buffers = this.reactor.getGatheringBuffers();
+        int count = 0;
+        for (Object message : this.outbound) {
+            if (!(message instanceof ByteBuffer) || count == buffers.length) {
+                break;
+            }
+            buffers[count++] = (ByteBuffer) message;
+        }
+        long written;
+        try {
+            written = count == 1 ? channel.write(buffers[0]) : channel.write(buffers, 0, count);
+        } finally {
+            Arrays.fill(buffers, 0, count, null);
+        }
+        while (!this.outbound.isEmpty() && this.outbound.peekFirst() instanceof ByteBuffer
+                && !((ByteBuffer) this.outbound.peekFirst()).hasRemaining()) {
+            this.outbound.pollFirst();
+        }
+        return written;
+    }
+
+    /**
+     * 由 reactor 在每次读事件之前调用
+     */
+    void markRead() {
+        this.lastReadNanos = System.nanoTime();
+        this.roundReadBytes = 0;
+        this.roundReadCalls = 0;
+    }
+
+    /**
+     * 循环读取的处理器每次 read 之后调用，记录这一轮读取的字节数和 read 次数。<br>
+     * 返回 false 时处理器应该停止读取并返回（已经读到的数据照常处理）：
+     * reactor 会暂时取消这个连接的 OP_READ，把它放到轮转队列的末尾，先处理其它就绪的连接，轮到它时再继续读。
+     * 通道中剩下的数据不会丢失，也不会饿死
+     * @param bytes 本次 read 读到的字节数
+     * @return 这一轮是否还可以继续读
+     */
+    public boolean spendReadBudget(int bytes) {
+        this.roundReadCalls++;
+        if (bytes > 0) {
+            this.roundReadBytes += bytes;
+        }
+        return !isReadBudgetExhausted();
+    }
+
+    boolean isReadBudgetExhausted() {
+        return (this.config.getReadBudgetReads() > 0 && this.roundReadCalls >= this.config.getReadBudgetReads())
+                || (this.config.getReadBudgetBytes() > 0 && this.roundReadBytes >= this.config.getReadBudgetBytes());
+    }
+
+    /**
+     * 读预算用完：取消 OP_READ，由 reactor 的轮转队列负责下一次读取（否则 selector 还会报告它就绪，同一轮被读两次）
+     */
+    void suspendRead() {
+        this.readSuspended = true;
+        this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    /**
+     * 通道中的数据读完了，重新交给 selector。已经在等待关闭（closeWhenFlushed）的连接不再读取
+     */
+    void resumeRead() {
+        this.readSuspended = false;
+        if (!this.closed && !this.closeWhenFlushed && this.key.isValid()) {
+            this.key.interestOps(this.key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    boolean isReadSuspended() {
+        return this.readSuspended;
+    }
+
+    /**
+     * @return 是否正在等待发送队列写完之后关闭（不再读取）
+     */
+    boolean isClosing() {
+        return this.closeWhenFlushed;
+    }
+
+    /**
+     * 处理器每次解码之后调用：是否还有收到一半的信息。
+     * 从 false 变为 true 时开始计时，变为 false 时取消计时
+     */
+    public void messageInProgress(boolean inProgress) {
+        if (this.closed || this.config.getMessageTimeoutMillis() <= 0) {
+            return;
+        }
+        if (inProgress && this.messageTimeout == null) {
+            this.messageTimeout = this.reactor.getTimingWheel().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    messageTimeout = null;
+                    logger.warn("端口：" + remotePort + " 的信息超过 " + config.getMessageTimeoutMillis() + "ms 还没有接收完整，关闭连接");
+                    close();
+                }
+            }, this.config.getMessageTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } else if (!inProgress && this.messageTimeout != null) {
+            this.messageTimeout.cancel();
+            this.messageTimeout = null;
+        }
+    }
+
+    /**
+     * 关闭连接：取消定时任务、归还读缓存区、通知处理器。重复调用没有影响
+     */
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.idleTimeout != null) {
+            this.idleTimeout.cancel();
+            this.idleTimeout = null;
+        }
+        if (this.messageTimeout != null) {
+            this.messageTimeout.cancel();
+            this.messageTimeout = null;
+        }
+        // 没有写出的数据直接丢弃，文件区域要释放
+        Object message;
+        while ((message = this.outbound.pollFirst()) != null) {
+            if (message instanceof NioFileRegion) {
+                ((NioFileRegion) message).release();
+            }
+        }
+        this.pendingWriteBytes = 0;
+        try {
+            this.key.channel().close();
+        } catch (IOException e) {
+            logger.warn("关闭端口：" + this.remotePort + " 的连接失败 : " + e.getMessage());
+        }
+        if (this.readBuffer != null) {
+            this.readBuffer.releaseIfNeeded();
+        }
+        this.reactor.connectionClosed();
+        try {
+            this.handler.channelClosed(this);
+        } catch (RuntimeException e) {
+            logger.error("释放端口：" + this.remotePort + " 的连接资源时出错 : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 空闲检查：到期时如果期间有过读取，就按剩余时间重新调度
+     */
+    private class IdleCheck implements Runnable {
+
+        @Override
+        public void run() {
+            idleTimeout = null;
+            if (closed) {
+                return;
+            }
+            long idleNanos = System.nanoTime() - lastReadNanos;
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+            if (idleNanos >= timeoutNanos) {
+                logger.warn("端口：" + remotePort + " 的连接空闲超过 " + config.getIdleTimeoutMillis() + "ms，关闭连接");
+                close();
+                return;
+            }
+            idleTimeout = reactor.getTimingWheel().schedule(this, timeoutNanos - idleNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
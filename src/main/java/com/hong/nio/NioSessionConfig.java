@@ -0,0 +1,122 @@
+package com.hong.nio;
+
+import com.hong.common.Configs;
+
+/**
+ * 连接（会话）的超时设置：<br>
+ * -Dnio.idleTimeoutMillis：连接上多久没有收到任何数据就关闭，默认 60000，0 表示不限制；<br>
+ * -Dnio.messageTimeoutMillis：一条信息从收到第一个字节开始，最多多久必须收完整，默认 10000，0 表示不限制。
+ * 用于防止 slowloris 这类客户端一点一点地发送数据，长期占用连接和缓存；<br>
+ * -Dnio.timer.tickMillis：时间轮的精度，默认 100；-Dnio.timer.ticksPerWheel：时间轮一圈的槽数，默认 512；<br>
+ * -Dnio.readBudget.bytes / -Dnio.readBudget.reads：一个连接每一轮最多读取多少字节、调用多少次 read，
+ * 默认 65536 字节、16 次，0 表示不限制。用完之后这一轮不再读这个连接，先轮流处理其它就绪的连接，
+ * 防止一个不停发送数据的客户端长期占用 selector 线程（见 {@link NioSession#spendReadBudget(int)}）；<br>
+ * -Dnio.recvBuffer.min / -Dnio.recvBuffer.initial / -Dnio.recvBuffer.max：自适应读缓存区的最小、初始、最大尺寸，
+ * 默认 64、1024、65536（见 {@link NioSession#read()}）。
+ */
+public class NioSessionConfig {
+
+    private final long idleTimeoutMillis;
+
+    private final long messageTimeoutMillis;
+
+    private final long tickMillis;
+
+    private final int ticksPerWheel;
+
+    private final int readBudgetBytes;
+
+    private final int readBudgetReads;
+
+    private final int recvBufferMinSize;
+
+    private final int recvBufferInitialSize;
+
+    private final int recvBufferMaxSize;
+
+    public NioSessionConfig(long idleTimeoutMillis, long messageTimeoutMillis, long tickMillis, int ticksPerWheel) {
+        this(idleTimeoutMillis, messageTimeoutMillis, tickMillis, ticksPerWheel, 64 * 1024, 16);
+    }
+
+    public NioSessionConfig(long idleTimeoutMillis, long messageTimeoutMillis, long tickMillis, int ticksPerWheel,
+                            int readBudgetBytes, int readBudgetReads) {
+        this(idleTimeoutMillis, messageTimeoutMillis, tickMillis, ticksPerWheel, readBudgetBytes, readBudgetReads, 64, 1024, 64 * 1024);
+    }
+
+    public NioSessionConfig(long idleTimeoutMillis, long messageTimeoutMillis, long tickMillis, int ticksPerWheel,
+                            int readBudgetBytes, int readBudgetReads,
+                            int recvBufferMinSize, int recvBufferInitialSize, int recvBufferMaxSize) {
+        if (idleTimeoutMillis < 0 || messageTimeoutMillis < 0 || tickMillis < 1 || ticksPerWheel < 1
+                || readBudgetBytes < 0 || readBudgetReads < 0
+                || recvBufferMinSize < 1 || recvBufferInitialSize < recvBufferMinSize || recvBufferMaxSize < recvBufferInitialSize) {
+            throw new IllegalArgumentException("会话参数不正确 : idle=" + idleTimeoutMillis + ", message=" + messageTimeoutMillis
+                    + ", tick=" + tickMillis + ", ticksPerWheel=" + ticksPerWheel
+                    + ", readBudgetBytes=" + readBudgetBytes + ", readBudgetReads=" + readBudgetReads
+                    + ", recvBuffer=" + recvBufferMinSize + "/" + recvBufferInitialSize + "/" + recvBufferMaxSize);
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.messageTimeoutMillis = messageTimeoutMillis;
+        this.tickMillis = tickMillis;
+        this.ticksPerWheel = ticksPerWheel;
+        this.readBudgetBytes = readBudgetBytes;
+        this.readBudgetReads = readBudgetReads;
+        this.recvBufferMinSize = recvBufferMinSize;
+        this.recvBufferInitialSize = recvBufferInitialSize;
+        this.recvBufferMaxSize = recvBufferMaxSize;
+    }
+
+    public static NioSessionConfig fromConfig() {
+        return new NioSessionConfig(
+                Configs.getLong("nio.idleTimeoutMillis", 60000),
+                Configs.getLong("nio.messageTimeoutMillis", 10000),
+                Configs.getLong("nio.timer.tickMillis", 100),
+                Configs.getInt("nio.timer.ticksPerWheel", 512),
+                Configs.getInt("nio.readBudget.bytes", 64 * 1024),
+                Configs.getInt("nio.readBudget.reads", 16),
+                Configs.getInt("nio.recvBuffer.min", 64),
+                Configs.getInt("nio.recvBuffer.initial", 1024),
+                Configs.getInt("nio.recvBuffer.max", 64 * 1024));
+    }
+
+    public long getIdleTimeoutMillis() {
+        return this.idleTimeoutMillis;
+    }
+
+    public long getMessageTimeoutMillis() {
+        return this.messageTimeoutMillis;
+    }
+
+    public long getTickMillis() {
+        return this.tickMillis;
+    }
+
+    public int getTicksPerWheel() {
+        return this.ticksPerWheel;
+    }
+
+    /**
+     * @return 每一轮最多读取的字节数，0 表示不限制
+     */
+    public int getReadBudgetBytes() {
+        return this.readBudgetBytes;
+    }
+
+    /**
+     * @return 每一轮最多调用 read 的次数，0 表示不限制
+     */
+    public int getReadBudgetReads() {
+        return this.readBudgetReads;
+    }
+
+    public int getRecvBufferMinSize() {
+        return this.recvBufferMinSize;
+    }
+
+    public int getRecvBufferInitialSize() {
+        return this.recvBufferInitialSize;
+    }
+
+    public int getRecvBufferMaxSize() {
+        return this.recvBufferMaxSize;
+    }
+}
@@ -0,0 +1,205 @@
+package com.hong.nio;
+
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameDecoder;
+import com.hong.common.transport.MessageContext;
+import com.hong.common.transport.MessageHandler;
+import com.hong.common.transport.Transport;
+import com.hong.common.transport.TransportConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 多路复用 IO 的传输层（-Dtransport=nio）：使用 {@link NioReactorServer} 引擎，
+ * 连接的读取、解码、发送队列都和 SocketServerNIO1 / SocketServerNIO2 一样。<br>
+ * 处理器默认交给分条业务线程池（{@link StripedExecutor}，同一个连接的信息按顺序处理），处理完之后回到 reactor 线程写回响应；
+ * -Dnio.business.stripes=0 时在 selector 线程中直接调用处理器。<br>
+ * 其它参数：-Dnio.reactors、-Dnio.reactor.assign、-Dnio.idleTimeoutMillis 等，见 {@link NioReactorServer}、{@link NioSessionConfig}。
+ */
+public class NioTransport implements Transport {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioTransport.class);
+
+    private NioReactorServer server;
+
+    private StripedExecutor executor;
+
+    @Override
+    public String name() {
+        return "nio";
+    }
+
+    @Override
+    public InetSocketAddress start(TransportConfig config, MessageHandler handler) throws IOException {
+        if (this.server != null) {
+            throw new IllegalStateException("NioTransport 已经启动");
+        }
+        this.executor = StripedExecutor.fromConfig("NioTransport-business");
+        this.server = NioReactorServer.fromConfig("NioTransport", new TransportChannelHandler(config, handler, this.executor));
+        this.server.bind(config.getAddress()).start();
+        return this.server.getLocalAddress();
+    }
+
+    @Override
+    public void stop() {
+        if (this.server != null) {
+            this.server.shutdown();
+        }
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    /**
+     * 把 reactor 的读事件转换成对 {@link MessageHandler} 的调用
+     */
+    private static class TransportChannelHandler implements NioChannelHandler {
+
+        private final TransportConfig config;
+
+        private final FrameCodec codec;
+
+        private final MessageHandler handler;
+
+        private final StripedExecutor executor;
+
+        TransportChannelHandler(TransportConfig config, MessageHandler handler, StripedExecutor executor) {
+            this.config = config;
+            this.codec = config.getCodec();
+            this.handler = handler;
+            this.executor = executor;
+        }
+
+        @Override
+        public void registerSocketChannel(NioSession session) throws IOException {
+            session.setAttachment(new Connection(this.codec.newDecoder(),
+                    new MessageContext("nio", (InetSocketAddress) session.channel().getRemoteAddress())));
+        }
+
+        @Override
+        public void readSocketChannel(final NioSession session) throws IOException {
+            final Connection connection = session.getAttachment();
+            if (session.read() == -1) {
+                session.close();
+                return;
+            }
+            ByteBuffer readBuffer = session.getReadBuffer().buffer();
+            readBuffer.flip();
+            if (connection.finished) {
+                // 已经处理完一条信息、等待关闭的连接，后面到达的数据直接丢弃
+                readBuffer.clear();
+                return;
+            }
+            List<Frame> frames = new ArrayList<>();
+            try {
+                connection.decoder.decode(readBuffer, frames);
+            } catch (IOException e) {
+                logger.error("端口：" + session.getRemotePort() + "客户端发来的数据格式错误 : " + e.getMessage());
+                session.close();
+                return;
+            } finally {
+                readBuffer.clear();
+            }
+            // 还有收到一半的信息时开始计时，超过 -Dnio.messageTimeoutMillis 还没有收完整就关闭连接
+            session.messageInProgress(connection.decoder.hasPartialFrame());
+
+            for (final Frame frame : frames) {
+                if (this.executor == null) {
+                    reply(session, handle(session, connection, frame));
+                } else {
+                    try {
+                        this.executor.execute(session, new Runnable() {
+                            @Override
+                            public void run() {
+                                final Frame response = handle(session, connection, frame);
+                                session.execute(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        reply(session, response);
+                                    }
+                                });
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        logger.warn("业务线程池已满，关闭端口：" + session.getRemotePort() + "的连接");
+                        session.close();
+                        return;
+                    }
+                }
+                if (this.config.isCloseAfterReply()) {
+                    // 一个连接只处理一条信息，后面的信息（如果有的话）不再处理
+                    connection.finished = true;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 调用处理器，处理失败时关闭连接（可能在业务线程中调用）
+         * @return 响应；处理失败时返回 null
+         */
+        private Frame handle(final NioSession session, Connection connection, Frame frame) {
+            try {
+                return this.handler.handle(connection.context, frame);
+            } catch (Exception e) {
+                logger.error("端口：" + session.getRemotePort() + "的信息处理失败 : " + e.getMessage(), e);
+                session.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        session.close();
+                    }
+                });
+                return null;
+            }
+        }
+
+        /**
+         * 在 reactor 线程中写回响应
+         */
+        private void reply(NioSession session, Frame response) {
+            if (session.isClosed()) {
+                return;
+            }
+            try {
+                if (response != null) {
+                    session.write(this.codec.encode(response));
+                }
+                if (this.config.isCloseAfterReply()) {
+                    // 写不完的部分由 reactor 在通道可写时继续写，全部写完之后才关闭连接
+                    session.closeWhenFlushed();
+                }
+            } catch (IOException e) {
+                logger.error("端口：" + session.getRemotePort() + "回发响应失败 : " + e.getMessage());
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * 每个连接的解码器（保存还不完整的信息）和信息来源
+     */
+    private static class Connection {
+
+        private final FrameDecoder decoder;
+
+        private final MessageContext context;
+
+        /**
+         * closeAfterReply 时已经交出了一条信息（只在 reactor 线程中访问）
+         */
+        private boolean finished;
+
+        Connection(FrameDecoder decoder, MessageContext context) {
+            this.decoder = decoder;
+            this.context = context;
+        }
+    }
+}
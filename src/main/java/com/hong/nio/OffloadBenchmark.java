@@ -0,0 +1,206 @@
+package com.hong.nio;
+
+import com.hong.common.Configs;
+import com.hong.common.bench.BenchmarkSupport;
+import com.hong.common.buffer.BufferPool;
+import com.hong.common.bench.LatencyRecorder;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameDecoder;
+import com.hong.common.codec.LengthFieldFrameCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较业务处理在 selector 线程中直接执行（inline）和交给分条业务线程池（striped）时，快请求的尾延迟。<br>
+ * 服务器只有一个 reactor（单线程模式），业务处理中有 -Dbench.slowPercent 的请求会阻塞 -Dbench.slowMillis 毫秒（模拟慢查询）。
+ * inline 模式下慢请求会阻塞同一个 selector 上的所有连接，快请求的 p99 接近慢请求的耗时；
+ * striped 模式下只会影响和它在同一条 stripe 上的连接。<br>
+ * 客户端使用长连接，每个连接一问一答。服务器和客户端运行在同一个 JVM 中，服务器监听随机端口。<br>
+ * 参数：-Dbench.modes（默认 inline,striped）、-Dbench.clients（默认 64）、-Dbench.seconds（默认 5）、
+ * -Dbench.slowPercent（默认 2）、-Dbench.slowMillis（默认 20）、-Dnio.business.stripes（默认 max(8, 2 × CPU 核数)）、
+ * -Dnio.business.queueCapacity（默认 1024）。
+ */
+public class OffloadBenchmark {
+
+    private static final FrameCodec CODEC = new LengthFieldFrameCodec(1024 * 1024);
+
+    private static final BufferPool BUFFER_POOL = BufferPool.getDefault();
+
+    private static final byte FAST = 'F';
+
+    private static final byte SLOW = 'S';
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkSupport.quietLogging();
+        String[] modes = Configs.getString("bench.modes", "inline,striped").split(",");
+        int clients = Configs.getInt("bench.clients", 64);
+        int seconds = Configs.getInt("bench.seconds", 5);
+        int slowPercent = Configs.getInt("bench.slowPercent", 2);
+        int slowMillis = Configs.getInt("bench.slowMillis", 20);
+
+        System.out.println("客户端：" + clients + "，每个模式 " + seconds + " 秒，慢请求 " + slowPercent + "%（" + slowMillis + "ms）");
+        for (String mode : modes) {
+            String name = mode.trim();
+            StripedExecutor executor = "striped".equals(name) ? StripedExecutor.fromConfig("OffloadBenchmark-business") : null;
+            run(name, executor, clients, seconds, slowPercent, slowMillis);
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static void run(String mode, StripedExecutor executor, int clients, int seconds,
+                            final int slowPercent, int slowMillis) throws Exception {
+        NioReactorServer server = new NioReactorServer("OffloadBenchmark-" + mode, 0, NioReactorServer.AssignPolicy.ROUND_ROBIN,
+                NioSessionConfig.fromConfig(), new BenchmarkHandler(executor, slowMillis));
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        final int port = server.getLocalAddress().getPort();
+
+        final LatencyRecorder fastRecorder = new LatencyRecorder(100000);
+        final LatencyRecorder slowRecorder = new LatencyRecorder(10000);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch finished = new CountDownLatch(clients);
+        for (int index = 0; index < clients; index++) {
+            final long seed = index;
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runClient(port, deadline, new Random(seed), slowPercent, fastRecorder, slowRecorder);
+                    } catch (IOException e) {
+                        System.out.println("客户端出错 : " + e.getMessage());
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "OffloadBenchmark-client-" + index);
+            client.setDaemon(true);
+            client.start();
+        }
+        finished.await();
+        server.shutdown();
+
+        int total = fastRecorder.count() + slowRecorder.count();
+        System.out.println(String.format("%-8s 吞吐量 %.0f 次/秒", mode, (double) total / seconds)
+                + (executor == null ? "" : "，拒绝 " + executor.getRejectedCount() + " 次"));
+        System.out.println("         快请求 " + fastRecorder.summary());
+        System.out.println("         慢请求 " + slowRecorder.summary());
+    }
+
+    private static void runClient(int port, long deadline, Random random, int slowPercent,
+                                  LatencyRecorder fastRecorder, LatencyRecorder slowRecorder) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            FrameDecoder decoder = CODEC.newDecoder();
+            List<Frame> frames = new ArrayList<>();
+            byte[] buffer = new byte[256];
+            while (System.nanoTime() < deadline) {
+                boolean slow = random.nextInt(100) < slowPercent;
+                byte[] request = CODEC.encodeToBytes(new byte[]{slow ? SLOW : FAST});
+                long startNanos = System.nanoTime();
+                out.write(request);
+                frames.clear();
+                while (frames.isEmpty()) {
+                    int realLen = in.read(buffer);
+                    if (realLen == -1) {
+                        return;
+                    }
+                    decoder.decode(buffer, 0, realLen, frames);
+                }
+                (slow ? slowRecorder : fastRecorder).record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * 长连接、一问一答的处理器：收到 'S' 时模拟一次慢的业务处理
+     */
+    private static class BenchmarkHandler implements NioChannelHandler {
+
+        private final StripedExecutor executor;
+
+        private final int slowMillis;
+
+        BenchmarkHandler(StripedExecutor executor, int slowMillis) {
+            this.executor = executor;
+            this.slowMillis = slowMillis;
+        }
+
+        @Override
+        public void registerSocketChannel(NioSession session) throws IOException {
+            session.setReadBuffer(BUFFER_POOL.acquire(256));
+            session.setAttachment(CODEC.newDecoder());
+        }
+
+        @Override
+        public void readSocketChannel(final NioSession session) throws IOException {
+            ByteBuffer readBuffer = session.getReadBuffer().buffer();
+            if (session.channel().read(readBuffer) == -1) {
+                session.close();
+                return;
+            }
+            readBuffer.flip();
+            List<Frame> frames = new ArrayList<>();
+            FrameDecoder decoder = session.getAttachment();
+            decoder.decode(readBuffer, frames);
+            readBuffer.clear();
+            for (final Frame frame : frames) {
+                if (this.executor == null) {
+                    session.write(handle(frame));
+                    continue;
+                }
+                try {
+                    this.executor.execute(session, new Runnable() {
+                        @Override
+                        public void run() {
+                            final ByteBuffer response = handle(frame);
+                            session.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        if (!session.isClosed()) {
+                                            session.write(response);
+                                        }
+                                    } catch (IOException e) {
+                                        session.close();
+                                    }
+                                }
+                            });
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    session.close();
+                    return;
+                }
+            }
+        }
+
+        private ByteBuffer handle(Frame frame) {
+            byte type = frame.getPayload().get();
+            if (type == SLOW) {
+                try {
+                    Thread.sleep(this.slowMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return CODEC.encode(new byte[]{type});
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.hong.nio;
+
+import com.hong.common.Configs;
+import com.hong.common.bench.BenchmarkSupport;
+import com.hong.common.bench.LatencyRecorder;
+import com.hong.common.buffer.BufferPool;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameDecoder;
+import com.hong.common.codec.LengthFieldFrameCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 比较不限制读取量（unbounded，原来 SocketServerNIO2 的 while (read != 0)）和按预算轮流读取（budget）时，
+ * 和大量上传数据的连接共用一个 selector 的交互式小请求的延迟。<br>
+ * 服务器只有一个 reactor，处理器和 SocketServerNIO2 一样循环读取直到通道中没有数据。
+ * -Dbench.bulkClients 个客户端不停地上传大帧（不需要响应），-Dbench.clients 个客户端在长连接上一问一答地发送 1 字节的请求。<br>
+ * 参数：-Dbench.modes（默认 unbounded,budget）、-Dbench.bulkClients（默认 4）、-Dbench.clients（默认 16）、
+ * -Dbench.seconds（默认 5）、-Dbench.bulkFrameBytes（默认 256KB）、-Dnio.readBudget.bytes / -Dnio.readBudget.reads（budget 模式的预算）。
+ */
+public class ReadFairnessBenchmark {
+
+    private static final FrameCodec CODEC = new LengthFieldFrameCodec(16 * 1024 * 1024);
+
+    private static final BufferPool BUFFER_POOL = BufferPool.getDefault();
+
+    private static final byte PING = 'P';
+
+    private static final byte BULK = 'B';
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkSupport.quietLogging();
+        String[] modes = Configs.getString("bench.modes", "unbounded,budget").split(",");
+        int bulkClients = Configs.getInt("bench.bulkClients", 4);
+        int clients = Configs.getInt("bench.clients", 16);
+        int seconds = Configs.getInt("bench.seconds", 5);
+        int bulkFrameBytes = Configs.getInt("bench.bulkFrameBytes", 256 * 1024);
+
+        NioSessionConfig budgetConfig = NioSessionConfig.fromConfig();
+        System.out.println("上传客户端：" + bulkClients + "（每帧 " + bulkFrameBytes + " 字节），交互式客户端：" + clients
+                + "，每个模式 " + seconds + " 秒，预算：" + budgetConfig.getReadBudgetBytes() + " 字节 / "
+                + budgetConfig.getReadBudgetReads() + " 次 read");
+        for (String mode : modes) {
+            String name = mode.trim();
+            NioSessionConfig config = "unbounded".equals(name)
+                    ? new NioSessionConfig(0, 0, budgetConfig.getTickMillis(), budgetConfig.getTicksPerWheel(), 0, 0)
+                    : new NioSessionConfig(0, 0, budgetConfig.getTickMillis(), budgetConfig.getTicksPerWheel(),
+                    budgetConfig.getReadBudgetBytes(), budgetConfig.getReadBudgetReads());
+            run(name, config, bulkClients, clients, seconds, bulkFrameBytes);
+        }
+    }
+
+    private static void run(String mode, NioSessionConfig config, int bulkClients, int clients, int seconds,
+                            final int bulkFrameBytes) throws Exception {
+        BenchmarkHandler handler = new BenchmarkHandler();
+        NioReactorServer server = new NioReactorServer("ReadFairnessBenchmark-" + mode, 0, NioReactorServer.AssignPolicy.ROUND_ROBIN,
+                config, handler);
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        final int port = server.getLocalAddress().getPort();
+
+        final LatencyRecorder recorder = new LatencyRecorder(100000);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch finished = new CountDownLatch(bulkClients + clients);
+        for (int index = 0; index < bulkClients + clients; index++) {
+            final boolean bulk = index < bulkClients;
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (bulk) {
+                            runBulkClient(port, deadline, bulkFrameBytes);
+                        } else {
+                            runPingClient(port, deadline, recorder);
+                        }
+                    } catch (IOException e) {
+                        System.out.println("客户端出错 : " + e.getMessage());
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "ReadFairnessBenchmark-client-" + index);
+            client.setDaemon(true);
+            client.start();
+        }
+        finished.await();
+        server.shutdown();
+
+        System.out.println(String.format("%-10s 上传吞吐量 %.1f MB/s，交互请求 %.0f 次/秒", mode,
+                handler.bulkBytes.get() / 1024.0 / 1024.0 / seconds, (double) recorder.count() / seconds));
+        System.out.println("           交互请求 " + recorder.summary());
+    }
+
+    private static void runBulkClient(int port, long deadline, int bulkFrameBytes) throws IOException {
+        byte[] payload = new byte[bulkFrameBytes];
+        byte[] frame = CODEC.encodeToBytes(payload);
+        // 负载的第一个字节就是业务类型
+        frame[frame.length - bulkFrameBytes] = BULK;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            while (System.nanoTime() < deadline) {
+                out.write(frame);
+            }
+        }
+    }
+
+    private static void runPingClient(int port, long deadline, LatencyRecorder recorder) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            FrameDecoder decoder = CODEC.newDecoder();
+            List<Frame> frames = new ArrayList<>();
+            byte[] request = CODEC.encodeToBytes(new byte[]{PING});
+            byte[] buffer = new byte[256];
+            while (System.nanoTime() < deadline) {
+                long startNanos = System.nanoTime();
+                out.write(request);
+                frames.clear();
+                while (frames.isEmpty()) {
+                    int realLen = in.read(buffer);
+                    if (realLen == -1) {
+                        return;
+                    }
+                    decoder.decode(buffer, 0, realLen, frames);
+                }
+                recorder.record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * 和 SocketServerNIO2 一样循环读取，直到通道中没有数据或者预算用完；PING 原样回发，上传的数据只计数
+     */
+    private static class BenchmarkHandler implements NioChannelHandler {
+
+        private final AtomicLong bulkBytes = new AtomicLong();
+
+        @Override
+        public void registerSocketChannel(NioSession session) throws IOException {
+            session.setReadBuffer(BUFFER_POOL.acquire(64 * 1024));
+            session.setAttachment(CODEC.newDecoder());
+        }
+
+        @Override
+        public void readSocketChannel(NioSession session) throws IOException {
+            SocketChannel channel = session.channel();
+            ByteBuffer readBuffer = session.getReadBuffer().buffer();
+            FrameDecoder decoder = session.getAttachment();
+            List<Frame> frames = new ArrayList<>();
+            int realLen;
+            while ((realLen = channel.read(readBuffer)) != 0) {
+                if (realLen == -1) {
+                    session.close();
+                    return;
+                }
+                readBuffer.flip();
+                decoder.decode(readBuffer, frames);
+                readBuffer.clear();
+                for (Frame frame : frames) {
+                    if (frame.getPayload().get() == PING) {
+                        session.write(CODEC.encode(new byte[]{PING}));
+                    } else {
+                        this.bulkBytes.addAndGet(frame.getPayloadLength());
+                    }
+                }
+                frames.clear();
+                if (!session.spendReadBudget(realLen)) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hong.nio;
+
+import com.hong.common.Configs;
+import com.hong.common.bench.BenchmarkSupport;
+import com.hong.common.codec.CodecException;
+import com.hong.common.codec.DelimiterFrameCodec;
+import com.hong.common.codec.Frame;
+import com.hong.common.codec.FrameCodec;
+import com.hong.common.codec.FrameCodecs;
+import com.hong.common.codec.FrameDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 比较 SocketServerNIO2 读取路径上每条信息分配的堆内存（字节）：<br>
+ * 1、string：最初的写法，每次 read 之后 new byte[capacity]，再 new String 追加到 StringBuffer 中；<br>
+ * 2、copy：每次 read 之后 new byte[capacity]，再交给解码器（上一个版本的写法）；<br>
+ * 3、direct：把读缓存区直接交给解码器，解码器只把字节追加到自己的可增长缓存中，完整的帧是这个缓存的只读视图。<br>
+ * 不经过网络：把一条信息按读缓存区的大小切成小块，模拟一次次的 read，只测量读取和分帧本身。
+ * 内存用 ThreadMXBean.getThreadAllocatedBytes 统计（HotSpot 支持）。<br>
+ * 参数：-Dbench.messageSize（默认 1048576）、-Dbench.bufferSize（默认 50，和 SocketServerNIO2 一致）、
+ * -Dbench.messages（默认 50）、-Dbench.paths（默认 string,copy,direct）、-Dcodec（默认 delimiter）。
+ */
+public class ReadPathAllocationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkSupport.quietLogging();
+        int messageSize = Configs.getInt("bench.messageSize", 1024 * 1024);
+        int bufferSize = Configs.getInt("bench.bufferSize", 50);
+        int messages = Configs.getInt("bench.messages", 50);
+        String[] paths = Configs.getString("bench.paths", "string,copy,direct").split(",");
+        FrameCodec codec = FrameCodecs.fromConfig();
+
+        byte[] payload = newPayload(messageSize);
+        if (codec instanceof DelimiterFrameCodec) {
+            // 这种协议由发送方自己带上结束标记
+            byte[] delimiter = ((DelimiterFrameCodec) codec).getDelimiter();
+            System.arraycopy(delimiter, 0, payload, payload.length - delimiter.length, delimiter.length);
+        }
+        ByteBuffer encoded = codec.encode(payload);
+        byte[] wire = new byte[encoded.remaining()];
+        encoded.get(wire);
+        if (BenchmarkSupport.currentThreadAllocatedBytes() < 0) {
+            System.out.println("当前 JVM 不支持统计线程分配的内存，只输出耗时");
+        }
+        System.out.println("codec=" + codec.name() + "，信息大小：" + messageSize + " 字节，读缓存区：" + bufferSize + " 字节");
+        for (String path : paths) {
+            String name = path.trim();
+            // 预热一轮，让 JIT 编译完成
+            run(name, codec, wire, bufferSize, Math.max(1, messages / 5));
+            long allocatedBefore = BenchmarkSupport.currentThreadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            run(name, codec, wire, bufferSize, messages);
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long allocated = BenchmarkSupport.currentThreadAllocatedBytes() - allocatedBefore;
+            System.out.println(String.format("%-7s 每条信息分配 %,d 字节（%.2f 倍信息大小），平均耗时 %.2fms",
+                    name, allocated / messages, (double) allocated / messages / messageSize,
+                    elapsedNanos / 1e6 / messages));
+        }
+    }
+
+    private static byte[] newPayload(int size) {
+        byte[] payload = new byte[size];
+        for (int index = 0; index < size; index++) {
+            payload[index] = (byte) ('a' + index % 26);
+        }
+        return payload;
+    }
+
+    private static void run(String path, FrameCodec codec, byte[] wire, int bufferSize, int messages) throws CodecException {
+        // 和 SocketServerNIO2 一样，读缓存区是 direct 的
+        ByteBuffer contextBytes = ByteBuffer.allocateDirect(bufferSize);
+        List<Frame> frames = new ArrayList<>();
+        for (int message = 0; message < messages; message++) {
+            FrameDecoder decoder = codec.newDecoder();
+            StringBuffer messageBuffer = new StringBuffer();
+            frames.clear();
+            int offset = 0;
+            while (offset < wire.length) {
+                // 模拟一次 read
+                int realLen = Math.min(bufferSize, wire.length - offset);
+                contextBytes.put(wire, offset, realLen);
+                offset += realLen;
+                contextBytes.flip();
+                if ("direct".equals(path)) {
+                    decoder.decode(contextBytes, frames);
+                } else {
+                    byte[] messageBytes = new byte[contextBytes.capacity()];
+                    contextBytes.get(messageBytes, 0, realLen);
+                    if ("string".equals(path)) {
+                        messageBuffer.append(new String(messageBytes, 0, realLen));
+                    } else {
+                        decoder.decode(messageBytes, 0, realLen, frames);
+                    }
+                }
+                contextBytes.clear();
+            }
+            if ("string".equals(path) ? messageBuffer.length() == 0 : frames.size() != 1) {
+                throw new IllegalStateException(path + " 没有得到完整的信息");
+            }
+        }
+    }
+}
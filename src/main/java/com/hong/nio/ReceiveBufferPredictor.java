@@ -0,0 +1,72 @@
+package com.hong.nio;
+
+/**
+ * 预测一个连接下一次读取需要多大的缓存区（和 Netty 的 AdaptiveRecvByteBufAllocator 思路一样）：<br>
+ * 1、一次 read 把缓存区读满了，说明通道中可能还有数据，下次使用大一级（2 倍）的缓存区，减少系统调用的次数；<br>
+ * 2、连续 shrinkAfter 次读到的数据都放得进小一级的缓存区，下次使用小一级的缓存区，减少内存占用。
+ * 缩小要连续多次才生效，偶尔一次小的读取不会让缓存区来回抖动。<br>
+ * 尺寸按 2 的幂分级，和 BufferPool 的尺寸级别一致。只在连接所属的 reactor 线程中使用。
+ */
+class ReceiveBufferPredictor {
+
+    private final int minShift;
+
+    private final int maxShift;
+
+    private final int shrinkAfter;
+
+    private int shift;
+
+    private int smallReads;
+
+    /**
+     * @param minSize / initialSize / maxSize 都向上取整到 2 的幂
+     * @param shrinkAfter 连续多少次小的读取之后缩小一级
+     */
+    ReceiveBufferPredictor(int minSize, int initialSize, int maxSize, int shrinkAfter) {
+        this.minShift = shiftOf(minSize);
+        this.maxShift = shiftOf(maxSize);
+        this.shift = Math.max(this.minShift, Math.min(this.maxShift, shiftOf(initialSize)));
+        this.shrinkAfter = shrinkAfter;
+    }
+
+    /**
+     * @return 下一次读取应该使用的缓存区大小
+     */
+    int nextSize() {
+        return 1 << this.shift;
+    }
+
+    /**
+     * 记录一次读取
+     * @param bytes 读到的字节数（0 和 -1 不记录）
+     * @param capacity 这次读取使用的缓存区的可用空间
+     */
+    void record(int bytes, int capacity) {
+        if (bytes <= 0) {
+            return;
+        }
+        if (bytes >= capacity) {
+            this.smallReads = 0;
+            if (this.shift < this.maxShift) {
+                this.shift++;
+            }
+            return;
+        }
+        if (this.shift > this.minShift && bytes <= 1 << (this.shift - 1)) {
+            if (++this.smallReads >= this.shrinkAfter) {
+                this.shift--;
+                this.smallReads = 0;
+            }
+        } else {
+            this.smallReads = 0;
+        }
+    }
+
+    private static int shiftOf(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("缓存区大小不正确 : " + size);
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+}
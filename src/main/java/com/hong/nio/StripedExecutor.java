@@ -0,0 +1,119 @@
+package com.hong.nio;
+
+import com.hong.common.Configs;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分条（striped）、保序的业务线程池：把业务处理从 selector 线程上拿走。<br>
+ * 线程池由若干条 "stripe" 组成，每条 stripe 是一个单线程加一个有界队列。
+ * 同一个 key（例如同一个 {@link NioSession}）的任务总是交给同一条 stripe，所以一个连接的信息按到达顺序依次处理；
+ * 不同连接的任务分散在不同的 stripe 上并行处理，一个慢的业务处理只会阻塞和它在同一条 stripe 上的连接，不会阻塞 selector。<br>
+ * 队列满了直接拒绝（抛出 RejectedExecutionException），由调用方决定怎么处理（例如关闭连接）：
+ * selector 线程绝对不能等待业务线程。<br>
+ * 参数：-Dnio.business.stripes（stripe 条数，默认 max(8, 2 × CPU 核数)：业务处理经常会阻塞（查询数据库、调用其它服务），
+ * 只按 CPU 核数设置时，一个慢请求会拖住太多的连接；0 表示不使用业务线程池，在 selector 线程中直接处理）、
+ * -Dnio.business.queueCapacity（每条 stripe 的队列长度，默认 1024）。
+ */
+public class StripedExecutor {
+
+    private final String name;
+
+    private final ThreadPoolExecutor[] stripes;
+
+    private final int queueCapacity;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public StripedExecutor(String name, int stripeCount, int queueCapacity) {
+        if (stripeCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("业务线程池参数不正确 : stripes=" + stripeCount + ", queueCapacity=" + queueCapacity);
+        }
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.stripes = new ThreadPoolExecutor[stripeCount];
+        for (int index = 0; index < stripeCount; index++) {
+            final String threadName = name + "-stripe-" + index;
+            this.stripes[index] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * @return 按照 -Dnio.business.* 创建的线程池；stripe 条数为 0 时返回 null（不使用业务线程池）
+     */
+    public static StripedExecutor fromConfig(String name) {
+        int stripeCount = Configs.getInt("nio.business.stripes", Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+        if (stripeCount == 0) {
+            return null;
+        }
+        return new StripedExecutor(name, stripeCount, Configs.getInt("nio.business.queueCapacity", 1024));
+    }
+
+    /**
+     * 把任务交给 key 对应的 stripe，同一个 key 的任务按提交顺序依次执行
+     * @throws RejectedExecutionException 这条 stripe 的队列已满，或者线程池已经关闭
+     */
+    public void execute(Object key, Runnable task) {
+        try {
+            this.stripes[stripeOf(key)].execute(task);
+        } catch (RejectedExecutionException e) {
+            this.rejectedCount.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private int stripeOf(Object key) {
+        // identityHashCode 的低位分布不一定均匀，先打散再取模
+        int hash = System.identityHashCode(key);
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return (hash & Integer.MAX_VALUE) % this.stripes.length;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getStripeCount() {
+        return this.stripes.length;
+    }
+
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    /**
+     * @return 所有 stripe 中排队等待的任务数
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor stripe : this.stripes) {
+            depth += stripe.getQueue().size();
+        }
+        return depth;
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor stripe : this.stripes) {
+            stripe.shutdown();
+        }
+    }
+}
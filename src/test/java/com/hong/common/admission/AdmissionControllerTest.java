@@ -0,0 +1,157 @@
+package com.hong.common.admission;
+
+import com.hong.common.admission.AdmissionController.RejectReason;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControllerTest {
+
+    private static AdmissionController rateLimited(double rate, int burst) {
+        return new AdmissionController("test", rate, burst, 0, 0, 0, 50, 100);
+    }
+
+    private static AdmissionController connectionLimited(int maxConnections) {
+        return new AdmissionController("test", 0, 0, maxConnections, 0, 0, 50, 100);
+    }
+
+    /**
+     * 速率 10/s：一个令牌要 100 毫秒，测试中两次 tryAdmit 之间补充的令牌远小于 1
+     */
+    @Test
+    public void tokenBucketRefillsAtConfiguredRate() throws InterruptedException {
+        AdmissionController controller = rateLimited(10, 2);
+        assertNull(controller.tryAdmit());
+        assertNull(controller.tryAdmit());
+        assertEquals(RejectReason.RATE_LIMITED, controller.tryAdmit());
+        assertEquals(RejectReason.RATE_LIMITED, controller.check());
+        assertEquals(1, controller.getRateLimitedCount());
+        // 因为速率暂停时，等到下一个令牌产生
+        long pauseMillis = controller.getPauseMillis(RejectReason.RATE_LIMITED);
+        assertTrue(String.valueOf(pauseMillis), pauseMillis > 50 && pauseMillis <= 100);
+
+        Thread.sleep(pauseMillis + 20);
+        assertNull(controller.check());
+        assertNull(controller.tryAdmit());
+        assertEquals(RejectReason.RATE_LIMITED, controller.tryAdmit());
+        assertEquals(3, controller.getAdmittedCount());
+        // 速率限制失败时不占用连接名额
+        assertEquals(3, controller.getActiveConnections());
+    }
+
+    @Test
+    public void tokenBucketNeverExceedsBurst() throws InterruptedException {
+        AdmissionController controller = rateLimited(10, 2);
+        Thread.sleep(400);
+        assertNull(controller.tryAdmit());
+        assertNull(controller.tryAdmit());
+        assertEquals(RejectReason.RATE_LIMITED, controller.tryAdmit());
+    }
+
+    @Test
+    public void maxConnectionsLimitsActiveConnections() {
+        AdmissionController controller = connectionLimited(2);
+        assertNull(controller.tryAdmit());
+        assertNull(controller.tryAdmit());
+        assertEquals(RejectReason.TOO_MANY_CONNECTIONS, controller.tryAdmit());
+        assertEquals(RejectReason.TOO_MANY_CONNECTIONS, controller.check());
+        assertEquals(1, controller.getConnectionLimitedCount());
+        assertEquals(50, controller.getPauseMillis(RejectReason.TOO_MANY_CONNECTIONS));
+
+        controller.connectionClosed();
+        assertEquals(1, controller.getActiveConnections());
+        assertNull(controller.tryAdmit());
+        assertEquals(RejectReason.TOO_MANY_CONNECTIONS, controller.tryAdmit());
+        assertEquals(3, controller.getAdmittedCount());
+    }
+
+    /**
+     * 多个线程同时 tryAdmit：CAS 保证成功的次数正好是 maxConnections，活跃连接数不会超过上限
+     */
+    @Test
+    public void concurrentAdmissionsNeverExceedMaxConnections() throws InterruptedException {
+        final int maxConnections = 50;
+        final AdmissionController controller = connectionLimited(maxConnections);
+        final AtomicInteger admitted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int index = 0; index < threads.length; index++) {
+            threads[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int attempt = 0; attempt < 1000; attempt++) {
+                        if (controller.tryAdmit() == null) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[index].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(maxConnections, admitted.get());
+        assertEquals(maxConnections, controller.getActiveConnections());
+        assertEquals(maxConnections, controller.getAdmittedCount());
+        assertEquals(threads.length * 1000 - maxConnections, controller.getConnectionLimitedCount());
+    }
+
+    /**
+     * 没有 accept 到连接时归还名额和令牌：连接名额、令牌都只有一个，归还之后可以再次准入
+     */
+    @Test
+    public void cancelAdmissionRefundsSlotAndToken() {
+        AdmissionController controller = new AdmissionController("test", 0.001, 1, 1, 0, 0, 50, 100);
+        assertNull(controller.tryAdmit());
+        assertEquals(RejectReason.TOO_MANY_CONNECTIONS, controller.tryAdmit());
+
+        controller.cancelAdmission();
+        assertEquals(0, controller.getActiveConnections());
+        assertEquals(0, controller.getAdmittedCount());
+        assertNull(controller.tryAdmit());
+        assertEquals(1, controller.getActiveConnections());
+
+        // 连接关闭只归还名额，不归还令牌
+        controller.connectionClosed();
+        assertEquals(RejectReason.RATE_LIMITED, controller.tryAdmit());
+        assertEquals(0, controller.getActiveConnections());
+    }
+
+    /**
+     * tryAdmit 和 cancelAdmission 之间令牌桶已经补满了，归还的令牌不会超过令牌桶的容量
+     */
+    @Test
+    public void cancelAdmissionDoesNotOverfillBucket() throws InterruptedException {
+        AdmissionController controller = rateLimited(10, 1);
+        assertNull(controller.tryAdmit());
+        Thread.sleep(150);
+        controller.cancelAdmission();
+        assertNull(controller.tryAdmit());
+        assertEquals(RejectReason.RATE_LIMITED, controller.tryAdmit());
+        assertEquals(1, controller.getActiveConnections());
+    }
+
+    @Test
+    public void heapPressurePausesAdmission() {
+        AdmissionController controller = new AdmissionController("test", 0, 0, 0, 1e-9, 0, 50, 0);
+        assertEquals(RejectReason.HEAP_PRESSURE, controller.tryAdmit());
+        assertEquals(0, controller.getActiveConnections());
+        assertEquals(1, controller.getHeapPressureCount());
+        assertTrue(controller.getHeapUsageRatio() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRateWithoutBurst() {
+        rateLimited(10, 0);
+    }
+}
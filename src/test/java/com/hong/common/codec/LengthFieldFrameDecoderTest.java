@@ -0,0 +1,110 @@
+package com.hong.common.codec;
+
+import com.hong.common.bench.BenchmarkSupport;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class LengthFieldFrameDecoderTest {
+
+    @Test
+    public void decodesFrameSplitIntoSingleBytes() throws CodecException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(1024);
+        byte[] payload = new byte[300];
+        for (int index = 0; index < payload.length; index++) {
+            payload[index] = (byte) index;
+        }
+        ByteBuffer encoded = codec.encode(new Frame(Frame.TYPE_DATA, payload));
+        FrameDecoder decoder = codec.newDecoder();
+        List<Frame> frames = new ArrayList<>();
+        while (encoded.hasRemaining()) {
+            decoder.decode(new byte[]{encoded.get()}, 0, 1, frames);
+        }
+        assertEquals(1, frames.size());
+        assertArrayEquals(payload, frames.get(0).getPayloadBytes());
+        assertFalse(decoder.hasPartialFrame());
+    }
+
+    /**
+     * 5 个字节的长度字段：第 5 个字节最大是 0x0F（负载长度本身再由 maxFrameLength 检查）
+     */
+    @Test
+    public void acceptsFiveByteLengthWithinMaxFrameLength() throws CodecException {
+        List<Frame> frames = new ArrayList<>();
+        // 长度 3，用 5 个字节的非最短形式表示
+        new LengthFieldFrameDecoder(16).decode(ByteBuffer.wrap(new byte[]{
+                (byte) 0x83, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x00, Frame.TYPE_DATA, 1, 2, 3}), frames);
+        assertEquals(1, frames.size());
+        assertEquals(3, frames.get(0).getPayloadLength());
+    }
+
+    @Test(expected = CodecException.class)
+    public void rejectsFifthByteOverflowingInt() throws CodecException {
+        // 第 5 个字节 0x10：第 32 位被移出 int，原来会被当成长度 0
+        new LengthFieldFrameDecoder(Integer.MAX_VALUE).decode(ByteBuffer.wrap(new byte[]{
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, Frame.TYPE_DATA}), new ArrayList<Frame>());
+    }
+
+    @Test(expected = CodecException.class)
+    public void rejectsContinuationBitOnFifthByte() throws CodecException {
+        new LengthFieldFrameDecoder(Integer.MAX_VALUE).decode(ByteBuffer.wrap(new byte[]{
+                (byte) 0x81, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80}), new ArrayList<Frame>());
+    }
+
+    @Test(expected = CodecException.class)
+    public void rejectsLengthAboveMaxFrameLength() throws CodecException {
+        ByteBuffer encoded = new LengthFieldFrameCodec(1024).encode(new Frame(Frame.TYPE_DATA, new byte[200]));
+        new LengthFieldFrameDecoder(100).decode(encoded, new ArrayList<Frame>());
+    }
+
+    /**
+     * 帧头声明 16 MB 的负载，之后只收到几个字节：负载的缓存按实际收到的字节分配，而不是一次分配 16 MB
+     */
+    @Test
+    public void largeDeclaredLengthDoesNotAllocateUpFront() throws CodecException {
+        assumeTrue(BenchmarkSupport.currentThreadAllocatedBytes() >= 0);
+        int length = 16 * 1024 * 1024;
+        ByteBuffer header = ByteBuffer.allocate(Varint.MAX_VARINT_SIZE + 1 + 3);
+        Varint.write(length, header);
+        header.put(Frame.TYPE_DATA).put(new byte[]{1, 2, 3}).flip();
+
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(length);
+        List<Frame> frames = new ArrayList<>();
+        long allocatedBefore = BenchmarkSupport.currentThreadAllocatedBytes();
+        decoder.decode(header, frames);
+        long allocated = BenchmarkSupport.currentThreadAllocatedBytes() - allocatedBefore;
+        assertTrue(frames.isEmpty());
+        assertTrue(decoder.hasPartialFrame());
+        assertTrue("分配了 " + allocated + " 字节", allocated < 1024 * 1024);
+    }
+
+    /**
+     * 负载分多次到达，缓存逐步增长，最后的负载正好是声明的长度、内容完整
+     */
+    @Test
+    public void growsPayloadBufferAsBytesArrive() throws CodecException {
+        LengthFieldFrameCodec codec = new LengthFieldFrameCodec(1024 * 1024);
+        byte[] payload = new byte[300 * 1024 + 7];
+        for (int index = 0; index < payload.length; index++) {
+            payload[index] = (byte) (index * 31);
+        }
+        ByteBuffer encoded = codec.encode(new Frame(Frame.TYPE_DATA, payload));
+        FrameDecoder decoder = codec.newDecoder();
+        List<Frame> frames = new ArrayList<>();
+        while (encoded.hasRemaining()) {
+            ByteBuffer chunk = encoded.slice();
+            chunk.limit(Math.min(chunk.remaining(), 10000));
+            decoder.decode(chunk, frames);
+            encoded.position(encoded.position() + chunk.position());
+        }
+        assertEquals(1, frames.size());
+        assertEquals(payload.length, frames.get(0).getPayloadLength());
+        assertArrayEquals(payload, frames.get(0).getPayloadBytes());
+        assertFalse(decoder.hasPartialFrame());
+    }
+}
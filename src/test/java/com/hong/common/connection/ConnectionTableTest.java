@@ -0,0 +1,189 @@
+package com.hong.common.connection;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConnectionTableTest {
+
+    @Test
+    public void putGetSetAddRemove() {
+        ConnectionTable table = new ConnectionTable(2, 16);
+        assertTrue(table.put(7));
+        assertFalse(table.put(7));
+        assertTrue(table.contains(7));
+        assertEquals(0, table.get(7, 0, -1));
+
+        assertTrue(table.set(7, 0, 100));
+        assertEquals(100, table.get(7, 0, -1));
+        assertEquals(5, table.add(7, 1, 5));
+        assertEquals(8, table.add(7, 1, 3));
+        // 已经在表中的 id 再次 put 不改变字段
+        assertFalse(table.put(7));
+        assertEquals(100, table.get(7, 0, -1));
+
+        assertTrue(table.remove(7));
+        assertFalse(table.remove(7));
+        assertFalse(table.contains(7));
+        assertEquals(-1, table.get(7, 0, -1));
+        assertFalse(table.set(7, 0, 1));
+        assertEquals(0, table.add(7, 0, 1));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void reinsertedIdStartsWithZeroFields() {
+        ConnectionTable table = new ConnectionTable(1, 16);
+        table.put(3);
+        table.set(3, 0, 42);
+        table.remove(3);
+        table.put(3);
+        assertEquals(0, table.get(3, 0, -1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveId() {
+        new ConnectionTable(1, 16).put(0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsFieldOutOfRange() {
+        new ConnectionTable(2, 16).get(1, 2, 0);
+    }
+
+    /**
+     * 连接不断建立、关闭（id 递增，不重复）时，墓碑被复用或者按原尺寸整理掉，容量不会一直增长
+     */
+    @Test
+    public void churnReusesTombstonesWithoutGrowing() {
+        ConnectionTable table = new ConnectionTable(1, 64);
+        int capacity = table.capacity();
+        long nextId = 1;
+        long[] live = new long[32];
+        for (int index = 0; index < live.length; index++) {
+            live[index] = nextId;
+            table.put(nextId++);
+        }
+        for (int round = 0; round < 100000; round++) {
+            int slot = round % live.length;
+            assertTrue(table.remove(live[slot]));
+            live[slot] = nextId;
+            assertTrue(table.put(nextId));
+            table.set(nextId, 0, nextId);
+            nextId++;
+        }
+        assertEquals(live.length, table.size());
+        assertEquals(capacity, table.capacity());
+        for (long id : live) {
+            assertEquals(id, table.get(id, 0, -1));
+        }
+    }
+
+    /**
+     * 删除留下的墓碑被之后插入的 id 占用，不会因为墓碑而扩容
+     */
+    @Test
+    public void putReusesTombstones() {
+        ConnectionTable table = new ConnectionTable(1, 1000);
+        int capacity = table.capacity();
+        for (long id = 1; id <= 600; id++) {
+            table.put(id);
+        }
+        for (long id = 1; id <= 600; id++) {
+            table.remove(id);
+        }
+        for (long id = 601; id <= 1200; id++) {
+            assertTrue(table.put(id));
+        }
+        assertEquals(600, table.size());
+        assertEquals(capacity, table.capacity());
+        for (long id = 1; id <= 600; id++) {
+            assertFalse(table.contains(id));
+        }
+        for (long id = 601; id <= 1200; id++) {
+            assertTrue(table.contains(id));
+        }
+    }
+
+    @Test
+    public void resizeKeepsFields() {
+        ConnectionTable table = new ConnectionTable(3, 0);
+        int initialCapacity = table.capacity();
+        for (long id = 1; id <= 10000; id++) {
+            table.put(id);
+            table.set(id, 0, id);
+            table.set(id, 2, -id);
+            if (id % 3 == 0) {
+                table.remove(id - 1);
+            }
+        }
+        assertTrue(table.capacity() > initialCapacity);
+        for (long id = 1; id <= 10000; id++) {
+            boolean removed = id % 3 == 2;
+            assertEquals(!removed, table.contains(id));
+            assertEquals(removed ? 0 : id, table.get(id, 0, 0));
+            assertEquals(removed ? 0 : -id, table.get(id, 2, 0));
+        }
+        assertEquals((long) table.capacity() * 4 * 8, table.memoryBytes());
+    }
+
+    /**
+     * 一个线程不断插入、删除（触发扩容和整理），另一个线程不加锁地读取：
+     * 读到的字段要么是这个 id 自己的值，要么是默认值，不能是占用了同一个槽位的其它连接的值
+     */
+    @Test
+    public void concurrentReaderNeverSeesAnotherConnectionsField() throws InterruptedException {
+        final ConnectionTable table = new ConnectionTable(1, 16);
+        final long total = 200000;
+        final long stable = Long.MAX_VALUE / 2;
+        table.put(stable);
+        table.set(stable, 0, stable);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long id = 1; id <= total; id++) {
+                    table.put(id);
+                    table.set(id, 0, id);
+                    // 只保留最近的一小部分，槽位被不断删除、复用
+                    if (id > 64) {
+                        table.remove(id - 64);
+                    }
+                    // 偶尔让表整体增长，读取的线程会遇到发布新数组
+                    if (id % 50000 == 0) {
+                        for (long extra = total + id; extra < total + id + 5000; extra++) {
+                            table.put(extra);
+                            table.set(extra, 0, extra);
+                        }
+                    }
+                }
+            }
+        });
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long probe = 1;
+                while (writer.isAlive()) {
+                    long value = table.get(probe, 0, -1);
+                    if (value != -1 && value != 0 && value != probe) {
+                        failure.compareAndSet(null, "id " + probe + " 读到了 " + value);
+                        return;
+                    }
+                    if (table.get(stable, 0, -1) != stable) {
+                        failure.compareAndSet(null, "一直在表中的连接读不到自己的字段");
+                        return;
+                    }
+                    probe = probe % total + 1;
+                }
+            }
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        assertNull(failure.get(), failure.get());
+        assertEquals(stable, table.get(stable, 0, -1));
+    }
+}
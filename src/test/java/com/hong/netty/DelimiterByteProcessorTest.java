@@ -0,0 +1,201 @@
+package com.hong.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DelimiterByteProcessor#indexOf(ByteBuf)}（SWAR）的结果必须和逐个字节的 forEachByte 完全一致
+ */
+public class DelimiterByteProcessorTest {
+
+    private static final byte[][] DELIMITERS = {
+            "over".getBytes(), "\r\n\r\n".getBytes(), "aab".getBytes(), {(byte) 0xFF}, {0, 0}
+    };
+
+    private enum Kind {
+        HEAP, DIRECT, POOLED_DIRECT, SLICE, COMPOSITE
+    }
+
+    @Test
+    public void findsDelimiterInEveryBufferKindAndByteOrder() {
+        for (Kind kind : Kind.values()) {
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                byte[] content = "0123456789abcdefghijover0123456789over".getBytes();
+                ByteBuf buffer = newBuffer(kind, order, content, new Random(1));
+                try {
+                    assertEquals(kind + "/" + order, Arrays.asList(buffer.readerIndex() + 23, buffer.readerIndex() + 37),
+                            scan(new DelimiterByteProcessor("over".getBytes()), buffer, true));
+                } finally {
+                    buffer.release();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesForEachByteOnRandomContent() {
+        Random random = new Random(20170210);
+        for (int round = 0; round < 3000; round++) {
+            byte[] delimiter = DELIMITERS[random.nextInt(DELIMITERS.length)];
+            byte[] content = randomContent(random, delimiter, random.nextInt(200));
+            Kind kind = Kind.values()[random.nextInt(Kind.values().length)];
+            ByteOrder order = random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            ByteBuf buffer = newBuffer(kind, order, content, random);
+            try {
+                List<Integer> expected = scan(new DelimiterByteProcessor(delimiter), buffer, false);
+                List<Integer> actual = scan(new DelimiterByteProcessor(delimiter), buffer, true);
+                assertEquals(kind + "/" + order + " " + Arrays.toString(content), expected, actual);
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    /**
+     * 结束标记被拆到两个（或者更多）ByteBuf 中：匹配状态保存在 processor 中，在后一个 ByteBuf 中识别出来
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void findsDelimiterSplitAcrossBuffers() {
+        DelimiterByteProcessor processor = new DelimiterByteProcessor("over".getBytes());
+        ByteBuf first = Unpooled.wrappedBuffer("0123456789abcdov".getBytes());
+        ByteBuf second = Unpooled.wrappedBuffer("er0123456789".getBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(-1, processor.indexOf(first));
+        assertEquals(1, processor.indexOf(second));
+
+        // 只有第一个字节在前一个 ByteBuf 中，中间还有一个只有一个字节的 ByteBuf
+        processor = new DelimiterByteProcessor("over".getBytes());
+        assertEquals(-1, processor.indexOf(Unpooled.wrappedBuffer("xxxxxxxxxxxxxxxxo".getBytes())));
+        assertEquals(-1, processor.indexOf(Unpooled.wrappedBuffer("v".getBytes())));
+        assertEquals(1, processor.indexOf(Unpooled.wrappedBuffer("erxxxxxxxxxxxxxxxx".getBytes())));
+
+        // 前一个 ByteBuf 的结尾只是看起来像开头，后一个 ByteBuf 中不匹配，之后的完整结束标记仍然要找到
+        processor = new DelimiterByteProcessor("over".getBytes());
+        assertEquals(-1, processor.indexOf(Unpooled.wrappedBuffer("xxxxxxxxov".getBytes())));
+        assertEquals(11, processor.indexOf(Unpooled.wrappedBuffer("xxxxxxxxover".getBytes())));
+    }
+
+    @Test
+    public void matchesForEachByteWhenSplitAtRandomPoints() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            byte[] delimiter = DELIMITERS[random.nextInt(DELIMITERS.length)];
+            byte[] content = randomContent(random, delimiter, 1 + random.nextInt(300));
+            DelimiterByteProcessor expectedProcessor = new DelimiterByteProcessor(delimiter);
+            DelimiterByteProcessor actualProcessor = new DelimiterByteProcessor(delimiter);
+            int offset = 0;
+            while (offset < content.length) {
+                int length = Math.min(content.length - offset, 1 + random.nextInt(24));
+                byte[] chunk = Arrays.copyOfRange(content, offset, offset + length);
+                Kind kind = Kind.values()[random.nextInt(Kind.values().length)];
+                ByteOrder order = random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+                ByteBuf buffer = newBuffer(kind, order, chunk, random);
+                try {
+                    assertEquals(kind + "/" + order + " " + Arrays.toString(content) + " offset " + offset,
+                            scan(expectedProcessor, buffer, false), scan(actualProcessor, buffer, true));
+                } finally {
+                    buffer.release();
+                }
+                offset += length;
+            }
+        }
+    }
+
+    /**
+     * 从 readerIndex 开始反复查找，每找到一个结束标记就从它后面继续，返回所有结束标记最后一个字节的下标。
+     * 不改变 buffer 的 readerIndex
+     */
+    private static List<Integer> scan(DelimiterByteProcessor processor, ByteBuf buffer, boolean swar) {
+        List<Integer> indexes = new ArrayList<>();
+        int readerIndex = buffer.readerIndex();
+        try {
+            while (buffer.isReadable()) {
+                int index = swar ? processor.indexOf(buffer) : buffer.forEachByte(processor);
+                if (index == -1) {
+                    break;
+                }
+                indexes.add(index);
+                buffer.readerIndex(index + 1);
+            }
+        } finally {
+            buffer.readerIndex(readerIndex);
+        }
+        return indexes;
+    }
+
+    /**
+     * 内容由结束标记中的字节、结束标记本身和少量其它字节组成，候选位置和不完整的匹配都很多
+     */
+    private static byte[] randomContent(Random random, byte[] delimiter, int length) {
+        byte[] content = new byte[length];
+        int index = 0;
+        while (index < length) {
+            int choice = random.nextInt(10);
+            if (choice < 2) {
+                for (int offset = 0; offset < delimiter.length && index < length; offset++) {
+                    content[index++] = delimiter[offset];
+                }
+            } else if (choice < 7) {
+                content[index++] = delimiter[random.nextInt(delimiter.length)];
+            } else {
+                content[index++] = (byte) random.nextInt(256);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * 构造一个可读部分是 content 的 ByteBuf；readerIndex 不一定是 0。
+     * 小端序的 ByteBuf（SwappedByteBuf）的 NIO 视图也是小端序的，用来覆盖 SWAR 扫描的小端序分支
+     */
+    @SuppressWarnings("deprecation")
+    private static ByteBuf newBuffer(Kind kind, ByteOrder order, byte[] content, Random random) {
+        ByteBuf buffer;
+        switch (kind) {
+            case HEAP:
+                buffer = Unpooled.buffer(content.length + 16);
+                buffer.writerIndex(5).readerIndex(5);
+                buffer.writeBytes(content);
+                break;
+            case DIRECT:
+                buffer = Unpooled.directBuffer(content.length + 16);
+                buffer.writerIndex(3).readerIndex(3);
+                buffer.writeBytes(content);
+                break;
+            case POOLED_DIRECT:
+                buffer = PooledByteBufAllocator.DEFAULT.directBuffer(content.length);
+                buffer.writeBytes(content);
+                break;
+            case SLICE:
+                // 前后都有其它字节，slice 的下标 0 不在底层缓存区的开头
+                ByteBuf parent = Unpooled.directBuffer(content.length + 22);
+                parent.writeZero(11).writeBytes(content).writeZero(11);
+                buffer = parent.slice(11, content.length);
+                break;
+            default:
+                CompositeByteBuf composite = Unpooled.compositeBuffer();
+                int offset = 0;
+                while (offset < content.length) {
+                    int length = Math.min(content.length - offset, 1 + random.nextInt(10));
+                    ByteBuf component = random.nextBoolean() ? Unpooled.directBuffer(length) : Unpooled.buffer(length);
+                    component.writeBytes(content, offset, length);
+                    composite.addComponent(true, component);
+                    offset += length;
+                }
+                buffer = composite;
+                break;
+        }
+        return order == ByteOrder.BIG_ENDIAN ? buffer : buffer.order(order);
+    }
+}
@@ -0,0 +1,199 @@
+package com.hong.nio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 用合成的 nanoTime 驱动 {@link HashedTimingWheel#advance(long)}，不需要真的等待。<br>
+ * schedule 按照真实的 System.nanoTime() 计算到期 tick，所以 tick 取 1 秒：测试本身花的时间远小于一个 tick，
+ * delay 为 n 个 tick 的任务到期 tick 总是 n + 1（向上取整）
+ */
+public class HashedTimingWheelTest {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private HashedTimingWheel wheel;
+
+    /**
+     * 时间轮创建之后的 nanoTime，合成的时间都以它为起点
+     */
+    private long base;
+
+    @Before
+    public void setUp() {
+        this.wheel = new HashedTimingWheel(1, TimeUnit.SECONDS, 8);
+        this.base = System.nanoTime();
+    }
+
+    private long at(long ticks) {
+        return this.base + ticks * TICK_NANOS;
+    }
+
+    @Test
+    public void neverExpiresEarlyAndAtMostOneTickLate() {
+        AtomicInteger runs = new AtomicInteger();
+        HashedTimingWheel.Timeout timeout = this.wheel.schedule(counter(runs), 3, TimeUnit.SECONDS);
+        assertEquals(0, this.wheel.advance(at(3)));
+        assertEquals(0, runs.get());
+        assertEquals(1, this.wheel.advance(at(4)));
+        assertEquals(1, runs.get());
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, this.wheel.pendingTimeouts());
+    }
+
+    /**
+     * 到期时间超过一圈（8 个 tick）的任务，转到它所在的槽时还没有到期，要留在槽中等下一圈
+     */
+    @Test
+    public void deadlineMoreThanOneRoundAwayWaitsForItsRound() {
+        AtomicInteger runs = new AtomicInteger();
+        // 到期 tick 是 21，和 tick 5、13 在同一个槽中
+        this.wheel.schedule(counter(runs), 20, TimeUnit.SECONDS);
+        AtomicInteger nearRuns = new AtomicInteger();
+        this.wheel.schedule(counter(nearRuns), 4, TimeUnit.SECONDS);
+
+        assertEquals(1, this.wheel.advance(at(5)));
+        assertEquals(1, nearRuns.get());
+        assertEquals(0, this.wheel.advance(at(13)));
+        assertEquals(0, this.wheel.advance(at(20)));
+        assertEquals(0, runs.get());
+        assertEquals(1, this.wheel.pendingTimeouts());
+
+        assertEquals(1, this.wheel.advance(at(21)));
+        assertEquals(1, runs.get());
+        assertEquals(0, this.wheel.pendingTimeouts());
+    }
+
+    /**
+     * 同一个 tick 到期的两个任务互相取消：先执行的那个取消了另一个，另一个不再执行
+     */
+    @Test
+    public void cancelDuringExpiry() {
+        final AtomicInteger runs = new AtomicInteger();
+        final HashedTimingWheel.Timeout[] timeouts = new HashedTimingWheel.Timeout[2];
+        for (int index = 0; index < 2; index++) {
+            final int other = 1 - index;
+            timeouts[index] = this.wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                    assertTrue(timeouts[other].cancel());
+                }
+            }, 2, TimeUnit.SECONDS);
+        }
+        // 同一个槽中还有一个下一圈才到期的任务，在执行期间被取消，要从链表中正确摘掉
+        final HashedTimingWheel.Timeout later = this.wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fail("已经取消的任务不应该执行");
+            }
+        }, 10, TimeUnit.SECONDS);
+        assertEquals(3, this.wheel.pendingTimeouts());
+        HashedTimingWheel.Timeout canceller = this.wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(later.cancel());
+            }
+        }, 2, TimeUnit.SECONDS);
+
+        assertEquals(2, this.wheel.advance(at(3)));
+        assertEquals(1, runs.get());
+        assertTrue(timeouts[0].isExpired() != timeouts[1].isExpired());
+        assertTrue(timeouts[0].isCancelled() || timeouts[1].isCancelled());
+        assertTrue(canceller.isExpired());
+        assertTrue(later.isCancelled());
+        assertEquals(0, this.wheel.pendingTimeouts());
+        assertEquals(0, this.wheel.advance(at(20)));
+    }
+
+    @Test
+    public void cancelledTimeoutIsRemovedImmediately() {
+        AtomicInteger runs = new AtomicInteger();
+        HashedTimingWheel.Timeout first = this.wheel.schedule(counter(runs), 2, TimeUnit.SECONDS);
+        HashedTimingWheel.Timeout second = this.wheel.schedule(counter(runs), 2, TimeUnit.SECONDS);
+        HashedTimingWheel.Timeout third = this.wheel.schedule(counter(runs), 2, TimeUnit.SECONDS);
+        // 分别取消链表中间、头部的节点
+        assertTrue(second.cancel());
+        assertTrue(third.cancel());
+        assertFalse(third.cancel());
+        assertEquals(1, this.wheel.pendingTimeouts());
+        assertEquals(1, this.wheel.advance(at(3)));
+        assertTrue(first.isExpired());
+        assertEquals(1, runs.get());
+    }
+
+    /**
+     * 没有任何任务时 advance 直接跳到目标 tick；之后添加的任务不会落在已经处理过的 tick 上（那样就永远不会执行了）
+     */
+    @Test
+    public void fastForwardsWhenNothingIsPending() {
+        assertEquals(0, this.wheel.advance(at(1000000)));
+        assertEquals(0, this.wheel.advance(at(1000000)));
+
+        AtomicInteger runs = new AtomicInteger();
+        // 按照真实时间，到期 tick 是 2，早就处理过了，所以放在下一个要处理的 tick 上
+        this.wheel.schedule(counter(runs), 1, TimeUnit.SECONDS);
+        assertEquals(1, this.wheel.pendingTimeouts());
+        assertEquals(0, this.wheel.advance(at(1000000)));
+        assertEquals(1, this.wheel.advance(at(1000001)));
+        assertEquals(1, runs.get());
+    }
+
+    /**
+     * 任务在执行时重新调度自己（空闲检查就是这样做的）：新任务不会在同一次 advance 中执行，
+     * 也不会落在正在处理的 tick 上
+     */
+    @Test
+    public void reschedulingFromInsideTask() {
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                if (runs.incrementAndGet() < 3) {
+                    // delay 0：按照真实时间已经到期，只能放到下一个 tick
+                    wheel.schedule(this, 0, TimeUnit.SECONDS);
+                }
+            }
+        };
+        this.wheel.schedule(task, 2, TimeUnit.SECONDS);
+
+        assertEquals(1, this.wheel.advance(at(3)));
+        assertEquals(1, runs.get());
+        assertEquals(1, this.wheel.pendingTimeouts());
+        assertEquals(1, this.wheel.advance(at(4)));
+        assertEquals(2, runs.get());
+        // 跨过多个 tick 的一次 advance 中，重新调度的任务在后面的 tick 上再执行一次
+        assertEquals(1, this.wheel.advance(at(10)));
+        assertEquals(3, runs.get());
+        assertEquals(0, this.wheel.pendingTimeouts());
+    }
+
+    @Test
+    public void taskExceptionDoesNotStopOtherTimeouts() {
+        AtomicInteger runs = new AtomicInteger();
+        this.wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("测试抛出的异常");
+            }
+        }, 1, TimeUnit.SECONDS);
+        this.wheel.schedule(counter(runs), 1, TimeUnit.SECONDS);
+        assertEquals(2, this.wheel.advance(at(2)));
+        assertEquals(1, runs.get());
+    }
+
+    private static Runnable counter(final AtomicInteger runs) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+    }
+}
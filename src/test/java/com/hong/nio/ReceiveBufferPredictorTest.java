@@ -0,0 +1,103 @@
+package com.hong.nio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReceiveBufferPredictorTest {
+
+    @Test
+    public void sizesAreRoundedUpToPowersOfTwoAndClamped() {
+        assertEquals(2048, new ReceiveBufferPredictor(1000, 1500, 9000, 4).nextSize());
+        assertEquals(1024, new ReceiveBufferPredictor(1000, 10, 9000, 4).nextSize());
+        assertEquals(16384, new ReceiveBufferPredictor(1000, 100000, 9000, 4).nextSize());
+        assertEquals(1, new ReceiveBufferPredictor(1, 1, 1, 1).nextSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveSize() {
+        new ReceiveBufferPredictor(0, 1024, 4096, 4);
+    }
+
+    @Test
+    public void fullReadGrowsUpToMax() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor(512, 1024, 8192, 4);
+        predictor.record(1024, 1024);
+        assertEquals(2048, predictor.nextSize());
+        predictor.record(2048, 2048);
+        predictor.record(4096, 4096);
+        assertEquals(8192, predictor.nextSize());
+        predictor.record(8192, 8192);
+        assertEquals(8192, predictor.nextSize());
+    }
+
+    /**
+     * 缩小要连续 shrinkAfter 次小的读取，中间有一次不小的读取就重新计数
+     */
+    @Test
+    public void shrinksOnlyAfterConsecutiveSmallReads() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor(512, 4096, 8192, 3);
+        predictor.record(100, 4096);
+        predictor.record(2048, 4096);
+        assertEquals(4096, predictor.nextSize());
+        // 2049 放不进小一级（2048）的缓存区，打断计数
+        predictor.record(2049, 4096);
+        predictor.record(100, 4096);
+        predictor.record(100, 4096);
+        assertEquals(4096, predictor.nextSize());
+        predictor.record(100, 4096);
+        assertEquals(2048, predictor.nextSize());
+
+        // 缩小之后重新计数
+        predictor.record(100, 2048);
+        predictor.record(100, 2048);
+        assertEquals(2048, predictor.nextSize());
+        predictor.record(100, 2048);
+        assertEquals(1024, predictor.nextSize());
+    }
+
+    @Test
+    public void fullReadResetsSmallReadCount() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor(512, 2048, 8192, 2);
+        predictor.record(10, 2048);
+        predictor.record(2048, 2048);
+        assertEquals(4096, predictor.nextSize());
+        predictor.record(10, 4096);
+        assertEquals(4096, predictor.nextSize());
+        predictor.record(10, 4096);
+        assertEquals(2048, predictor.nextSize());
+    }
+
+    @Test
+    public void neverShrinksBelowMin() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor(1024, 1024, 8192, 1);
+        for (int index = 0; index < 10; index++) {
+            predictor.record(1, 1024);
+        }
+        assertEquals(1024, predictor.nextSize());
+    }
+
+    /**
+     * 读到 0 字节（没有数据）和 -1（对方关闭）不影响预测
+     */
+    @Test
+    public void ignoresEmptyAndEndOfStreamReads() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor(512, 2048, 8192, 2);
+        predictor.record(10, 2048);
+        predictor.record(0, 2048);
+        predictor.record(-1, 2048);
+        assertEquals(2048, predictor.nextSize());
+        predictor.record(10, 2048);
+        assertEquals(1024, predictor.nextSize());
+    }
+
+    /**
+     * capacity 是这次读取实际可用的空间（可能比预测的小，例如缓存区中还有上次留下的半帧），读满了同样要扩大
+     */
+    @Test
+    public void fullReadIsRelativeToAvailableCapacity() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor(512, 2048, 8192, 2);
+        predictor.record(700, 700);
+        assertEquals(4096, predictor.nextSize());
+    }
+}